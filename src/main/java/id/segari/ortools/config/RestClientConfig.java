@@ -1,11 +1,21 @@
 package id.segari.ortools.config;
 
 import id.segari.ortools.error.SegariRoutingErrors;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
 import java.time.Duration;
@@ -16,12 +26,59 @@ public class RestClientConfig {
     @Value("${osrm.base-url}")
     private String osrmBaseUrl;
 
+    @Value("${osrm.http.max-connections:16}")
+    private int maxConnections;
+
+    @Value("${osrm.http.keep-alive:30s}")
+    private Duration keepAlive;
+
+    @Value("${osrm.http.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${osrm.http.read-timeout:30s}")
+    private Duration readTimeout;
+
+    @Value("${osrm.http.pool-acquire-timeout:10s}")
+    private Duration poolAcquireTimeout;
+
+    @Value("${osrm.http.gzip:true}")
+    private boolean gzip;
+
+    /**
+     * Every OSRM call goes to the same host, so the per-route limit equals the pool size.
+     * Per-call latency is recorded by the RestClient observation as {@code http.client.requests}.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient osrmHttpClient(MeterRegistry meterRegistry) {
+        Timer leaseWaitTimer = Timer.builder("osrm.http.pool.lease.wait")
+                .description("Time spent waiting for a pooled OSRM connection")
+                .register(meterRegistry);
+        TimedPoolingConnectionManager connectionManager = new TimedPoolingConnectionManager(leaseWaitTimer);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build());
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "osrm").bindTo(meterRegistry);
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolAcquireTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .setConnectionKeepAlive(TimeValue.of(keepAlive))
+                        .build())
+                .evictIdleConnections(TimeValue.of(keepAlive));
+        // Content compression sends Accept-Encoding: gzip and inflates the (highly compressible) table JSON transparently
+        if (!gzip) builder.disableContentCompression();
+        return builder.build();
+    }
+
     @Bean
-    public ClientHttpRequestFactory clientHttpRequestFactory() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(Duration.ofSeconds(5));
-        factory.setReadTimeout(Duration.ofSeconds(30));
-        return factory;
+    public ClientHttpRequestFactory clientHttpRequestFactory(CloseableHttpClient osrmHttpClient) {
+        return new HttpComponentsClientHttpRequestFactory(osrmHttpClient);
     }
 
     @Bean(name = "osrmRestClient")
@@ -0,0 +1,46 @@
+package id.segari.ortools.config;
+
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.util.Timeout;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Connection pool that records how long each caller waited for a connection lease,
+ * which is the signal that {@code osrm.http.max-connections} is too low for the load.
+ */
+class TimedPoolingConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final Timer leaseWaitTimer;
+
+    TimedPoolingConnectionManager(Timer leaseWaitTimer) {
+        this.leaseWaitTimer = leaseWaitTimer;
+    }
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+        long startedAt = System.nanoTime();
+        LeaseRequest delegate = super.lease(id, route, requestTimeout, state);
+        return new LeaseRequest() {
+            @Override
+            public ConnectionEndpoint get(Timeout timeout) throws InterruptedException, ExecutionException, TimeoutException {
+                try {
+                    return delegate.get(timeout);
+                } finally {
+                    leaseWaitTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return delegate.cancel();
+            }
+        };
+    }
+}
@@ -5,63 +5,126 @@ import id.segari.ortools.dto.route.v1.RouteDTO;
 import id.segari.ortools.dto.route.v1.RouteResultDTO;
 import id.segari.ortools.dto.route.v2.RouteV2DTO;
 import id.segari.ortools.dto.route.v2.TspResultDTO;
+import id.segari.ortools.dto.route.v3.RouteBatchV3DTO;
 import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.error.SegariRoutingErrors;
 import id.segari.ortools.service.RouteService;
+import id.segari.ortools.service.TspBatchService;
+import id.segari.ortools.solver.Deadline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 
 @Validated
 @RestController
 @RequestMapping("/v1/routes")
 public class RouteController {
 
+    /**
+     * Optional latency budget in milliseconds, counted from when the request reaches the controller.
+     */
+    static final String LATENCY_BUDGET_HEADER = "X-Latency-Budget-Ms";
+
     private final RouteService routeService;
+    private final TspBatchService tspBatchService;
+    private final Duration batchTimeout;
 
-    public RouteController(RouteService routeService) {
+    public RouteController(RouteService routeService, TspBatchService tspBatchService,
+                           @Value("${solver.batch.timeout:10m}") Duration batchTimeout) {
         this.routeService = routeService;
+        this.tspBatchService = tspBatchService;
+        this.batchTimeout = batchTimeout;
     }
 
     @PostMapping("/vrp/sp-start/arbitrary-finish")
     public ResponseDTO<RouteResultDTO> vrp1(
-            @RequestBody RouteDTO request
+            @RequestBody RouteDTO request,
+            @RequestHeader(name = LATENCY_BUDGET_HEADER, required = false) Long latencyBudgetMs
     ){
-        return new ResponseDTO<>(routeService.vrpWithSpStartAndArbitraryFinish(request), null);
+        return new ResponseDTO<>(routeService.vrpWithSpStartAndArbitraryFinish(request, deadline(latencyBudgetMs)), null);
     }
 
     @PostMapping("/vrp/arbitrary-start/arbitrary-finish")
     public ResponseDTO<RouteResultDTO> vrp2(
-            @RequestBody RouteDTO request
+            @RequestBody RouteDTO request,
+            @RequestHeader(name = LATENCY_BUDGET_HEADER, required = false) Long latencyBudgetMs
     ){
-        return new ResponseDTO<>(routeService.vrpWithArbitraryStartAndArbitraryFinish(request), null);
+        return new ResponseDTO<>(routeService.vrpWithArbitraryStartAndArbitraryFinish(request, deadline(latencyBudgetMs)), null);
     }
 
     @PostMapping("/tsp/fix-start/{index}/arbitrary-finish")
     public ResponseDTO<RouteResultDTO> tsp1(
             @PathVariable Integer index,
-            @RequestBody RouteDTO request
+            @RequestBody RouteDTO request,
+            @RequestHeader(name = LATENCY_BUDGET_HEADER, required = false) Long latencyBudgetMs
     ){
-        return new ResponseDTO<>(routeService.tspWithFixStartAndArbitraryFinish(request, index), null);
+        return new ResponseDTO<>(routeService.tspWithFixStartAndArbitraryFinish(request, index, deadline(latencyBudgetMs)), null);
     }
 
     @PostMapping("/tsp/sp-start/arbitrary-finish/use-osrm")
     public ResponseDTO<RouteResultDTO> tsp2(
-            @RequestBody RouteDTO request
+            @RequestBody RouteDTO request,
+            @RequestHeader(name = LATENCY_BUDGET_HEADER, required = false) Long latencyBudgetMs
     ){
-        return new ResponseDTO<>(routeService.tspWithSpStartAndArbitraryFinish(request), null);
+        return new ResponseDTO<>(routeService.tspWithSpStartAndArbitraryFinish(request, deadline(latencyBudgetMs)), null);
     }
 
     @PostMapping("/v2/tsp/sp-start/arbitrary-finish/use-osrm")
     public ResponseDTO<TspResultDTO> tsp3(
-            @RequestBody RouteV2DTO request
+            @RequestBody RouteV2DTO request,
+            @RequestHeader(name = LATENCY_BUDGET_HEADER, required = false) Long latencyBudgetMs
     ){
-        return new ResponseDTO<>(routeService.tspWithSpStartAndArbitraryFinishV2(request), null);
+        return new ResponseDTO<>(routeService.tspWithSpStartAndArbitraryFinishV2(request, deadline(latencyBudgetMs)), null);
     }
 
     @PostMapping("/v3/tsp/sp-start/arbitrary-finish/use-osrm")
     public ResponseDTO<TspResultDTO> tsp4(
-            @RequestBody RouteV3DTO request
+            @RequestBody RouteV3DTO request,
+            @RequestHeader(name = LATENCY_BUDGET_HEADER, required = false) Long latencyBudgetMs
+    ){
+        return new ResponseDTO<>(routeService.tspWithSpStartAndArbitraryFinishV3(request, deadline(latencyBudgetMs)), null);
+    }
+
+    /**
+     * Streams one {@link id.segari.ortools.dto.route.v3.TspBatchResultDTO} per problem as newline-delimited JSON, in
+     * completion order. A problem that fails is reported in its own line; the stream is only cut short when the batch
+     * as a whole is rejected.
+     */
+    @PostMapping(value = "/v3/tsp/sp-start/arbitrary-finish/use-osrm/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter tsp4Batch(
+            @RequestBody RouteBatchV3DTO request,
+            @RequestHeader(name = LATENCY_BUDGET_HEADER, required = false) Long latencyBudgetMs
     ){
-        return new ResponseDTO<>(routeService.tspWithSpStartAndArbitraryFinishV3(request), null);
+        Deadline deadline = deadline(latencyBudgetMs);
+        tspBatchService.validate(request.problems());
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeout.toMillis());
+        Thread.ofVirtual().name("tsp-batch").start(() -> {
+            try {
+                tspBatchService.tspWithSpStartAndArbitraryFinishV3(request.problems(), deadline, result -> {
+                    try {
+                        emitter.send(result, MediaType.APPLICATION_JSON);
+                        emitter.send("\n", MediaType.TEXT_PLAIN);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                emitter.complete();
+            } catch (RuntimeException e) {
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
     }
 
+    private static Deadline deadline(Long latencyBudgetMs) {
+        if (latencyBudgetMs == null) return Deadline.none();
+        if (latencyBudgetMs <= 0) throw SegariRoutingErrors.invalidRoutingParameter(LATENCY_BUDGET_HEADER);
+        return Deadline.after(Duration.ofMillis(latencyBudgetMs));
+    }
 }
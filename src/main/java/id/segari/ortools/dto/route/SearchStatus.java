@@ -0,0 +1,17 @@
+package id.segari.ortools.dto.route;
+
+/**
+ * How the search that produced a result ended.
+ */
+public enum SearchStatus {
+    /** The search reached a local optimum (or proved optimality) before any limit. */
+    CONVERGED,
+    /** The search was cut short by the caller's latency budget; the best solution found so far is returned. */
+    DEADLINE,
+    /** The search was cut short by the configured time limit; the best solution found so far is returned. */
+    TIME_LIMIT,
+    /** The search stopped early because its objective had stopped improving. */
+    PLATEAU,
+    /** No solution was found. */
+    NO_SOLUTION
+}
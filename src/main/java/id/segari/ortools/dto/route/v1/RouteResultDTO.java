@@ -1,8 +1,13 @@
 package id.segari.ortools.dto.route.v1;
 
+import id.segari.ortools.dto.route.SearchStatus;
+
 import java.util.ArrayList;
 import java.util.List;
 
 public record RouteResultDTO(
-        List<ArrayList<Long>> result
+        List<ArrayList<Long>> result,
+        boolean approximateMatrix,
+        SearchStatus searchStatus,
+        List<Long> prunedOrderIds
 ) {}
@@ -1,8 +1,13 @@
 package id.segari.ortools.dto.route.v2;
 
+import id.segari.ortools.dto.route.SearchStatus;
+
 import java.util.List;
 
 public record TspResultDTO(
-        List<Long> routes
+        List<Long> routes,
+        boolean approximateMatrix,
+        SearchStatus searchStatus,
+        List<Long> prunedOrderIds
 ) {
 }
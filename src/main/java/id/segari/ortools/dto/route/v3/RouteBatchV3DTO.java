@@ -0,0 +1,8 @@
+package id.segari.ortools.dto.route.v3;
+
+import java.util.List;
+
+public record RouteBatchV3DTO(
+        List<RouteV3DTO> problems
+) {
+}
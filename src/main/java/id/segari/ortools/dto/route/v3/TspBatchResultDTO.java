@@ -0,0 +1,17 @@
+package id.segari.ortools.dto.route.v3;
+
+import id.segari.ortools.dto.route.v2.TspResultDTO;
+
+/**
+ * The outcome of one problem of a batch: its result, or the error that failed it alone.
+ *
+ * @param index     position of the problem in the batch request
+ * @param errorCode null when the problem was solved
+ */
+public record TspBatchResultDTO(
+        int index,
+        TspResultDTO data,
+        String errorCode,
+        String errors
+) {
+}
@@ -3,6 +3,9 @@ package id.segari.ortools.error;
 import id.segari.ortools.exception.BaseException;
 import org.springframework.http.HttpStatus;
 
+import java.time.Duration;
+import java.util.List;
+
 public class SegariRoutingErrors {
     public static BaseException emptyOrder() {
         return BaseException.builder()
@@ -91,4 +94,71 @@ public class SegariRoutingErrors {
                 .httpStatus(HttpStatus.SERVICE_UNAVAILABLE)
                 .build();
     }
+
+    public static BaseException solverSaturated(Duration retryAfter) {
+        return BaseException.builder()
+                .message("Solver queue is full, retry later")
+                .errorCode("SOLVER_SATURATED")
+                .httpStatus(HttpStatus.TOO_MANY_REQUESTS)
+                .retryAfter(retryAfter)
+                .build();
+    }
+
+    public static BaseException solverMemoryExhausted(long requiredBytes, Duration retryAfter) {
+        return BaseException.builder()
+                .message("Not enough solver memory for this problem (needs ~" + requiredBytes / (1024 * 1024) + " MB), retry later")
+                .errorCode("SOLVER_MEMORY_EXHAUSTED")
+                .httpStatus(HttpStatus.SERVICE_UNAVAILABLE)
+                .retryAfter(retryAfter)
+                .build();
+    }
+
+    public static BaseException solverProblemTooLarge(int nodeCount) {
+        return BaseException.builder()
+                .message("Problem with " + nodeCount + " nodes exceeds the solver memory budget")
+                .errorCode("SOLVER_PROBLEM_TOO_LARGE")
+                .httpStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+                .build();
+    }
+
+    public static BaseException solverInterrupted() {
+        return BaseException.builder()
+                .message("Interrupted while waiting for the solver")
+                .errorCode("SOLVER_INTERRUPTED")
+                .httpStatus(HttpStatus.SERVICE_UNAVAILABLE)
+                .build();
+    }
+
+    public static BaseException solverDeadlineExceeded(Duration retryAfter) {
+        return BaseException.builder()
+                .message("Request deadline passed while waiting for a solver thread, retry later")
+                .errorCode("SOLVER_DEADLINE_EXCEEDED")
+                .httpStatus(HttpStatus.SERVICE_UNAVAILABLE)
+                .retryAfter(retryAfter)
+                .build();
+    }
+
+    public static BaseException mandatoryOrderUnreachable(List<Long> orderIds, long maxDistanceInMeter) {
+        return BaseException.builder()
+                .message("Mandatory orders " + orderIds + " are farther than " + maxDistanceInMeter + " m from the SP and cannot be routed")
+                .errorCode("MANDATORY_ORDER_UNREACHABLE")
+                .httpStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+                .build();
+    }
+
+    public static BaseException mandatoryOrderMissesTimeWindow(List<Long> orderIds) {
+        return BaseException.builder()
+                .message("Mandatory orders " + orderIds + " cannot be reached from the SP within their time window")
+                .errorCode("MANDATORY_ORDER_TIME_WINDOW_UNREACHABLE")
+                .httpStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+                .build();
+    }
+
+    public static BaseException mandatoryOrdersExceedCapacity(int mandatoryOrderCount, int maxOrderCount) {
+        return BaseException.builder()
+                .message(mandatoryOrderCount + " mandatory orders cannot fit a route of at most " + maxOrderCount + " orders")
+                .errorCode("MANDATORY_ORDERS_EXCEED_CAPACITY")
+                .httpStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+                .build();
+    }
 }
@@ -2,10 +2,13 @@ package id.segari.ortools.exception;
 
 import org.springframework.http.HttpStatus;
 
+import java.time.Duration;
+
 public class BaseException extends RuntimeException {
     private String message;
     private String errorCode;
     private HttpStatus httpStatus;
+    private Duration retryAfter;
 
     public BaseException() {
     }
@@ -16,6 +19,11 @@ public class BaseException extends RuntimeException {
         this.httpStatus = httpStatus;
     }
 
+    public BaseException(String message, String errorCode, HttpStatus httpStatus, Duration retryAfter) {
+        this(message, errorCode, httpStatus);
+        this.retryAfter = retryAfter;
+    }
+
     @Override
     public String getMessage() {
         return message;
@@ -41,6 +49,14 @@ public class BaseException extends RuntimeException {
         this.httpStatus = httpStatus;
     }
 
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -49,6 +65,7 @@ public class BaseException extends RuntimeException {
         private String message;
         private String errorCode;
         private HttpStatus httpStatus;
+        private Duration retryAfter;
 
         public Builder message(String message) {
             this.message = message;
@@ -65,8 +82,13 @@ public class BaseException extends RuntimeException {
             return this;
         }
 
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
         public BaseException build() {
-            return new BaseException(message, errorCode, httpStatus);
+            return new BaseException(message, errorCode, httpStatus, retryAfter);
         }
     }
 }
@@ -0,0 +1,195 @@
+package id.segari.ortools.external;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker around OSRM table calls.
+ * The last {@code window-size} calls are tracked; once at least {@code minimum-calls} were seen and either the
+ * failure rate or the rate of calls slower than {@code slow-call-threshold} reaches its threshold, the breaker
+ * opens for {@code open-duration}. After that a single trial call is let through: success closes the breaker,
+ * failure or slowness opens it again.
+ * <p>
+ * Every permission is a generation token, and every state change starts a new generation. Outcomes are only recorded
+ * for the current generation, so a call that started before the breaker opened, or another call finishing while the
+ * trial is in flight, can neither close nor reopen it. A trial that has not reported back within {@code open-duration}
+ * is abandoned and the next caller becomes the trial, so a lost outcome cannot keep the breaker half-open for good.
+ */
+@Component
+public class OSRMCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(OSRMCircuitBreaker.class);
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    /** Returned by {@link #tryAcquirePermission()} when OSRM must not be called. */
+    public static final long REJECTED = -1;
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallThresholdNanos;
+    private final double slowCallRateThreshold;
+    private final long openDurationNanos;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final byte[] window;
+    private final Counter rejectedCounter;
+
+    private State state = State.CLOSED;
+    private int windowIndex;
+    private int recordedCalls;
+    private int failedCalls;
+    private int slowCalls;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long trialStartedAt;
+    private long generation;
+
+    @Autowired
+    public OSRMCircuitBreaker(@Value("${osrm.circuit-breaker.enabled:true}") boolean enabled,
+                              @Value("${osrm.circuit-breaker.window-size:20}") int windowSize,
+                              @Value("${osrm.circuit-breaker.minimum-calls:5}") int minimumCalls,
+                              @Value("${osrm.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                              @Value("${osrm.circuit-breaker.slow-call-threshold:5s}") Duration slowCallThreshold,
+                              @Value("${osrm.circuit-breaker.slow-call-rate-threshold:0.5}") double slowCallRateThreshold,
+                              @Value("${osrm.circuit-breaker.open-duration:30s}") Duration openDuration,
+                              MeterRegistry meterRegistry) {
+        this(enabled, windowSize, minimumCalls, failureRateThreshold, slowCallThreshold, slowCallRateThreshold,
+                openDuration, meterRegistry, System::nanoTime);
+    }
+
+    OSRMCircuitBreaker(boolean enabled, int windowSize, int minimumCalls, double failureRateThreshold,
+                       Duration slowCallThreshold, double slowCallRateThreshold, Duration openDuration,
+                       MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        if (windowSize < 1) throw new IllegalArgumentException("osrm.circuit-breaker.window-size must be positive");
+        this.enabled = enabled;
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThresholdNanos = slowCallThreshold.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+        this.rejectedCounter = meterRegistry.counter("osrm.circuit.rejected");
+        Gauge.builder("osrm.circuit.state", this, breaker -> breaker.state().ordinal())
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the permit to report the call's outcome with, or {@link #REJECTED} when OSRM must not be called right
+     * now and the caller should fall back
+     */
+    public long tryAcquirePermission() {
+        if (!enabled) return 0;
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (state == State.OPEN && now - openedAt >= openDurationNanos) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.CLOSED) return generation;
+            if (state == State.HALF_OPEN && (!trialInFlight || now - trialStartedAt >= openDurationNanos)) {
+                trialInFlight = true;
+                trialStartedAt = now;
+                return ++generation;
+            }
+            rejectedCounter.increment();
+            return REJECTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess(long permit, long elapsedNanos) {
+        record(permit, elapsedNanos >= slowCallThresholdNanos ? SLOW : 0);
+    }
+
+    public void onError(long permit, long elapsedNanos) {
+        record(permit, (byte) (FAILED | (elapsedNanos >= slowCallThresholdNanos ? SLOW : 0)));
+    }
+
+    State state() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(long permit, byte outcome) {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            // Outcomes of calls permitted before the last state change carry no information about the current one
+            if (permit != generation) return;
+            switch (state) {
+                case HALF_OPEN -> {
+                    if (outcome == 0) close();
+                    else open();
+                }
+                case CLOSED -> {
+                    pushOutcome(outcome);
+                    if (recordedCalls >= minimumCalls && (rate(failedCalls) >= failureRateThreshold || rate(slowCalls) >= slowCallRateThreshold)) {
+                        open();
+                    }
+                }
+                case OPEN -> { }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void pushOutcome(byte outcome) {
+        if (recordedCalls == window.length) {
+            byte evicted = window[windowIndex];
+            if ((evicted & FAILED) != 0) failedCalls--;
+            if ((evicted & SLOW) != 0) slowCalls--;
+        } else {
+            recordedCalls++;
+        }
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        if ((outcome & FAILED) != 0) failedCalls++;
+        if ((outcome & SLOW) != 0) slowCalls++;
+    }
+
+    private double rate(int calls) {
+        return (double) calls / recordedCalls;
+    }
+
+    private void open() {
+        if (state != State.OPEN) log.warn("OSRM circuit breaker opened, serving approximate matrices");
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        trialInFlight = false;
+        generation++;
+    }
+
+    private void close() {
+        log.info("OSRM circuit breaker closed");
+        state = State.CLOSED;
+        windowIndex = 0;
+        recordedCalls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        trialInFlight = false;
+        generation++;
+    }
+}
@@ -0,0 +1,11 @@
+package id.segari.ortools.external;
+
+/**
+ * Rectangle of a request matrix: the cells {@code sources × destinations}, as indices into the request locations.
+ */
+record OSRMMatrixBlock(int[] sources, int[] destinations) {
+
+    int cellCount() {
+        return sources.length * destinations.length;
+    }
+}
@@ -0,0 +1,107 @@
+package id.segari.ortools.external;
+
+import id.segari.ortools.util.BoundedTtlCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pairwise cache of unscaled OSRM distances/durations keyed on quantized coordinates.
+ * Durations are stored before any scale factor is applied so one entry serves every scaleFactor.
+ * Misses fall through to the persistent {@link OSRMMatrixStore}, so a restarted instance starts warm.
+ */
+@Component
+public class OSRMMatrixCache {
+
+    private static final double COORDINATE_PRECISION = 1e5; // ~1.1m at the equator
+
+    private final boolean enabled;
+    private final BoundedTtlCache<CoordinatePair, Cell> cache;
+    private final OSRMMatrixStore store;
+    private final AtomicReference<String> currentDataVersion = new AtomicReference<>();
+
+    public OSRMMatrixCache(@Value("${osrm.cache.enabled:true}") boolean enabled,
+                           @Value("${osrm.cache.max-entries:500000}") int maxEntries,
+                           @Value("${osrm.cache.ttl:6h}") Duration ttl,
+                           OSRMMatrixStore store,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.store = store;
+        this.cache = new BoundedTtlCache<>(maxEntries, ttl);
+        FunctionCounter.builder("osrm.matrix.cache.hits", cache, BoundedTtlCache::hitCount).register(meterRegistry);
+        FunctionCounter.builder("osrm.matrix.cache.misses", cache, BoundedTtlCache::missCount).register(meterRegistry);
+        FunctionCounter.builder("osrm.matrix.cache.evictions", cache, BoundedTtlCache::evictionCount).register(meterRegistry);
+        Gauge.builder("osrm.matrix.cache.size", cache, BoundedTtlCache::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static long quantize(LatLong location) {
+        long lat = Math.round(location.latitude() * COORDINATE_PRECISION);
+        long lng = Math.round(location.longitude() * COORDINATE_PRECISION);
+        return (lat << 32) | (lng & 0xFFFFFFFFL);
+    }
+
+    public static long[] quantize(List<LatLong> locations) {
+        long[] points = new long[locations.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = quantize(locations.get(i));
+        }
+        return points;
+    }
+
+    public Cell get(long from, long to) {
+        if (!enabled) return null;
+        CoordinatePair key = new CoordinatePair(from, to);
+        Cell cell = cache.get(key);
+        if (cell != null || !store.isEnabled()) return cell;
+        cell = store.get(from, to);
+        if (cell != null) cache.put(key, cell);
+        return cell;
+    }
+
+    public void put(long from, long to, double distance, double duration) {
+        if (!enabled) return;
+        cache.put(new CoordinatePair(from, to), new Cell(distance, duration));
+        store.put(from, to, distance, duration);
+    }
+
+    /**
+     * Like {@link #put} for the first {@code count} pairs, but persists them in one batch.
+     */
+    public void putAll(long[] from, long[] to, double[] distances, double[] durations, int count) {
+        if (!enabled) return;
+        for (int i = 0; i < count; i++) {
+            cache.put(new CoordinatePair(from[i], to[i]), new Cell(distances[i], durations[i]));
+        }
+        store.putAll(from, to, distances, durations, count);
+    }
+
+    /**
+     * Drops every tier when OSRM reports a dataset build other than the one the cached entries came from.
+     */
+    public void observeDataVersion(String dataVersion) {
+        if (dataVersion == null || dataVersion.isBlank()) return;
+        String previous = currentDataVersion.getAndSet(dataVersion);
+        boolean storeWiped = store.useDataVersion(dataVersion);
+        if (storeWiped || (previous != null && !previous.equals(dataVersion))) cache.clear();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private record CoordinatePair(long from, long to) {
+    }
+
+    public record Cell(double distance, double duration) {
+    }
+}
@@ -0,0 +1,377 @@
+package id.segari.ortools.external;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * On-disk second tier of {@link OSRMMatrixCache} that survives restarts and redeployments.
+ * Two memory-mapped files live in {@code directory}:
+ * <ul>
+ *     <li>{@code matrix.log}: append-only fixed-size records (from, to, distance, duration)</li>
+ *     <li>{@code matrix.idx}: open-addressing hash table from the quantized coordinate pair to the record number</li>
+ * </ul>
+ * Both headers carry the OSRM {@code data_version} the entries were computed against and the time the store was
+ * started; when OSRM reports a different build, or the store is older than {@code max-age}, it is wiped. Nothing is
+ * persisted while the data version is unknown, i.e. neither {@code osrm.data-version} is set nor OSRM has reported
+ * one yet, so unversioned entries can never outlive a map rebuild; entries loaded from disk are still served until
+ * {@code max-age}. Writing the {@code max-entries}th record starts a fresh store. Files are mapped on first use, and
+ * the OS pages them in on demand.
+ */
+@Component
+public class OSRMMatrixStore {
+
+    private static final Logger log = LoggerFactory.getLogger(OSRMMatrixStore.class);
+    private static final int MAGIC = 0x4F53524D; // "OSRM"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT_OFFSET = 8;
+    private static final int CREATED_AT_OFFSET = 16;
+    private static final int DATA_VERSION_OFFSET = 24;
+    private static final int MAX_DATA_VERSION_BYTES = HEADER_BYTES - DATA_VERSION_OFFSET - 2;
+    private static final int RECORD_BYTES = 24;
+    private static final int SLOT_BYTES = 24;
+    private static final String LOG_FILE = "matrix.log";
+    private static final String INDEX_FILE = "matrix.idx";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int maxEntries;
+    private final int slotMask;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private volatile boolean opened;
+    private boolean failed;
+    private String dataVersion;
+    private boolean dataVersionConfirmed;
+    private boolean unknownVersionLogged;
+    private long createdAt;
+    private int entries;
+    private MappedByteBuffer logBuffer;
+    private MappedByteBuffer indexBuffer;
+
+    @Autowired
+    public OSRMMatrixStore(@Value("${osrm.cache.persistent.enabled:false}") boolean enabled,
+                           @Value("${osrm.cache.persistent.directory:${java.io.tmpdir}/osrm-matrix-store}") Path directory,
+                           @Value("${osrm.cache.persistent.max-entries:1000000}") int maxEntries,
+                           @Value("${osrm.cache.persistent.max-age:7d}") Duration maxAge,
+                           @Value("${osrm.data-version:}") String dataVersion,
+                           MeterRegistry meterRegistry) {
+        this(enabled, directory, maxEntries, maxAge, dataVersion, meterRegistry, System::currentTimeMillis);
+    }
+
+    OSRMMatrixStore(boolean enabled, Path directory, int maxEntries, Duration maxAge, String dataVersion,
+                    MeterRegistry meterRegistry, LongSupplier clock) {
+        if (maxEntries < 1) throw new IllegalArgumentException("osrm.cache.persistent.max-entries must be positive");
+        if (!maxAge.isPositive()) throw new IllegalArgumentException("osrm.cache.persistent.max-age must be positive");
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+        // Keep the load factor at or below 0.5 so probe sequences stay short
+        this.slotMask = Integer.highestOneBit(Math.max(1, maxEntries - 1)) * 4 - 1;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.clock = clock;
+        this.dataVersion = dataVersion == null ? "" : dataVersion.trim();
+        this.dataVersionConfirmed = !this.dataVersion.isEmpty();
+        FunctionCounter.builder("osrm.matrix.store.hits", hits, LongAdder::sum).register(meterRegistry);
+        FunctionCounter.builder("osrm.matrix.store.misses", misses, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("osrm.matrix.store.size", this, OSRMMatrixStore::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public OSRMMatrixCache.Cell get(long from, long to) {
+        if (!ensureOpen()) return null;
+        lock.readLock().lock();
+        try {
+            int record = isExpired() ? -1 : findRecord(from, to);
+            if (record < 0) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            int position = HEADER_BYTES + record * RECORD_BYTES;
+            return new OSRMMatrixCache.Cell(logBuffer.getFloat(position + 16), logBuffer.getFloat(position + 20));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(long from, long to, double distance, double duration) {
+        if (!ensureOpen()) return;
+        lock.writeLock().lock();
+        try {
+            if (!prepareWrite()) return;
+            insert(from, to, distance, duration);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores {@code count} pairs under one acquisition of the write lock, so a fetched tile costs one lock round trip
+     * instead of one per cell.
+     */
+    public void putAll(long[] from, long[] to, double[] distances, double[] durations, int count) {
+        if (!ensureOpen()) return;
+        lock.writeLock().lock();
+        try {
+            if (!prepareWrite()) return;
+            for (int i = 0; i < count; i++) {
+                insert(from[i], to[i], distances[i], durations[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Wipes the store when OSRM reports a dataset build other than the one the entries were computed against, and
+     * allows writes from then on.
+     *
+     * @return true when the store was wiped
+     */
+    public boolean useDataVersion(String observedDataVersion) {
+        if (observedDataVersion == null || observedDataVersion.isBlank() || !ensureOpen()) return false;
+        lock.writeLock().lock();
+        try {
+            dataVersionConfirmed = true;
+            if (observedDataVersion.equals(dataVersion)) return false;
+            log.info("OSRM data version changed from '{}' to '{}', dropping {} persisted matrix entries",
+                    dataVersion, observedDataVersion, entries);
+            dataVersion = observedDataVersion;
+            reset();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        if (!opened) return 0;
+        lock.readLock().lock();
+        try {
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (logBuffer != null) logBuffer.force();
+            if (indexBuffer != null) indexBuffer.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean ensureOpen() {
+        if (!enabled) return false;
+        if (opened) return true;
+        lock.writeLock().lock();
+        try {
+            if (opened) return true;
+            if (failed) return false;
+            open();
+            opened = true;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            log.error("Persistent OSRM matrix store at {} is unavailable, continuing without it", directory, e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        long logBytes = HEADER_BYTES + (long) maxEntries * RECORD_BYTES;
+        long indexBytes = HEADER_BYTES + (long) (slotMask + 1) * SLOT_BYTES;
+        Path logFile = directory.resolve(LOG_FILE);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        // A different layout (e.g. max-entries changed) cannot be reused, so start over before mapping
+        boolean layoutChanged = !Files.exists(logFile) || Files.size(logFile) != logBytes
+                || !Files.exists(indexFile) || Files.size(indexFile) != indexBytes;
+
+        logBuffer = map(logFile, logBytes, layoutChanged);
+        indexBuffer = map(indexFile, indexBytes, layoutChanged);
+
+        String storedDataVersion = readDataVersion(logBuffer);
+        long loggedEntries = logBuffer.getLong(COUNT_OFFSET);
+        long indexedEntries = indexBuffer.getLong(COUNT_OFFSET);
+        boolean valid = !layoutChanged
+                && hasValidHeader(logBuffer) && hasValidHeader(indexBuffer)
+                && !storedDataVersion.isEmpty() && storedDataVersion.equals(readDataVersion(indexBuffer))
+                && (dataVersion.isEmpty() || dataVersion.equals(storedDataVersion))
+                && logBuffer.getLong(CREATED_AT_OFFSET) == indexBuffer.getLong(CREATED_AT_OFFSET)
+                && indexedEntries <= loggedEntries && indexedEntries <= maxEntries;
+        if (valid) {
+            dataVersion = storedDataVersion;
+            createdAt = logBuffer.getLong(CREATED_AT_OFFSET);
+            entries = (int) indexedEntries;
+            if (isExpired()) {
+                log.info("Persistent OSRM matrix store is older than its max age, dropping {} entries", entries);
+                reset();
+            } else {
+                log.info("Loaded persistent OSRM matrix store with {} entries (data version '{}')", entries, dataVersion);
+            }
+        } else {
+            reset();
+        }
+    }
+
+    /**
+     * Must be called with the write lock held.
+     *
+     * @return false when nothing may be persisted because the OSRM data version is unknown
+     */
+    private boolean prepareWrite() {
+        if (!dataVersionConfirmed) {
+            if (!unknownVersionLogged) {
+                unknownVersionLogged = true;
+                log.warn("OSRM data version is unknown, not persisting matrix entries until OSRM reports one or osrm.data-version is set");
+            }
+            return false;
+        }
+        if (isExpired()) {
+            log.info("Persistent OSRM matrix store is older than its max age, dropping {} entries", entries);
+            reset();
+        }
+        return true;
+    }
+
+    private boolean isExpired() {
+        return clock.getAsLong() - createdAt >= maxAgeMillis;
+    }
+
+    private static MappedByteBuffer map(Path file, long bytes, boolean truncate) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (truncate) channel.truncate(0);
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+
+    private void reset() {
+        entries = 0;
+        createdAt = clock.getAsLong();
+        writeHeader(logBuffer);
+        writeHeader(indexBuffer);
+        byte[] zeros = new byte[64 * SLOT_BYTES];
+        for (int position = HEADER_BYTES; position < indexBuffer.capacity(); position += zeros.length) {
+            indexBuffer.put(position, zeros, 0, Math.min(zeros.length, indexBuffer.capacity() - position));
+        }
+    }
+
+    private void writeHeader(MappedByteBuffer buffer) {
+        byte[] version = dataVersion.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(version.length, MAX_DATA_VERSION_BYTES);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(COUNT_OFFSET, 0);
+        buffer.putLong(CREATED_AT_OFFSET, createdAt);
+        buffer.putShort(DATA_VERSION_OFFSET, (short) length);
+        buffer.put(DATA_VERSION_OFFSET + 2, version, 0, length);
+    }
+
+    private static boolean hasValidHeader(MappedByteBuffer buffer) {
+        return buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT_VERSION;
+    }
+
+    private static String readDataVersion(MappedByteBuffer buffer) {
+        int length = buffer.getShort(DATA_VERSION_OFFSET);
+        if (length < 0 || length > MAX_DATA_VERSION_BYTES) return "";
+        byte[] version = new byte[length];
+        buffer.get(DATA_VERSION_OFFSET + 2, version);
+        return new String(version, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Must be called with the write lock held.
+     */
+    private void insert(long from, long to, double distance, double duration) {
+        int slot = findSlot(from, to);
+        int slotPosition = HEADER_BYTES + slot * SLOT_BYTES;
+        if (indexBuffer.getInt(slotPosition + 16) != 0) return;
+        if (entries >= maxEntries) {
+            // Rotate rather than freeze, so pairs first seen after the store filled up are persisted too
+            log.info("Persistent OSRM matrix store is full, dropping {} entries", entries);
+            reset();
+            slot = findSlot(from, to);
+            slotPosition = HEADER_BYTES + slot * SLOT_BYTES;
+        }
+
+        int record = entries;
+        int recordPosition = HEADER_BYTES + record * RECORD_BYTES;
+        logBuffer.putLong(recordPosition, from);
+        logBuffer.putLong(recordPosition + 8, to);
+        logBuffer.putFloat(recordPosition + 16, (float) distance);
+        logBuffer.putFloat(recordPosition + 20, (float) duration);
+        entries = record + 1;
+        // The log count moves first, so a crash can only leave an unindexed record, never a dangling slot
+        logBuffer.putLong(COUNT_OFFSET, entries);
+
+        indexBuffer.putLong(slotPosition, from);
+        indexBuffer.putLong(slotPosition + 8, to);
+        indexBuffer.putInt(slotPosition + 16, record + 1);
+        indexBuffer.putLong(COUNT_OFFSET, entries);
+    }
+
+    /**
+     * @return the record number of the pair, or -1 when it is not stored
+     */
+    private int findRecord(long from, long to) {
+        int position = HEADER_BYTES + findSlot(from, to) * SLOT_BYTES;
+        int record = indexBuffer.getInt(position + 16) - 1;
+        return record < entries ? record : -1;
+    }
+
+    /**
+     * @return the slot holding the pair, or the empty slot where it would be inserted
+     */
+    private int findSlot(long from, long to) {
+        int slot = mix(from, to) & slotMask;
+        while (true) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            if (indexBuffer.getInt(position + 16) == 0) return slot;
+            if (indexBuffer.getLong(position) == from && indexBuffer.getLong(position + 8) == to) return slot;
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private static int mix(long from, long to) {
+        long hash = from * 0x9E3779B97F4A7C15L + to;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
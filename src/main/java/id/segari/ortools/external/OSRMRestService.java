@@ -1,5 +1,7 @@
 package id.segari.ortools.external;
 
+import id.segari.ortools.solver.Deadline;
+
 import java.util.List;
 
 public interface OSRMRestService {
@@ -9,6 +11,18 @@ public interface OSRMRestService {
      * @param locations List of latitude/longitude coordinates
      * @return Distance and duration matrices
      */
-    OSRMTableResponseDTO getMatrix(List<LatLong> locations);
-    OSRMTableResponseDTO getMatrixWithScaleFactor(List<LatLong> locations, double scaleFactor);
+    default OSRMTableResponseDTO getMatrix(List<LatLong> locations) {
+        return getMatrix(locations, Deadline.none());
+    }
+
+    default OSRMTableResponseDTO getMatrixWithScaleFactor(List<LatLong> locations, double scaleFactor) {
+        return getMatrixWithScaleFactor(locations, scaleFactor, Deadline.none());
+    }
+
+    /**
+     * Like {@link #getMatrix(List)}, but spends at most a share of what is left of {@code deadline} waiting for OSRM;
+     * past that the uncached cells are estimated and the response is marked approximate.
+     */
+    OSRMTableResponseDTO getMatrix(List<LatLong> locations, Deadline deadline);
+    OSRMTableResponseDTO getMatrixWithScaleFactor(List<LatLong> locations, double scaleFactor, Deadline deadline);
 }
@@ -1,88 +1,230 @@
 package id.segari.ortools.external;
 
-import id.segari.ortools.error.SegariRoutingErrors;
-import org.springframework.beans.factory.annotation.Qualifier;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.util.DistanceMatrix;
+import id.segari.ortools.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
 
 @Service
 public class OSRMRestServiceImpl implements OSRMRestService {
 
-    private static final String ANNOTATIONS = "duration,distance";
-    private static final String OSRM_OK = "Ok";
-    private final RestClient restClient;
+    private static final double NO_SCALE = 1.0;
+    private final OSRMTableFetcher tableFetcher;
+    private final OSRMMatrixCache matrixCache;
+    private final OSRMCircuitBreaker circuitBreaker;
+    private final OSRMRoadCalibration roadCalibration;
+    private final SingleFlight<MatrixRequestKey, OSRMTableResponseDTO> inFlightRequests = new SingleFlight<>();
+    private final Counter approximatedCounter;
+    private final Counter deadlineExceededCounter;
+    private final double deadlineShare;
 
-    public OSRMRestServiceImpl(@Qualifier("osrmRestClient") RestClient restClient) {
-        this.restClient = restClient;
+    public OSRMRestServiceImpl(OSRMTableFetcher tableFetcher, OSRMMatrixCache matrixCache,
+                               OSRMCircuitBreaker circuitBreaker, OSRMRoadCalibration roadCalibration,
+                               @Value("${osrm.table.deadline-share:0.5}") double deadlineShare,
+                               MeterRegistry meterRegistry) {
+        if (deadlineShare <= 0 || deadlineShare > 1) throw new IllegalArgumentException("osrm.table.deadline-share must be in (0, 1]");
+        this.tableFetcher = tableFetcher;
+        this.matrixCache = matrixCache;
+        this.circuitBreaker = circuitBreaker;
+        this.roadCalibration = roadCalibration;
+        this.deadlineShare = deadlineShare;
+        this.approximatedCounter = meterRegistry.counter("osrm.matrix.approximated");
+        this.deadlineExceededCounter = meterRegistry.counter("osrm.matrix.deadline.exceeded");
+        FunctionCounter.builder("osrm.matrix.requests.executed", inFlightRequests, SingleFlight::executionCount).register(meterRegistry);
+        FunctionCounter.builder("osrm.matrix.requests.coalesced", inFlightRequests, SingleFlight::coalescedCount).register(meterRegistry);
     }
 
     @Override
-    public OSRMTableResponseDTO getMatrix(List<LatLong> locations) {
-        return fetchMatrix(locations, null);
+    public OSRMTableResponseDTO getMatrix(List<LatLong> locations, Deadline deadline) {
+        return fetchMatrix(locations, NO_SCALE, deadline);
     }
 
     @Override
-    public OSRMTableResponseDTO getMatrixWithScaleFactor(List<LatLong> locations, double scaleFactor) {
-        return fetchMatrix(locations, scaleFactor);
+    public OSRMTableResponseDTO getMatrixWithScaleFactor(List<LatLong> locations, double scaleFactor, Deadline deadline) {
+        return fetchMatrix(locations, scaleFactor, deadline);
     }
 
-    private OSRMTableResponseDTO fetchMatrix(List<LatLong> locations, Double scaleFactor) {
-        String coordinates = buildCoordinates(locations);
-        OSRMApiResponseDTO response = callOsrmApi(coordinates, scaleFactor);
-        validateResponse(response);
-        return convertResponse(response);
+    private OSRMTableResponseDTO fetchMatrix(List<LatLong> locations, double scaleFactor, Deadline deadline) {
+        long[] points = OSRMMatrixCache.quantize(locations);
+        MatrixRequestKey key = new MatrixRequestKey(points, scaleFactor);
+        if (!deadline.isBounded()) {
+            // Callers preprocess the matrices in place, so every caller gets its own copy of the shared result
+            return copyOf(inFlightRequests.execute(key, () -> buildMatrix(locations, points, scaleFactor)));
+        }
+
+        long timeoutNanos = (long) (deadline.remaining().toNanos() * deadlineShare);
+        CompletableFuture<OSRMTableResponseDTO> fetch = CompletableFuture.supplyAsync(
+                () -> inFlightRequests.execute(key, () -> buildMatrix(locations, points, scaleFactor)),
+                task -> Thread.ofVirtual().name("osrm-deadline-fetch").start(task));
+        try {
+            return copyOf(fetch.get(timeoutNanos, TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            // The fetch keeps running and fills the cache for later requests; this one goes ahead on estimates
+            deadlineExceededCounter.increment();
+            DistanceMatrix durations = new DistanceMatrix(points.length);
+            DistanceMatrix distances = new DistanceMatrix(points.length);
+            boolean[] missing = fillFromCache(points, scaleFactor, durations, distances);
+            return approximate(locations, missing, scaleFactor, durations, distances);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            if (e.getCause() instanceof Error error) throw error;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for OSRM", e);
+        }
     }
 
-    private String buildCoordinates(List<LatLong> locations) {
-        return locations.stream()
-                .map(loc -> loc.longitude() + "," + loc.latitude())
-                .collect(Collectors.joining(";"));
+    private OSRMTableResponseDTO buildMatrix(List<LatLong> locations, long[] points, double scaleFactor) {
+        DistanceMatrix durations = new DistanceMatrix(points.length);
+        DistanceMatrix distances = new DistanceMatrix(points.length);
+
+        boolean[] missing = fillFromCache(points, scaleFactor, durations, distances);
+        List<OSRMMatrixBlock> blocks = planMissingBlocks(missing, points.length);
+        if (blocks.isEmpty()) return new OSRMTableResponseDTO(durations, distances, false);
+
+        long permit = circuitBreaker.tryAcquirePermission();
+        if (permit == OSRMCircuitBreaker.REJECTED) {
+            // OSRM is considered down: estimate only the cells the cache could not serve, and never cache the estimates
+            return approximate(locations, missing, scaleFactor, durations, distances);
+        }
+
+        long startedAt = System.nanoTime();
+        String dataVersion;
+        try {
+            // Always ask OSRM for unscaled durations so the cached entries are reusable for any scaleFactor
+            dataVersion = tableFetcher.fetch(locations, blocks, (sources, destinations, tileDistances, tileDurations) -> {
+                long[] from = new long[tileDistances.length];
+                long[] to = new long[tileDistances.length];
+                for (int a = 0; a < sources.length; a++) {
+                    int i = sources[a];
+                    for (int b = 0; b < destinations.length; b++) {
+                        int j = destinations[b];
+                        int cell = a * destinations.length + b;
+                        from[cell] = points[i];
+                        to[cell] = points[j];
+                        durations.set(i, j, Math.round(tileDurations[cell] * scaleFactor));
+                        distances.set(i, j, Math.round(tileDistances[cell]));
+                    }
+                }
+                matrixCache.putAll(from, to, tileDistances, tileDurations, tileDistances.length);
+                roadCalibration.recordTile(locations, sources, destinations, tileDistances, tileDurations);
+            });
+        } catch (RuntimeException | Error e) {
+            // Every permit must be resolved, or a failed half-open trial would keep the breaker rejecting
+            circuitBreaker.onError(permit, System.nanoTime() - startedAt);
+            throw e;
+        }
+        circuitBreaker.onSuccess(permit, System.nanoTime() - startedAt);
+        matrixCache.observeDataVersion(dataVersion);
+        return new OSRMTableResponseDTO(durations, distances, false);
     }
 
-    private OSRMApiResponseDTO callOsrmApi(String coordinates, Double scaleFactor) {
-        if (scaleFactor == null) {
-            return restClient.get()
-                    .uri("/table/v1/driving/{coordinates}?annotations={annotations}",
-                            coordinates, ANNOTATIONS)
-                    .retrieve()
-                    .body(OSRMApiResponseDTO.class);
+    private OSRMTableResponseDTO approximate(List<LatLong> locations, boolean[] missing, double scaleFactor,
+                                             DistanceMatrix durations, DistanceMatrix distances) {
+        approximatedCounter.increment();
+        roadCalibration.approximate(locations, missing, scaleFactor, durations, distances);
+        return new OSRMTableResponseDTO(durations, distances, true);
+    }
+
+    /**
+     * @return row-major flags of the cells that could not be served from cache
+     */
+    private boolean[] fillFromCache(long[] points, double scaleFactor, DistanceMatrix durations, DistanceMatrix distances) {
+        int size = points.length;
+        boolean[] missing = new boolean[size * size];
+        if (!matrixCache.isEnabled()) {
+            Arrays.fill(missing, true);
+            return missing;
         }
-        return restClient.get()
-                .uri("/table/v1/driving/{coordinates}?annotations={annotations}&scale_factor={scaleFactor}",
-                        coordinates, ANNOTATIONS, scaleFactor)
-                .retrieve()
-                .body(OSRMApiResponseDTO.class);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                OSRMMatrixCache.Cell cell = matrixCache.get(points[i], points[j]);
+                if (cell == null) {
+                    missing[i * size + j] = true;
+                    continue;
+                }
+                durations.set(i, j, Math.round(cell.duration() * scaleFactor));
+                distances.set(i, j, Math.round(cell.distance()));
+            }
+        }
+        return missing;
     }
 
-    private void validateResponse(OSRMApiResponseDTO response) {
-        if (response == null) {
-            throw SegariRoutingErrors.osrmNullResponse();
+    /**
+     * Covers the missing cells with as few source/destination rectangles as possible.
+     * A point whose self-pair is missing is treated as new: its whole row and column are fetched
+     * (new × all, then known × new). Whatever is left among known points (e.g. evicted pairs)
+     * is fetched as one rows × columns rectangle.
+     */
+    private static List<OSRMMatrixBlock> planMissingBlocks(boolean[] missing, int size) {
+        boolean[] isNew = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            isNew[i] = missing[i * size + i];
+        }
+        int[] all = IntStream.range(0, size).toArray();
+        int[] newPoints = IntStream.range(0, size).filter(i -> isNew[i]).toArray();
+        int[] knownPoints = IntStream.range(0, size).filter(i -> !isNew[i]).toArray();
+
+        List<OSRMMatrixBlock> blocks = new ArrayList<>();
+        if (newPoints.length > 0) {
+            blocks.add(new OSRMMatrixBlock(newPoints, all));
+            if (knownPoints.length > 0) blocks.add(new OSRMMatrixBlock(knownPoints, newPoints));
+        }
+
+        boolean[] leftoverRows = new boolean[size];
+        boolean[] leftoverColumns = new boolean[size];
+        for (int i : knownPoints) {
+            for (int j : knownPoints) {
+                if (missing[i * size + j]) {
+                    leftoverRows[i] = true;
+                    leftoverColumns[j] = true;
+                }
+            }
         }
-        if (!OSRM_OK.equals(response.code())) {
-            throw SegariRoutingErrors.osrmInvalidResponse(response.code());
+        int[] rows = IntStream.range(0, size).filter(i -> leftoverRows[i]).toArray();
+        if (rows.length > 0) {
+            blocks.add(new OSRMMatrixBlock(rows, IntStream.range(0, size).filter(j -> leftoverColumns[j]).toArray()));
         }
+        return blocks;
     }
 
-    private OSRMTableResponseDTO convertResponse(OSRMApiResponseDTO response) {
-        long[][] durations = convertToLongMatrix(response.durations());
-        long[][] distances = convertToLongMatrix(response.distances());
-        return new OSRMTableResponseDTO(durations, distances);
+    private static OSRMTableResponseDTO copyOf(OSRMTableResponseDTO response) {
+        return new OSRMTableResponseDTO(response.durations().copy(), response.distances().copy(), response.approximate());
     }
 
-    private long[][] convertToLongMatrix(double[][] matrix) {
-        if (matrix == null) {
-            return new long[0][0];
+    /**
+     * Canonical identity of a matrix request: the quantized coordinates in request order plus the scale factor.
+     */
+    private record MatrixRequestKey(long[] points, double scaleFactor) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MatrixRequestKey other
+                    && Double.compare(scaleFactor, other.scaleFactor) == 0
+                    && Arrays.equals(points, other.points);
         }
-        long[][] result = new long[matrix.length][];
-        for (int i = 0; i < matrix.length; i++) {
-            result[i] = new long[matrix[i].length];
-            for (int j = 0; j < matrix[i].length; j++) {
-                result[i][j] = Math.round(matrix[i][j]);
-            }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(points) + Double.hashCode(scaleFactor);
+        }
+
+        @Override
+        public String toString() {
+            return "MatrixRequestKey{points=" + points.length + ", scaleFactor=" + scaleFactor + "}";
         }
-        return result;
     }
 }
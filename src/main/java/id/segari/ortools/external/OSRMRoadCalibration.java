@@ -0,0 +1,200 @@
+package id.segari.ortools.external;
+
+import id.segari.ortools.util.DistanceMatrix;
+import id.segari.ortools.util.GeoUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Learns how road distance and travel time relate to straight-line distance from real OSRM cells,
+ * per square region of {@code region-size-degrees} around the source point.
+ * Used to estimate matrices while OSRM is unavailable: road distance = haversine × detour factor,
+ * duration = road distance / speed. Regions with too few samples fall back to the global figures,
+ * and those to conservative urban defaults.
+ */
+@Component
+public class OSRMRoadCalibration {
+
+    static final double DEFAULT_DETOUR_FACTOR = 1.4;
+    static final double DEFAULT_METERS_PER_SECOND = 7.0;
+    // Very short hops are dominated by snapping to the road network and would skew the detour factor
+    private static final double MIN_SAMPLE_HAVERSINE_IN_METER = 300;
+    // Evenly spaced rows of a tile are sampled up to about this many cells; the sums forget old samples anyway
+    private static final int MAX_TILE_SAMPLES = 1024;
+
+    private final double regionSizeDegrees;
+    private final int minSamples;
+    private final int maxSamples;
+    private final Map<Long, RegionStats> regions = new ConcurrentHashMap<>();
+    private final RegionStats global;
+
+    public OSRMRoadCalibration(@Value("${osrm.calibration.region-size-degrees:0.1}") double regionSizeDegrees,
+                               @Value("${osrm.calibration.min-samples:30}") int minSamples,
+                               @Value("${osrm.calibration.max-samples:5000}") int maxSamples,
+                               MeterRegistry meterRegistry) {
+        if (regionSizeDegrees <= 0) throw new IllegalArgumentException("osrm.calibration.region-size-degrees must be positive");
+        this.regionSizeDegrees = regionSizeDegrees;
+        this.minSamples = Math.max(1, minSamples);
+        this.maxSamples = Math.max(this.minSamples * 2, maxSamples);
+        this.global = new RegionStats(this.maxSamples);
+        Gauge.builder("osrm.calibration.regions", regions, Map::size).register(meterRegistry);
+    }
+
+    public record Factors(double detourFactor, double metersPerSecond) {
+    }
+
+    /**
+     * Feeds one unscaled OSRM tile, row-major over {@code sources} x {@code destinations} indices into
+     * {@code locations}; safe to call concurrently. A bounded sample of the tile's rows is summed locally and merged
+     * into each touched region and the global figures once per tile.
+     */
+    public void recordTile(List<LatLong> locations, int[] sources, int[] destinations, double[] distances, double[] durations) {
+        int columns = destinations.length;
+        if (sources.length == 0 || columns == 0) return;
+        int rowStride = Math.max(1, (int) Math.ceil((double) sources.length * columns / MAX_TILE_SAMPLES));
+        int rows = (sources.length + rowStride - 1) / rowStride;
+        double[] sourceLatitudes = new double[rows];
+        double[] sourceLongitudes = new double[rows];
+        for (int row = 0; row < rows; row++) {
+            LatLong from = locations.get(sources[row * rowStride]);
+            sourceLatitudes[row] = from.latitude();
+            sourceLongitudes[row] = from.longitude();
+        }
+        double[] destinationLatitudes = new double[columns];
+        double[] destinationLongitudes = new double[columns];
+        for (int b = 0; b < columns; b++) {
+            LatLong to = locations.get(destinations[b]);
+            destinationLatitudes[b] = to.latitude();
+            destinationLongitudes[b] = to.longitude();
+        }
+        double[] haversines = GeoUtils.getHaversineDistancesInMeter(sourceLatitudes, sourceLongitudes,
+                destinationLatitudes, destinationLongitudes);
+
+        Map<Long, Sums> tileRegions = new HashMap<>();
+        Sums tileTotal = new Sums();
+        for (int row = 0; row < rows; row++) {
+            int a = row * rowStride;
+            Sums region = null;
+            for (int b = 0; b < columns; b++) {
+                int cell = a * columns + b;
+                double haversine = haversines[row * columns + b];
+                if (distances[cell] <= 0 || durations[cell] <= 0 || haversine < MIN_SAMPLE_HAVERSINE_IN_METER) continue;
+                if (region == null) region = tileRegions.computeIfAbsent(regionOf(locations.get(sources[a])), key -> new Sums());
+                region.add(haversine, distances[cell], durations[cell]);
+                tileTotal.add(haversine, distances[cell], durations[cell]);
+            }
+        }
+        if (tileTotal.samples == 0) return;
+        tileRegions.forEach((key, sums) -> regions.computeIfAbsent(key, region -> new RegionStats(maxSamples)).merge(sums));
+        global.merge(tileTotal);
+    }
+
+    public Factors factorsFor(LatLong point) {
+        RegionStats region = regions.get(regionOf(point));
+        Factors factors = region == null ? null : region.factors(minSamples);
+        if (factors != null) return factors;
+        factors = global.factors(minSamples);
+        return factors != null ? factors : new Factors(DEFAULT_DETOUR_FACTOR, DEFAULT_METERS_PER_SECOND);
+    }
+
+    /**
+     * Fills the {@code missing} cells (row-major flags) with estimates; {@code scaleFactor} applies to durations only.
+     */
+    public void approximate(List<LatLong> locations, boolean[] missing, double scaleFactor,
+                            DistanceMatrix durations, DistanceMatrix distances) {
+        int size = locations.size();
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = locations.get(i).latitude();
+            longitudes[i] = locations.get(i).longitude();
+        }
+        DistanceMatrix haversine = GeoUtils.getHaversineDistanceMatrixInMeter(latitudes, longitudes);
+
+        for (int i = 0; i < size; i++) {
+            Factors factors = factorsFor(locations.get(i));
+            for (int j = 0; j < size; j++) {
+                if (!missing[i * size + j]) continue;
+                double roadDistance = haversine.get(i, j) * factors.detourFactor();
+                distances.set(i, j, Math.round(roadDistance));
+                durations.set(i, j, Math.round(roadDistance / factors.metersPerSecond() * scaleFactor));
+            }
+        }
+    }
+
+    private long regionOf(LatLong point) {
+        long latitudeCell = (long) Math.floor(point.latitude() / regionSizeDegrees);
+        long longitudeCell = (long) Math.floor(point.longitude() / regionSizeDegrees);
+        return (latitudeCell << 32) | (longitudeCell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sums of one tile's samples, collected without locking before they are merged into {@link RegionStats}.
+     */
+    private static final class Sums {
+        private double haversineSum;
+        private double distanceSum;
+        private double durationSum;
+        private int samples;
+
+        void add(double haversine, double distance, double duration) {
+            haversineSum += haversine;
+            distanceSum += distance;
+            durationSum += duration;
+            samples++;
+        }
+    }
+
+    /**
+     * Running sums with exponential forgetting: whenever {@code maxSamples} is exceeded every sum is halved,
+     * so the factors follow recent traffic rather than the whole uptime.
+     */
+    private static final class RegionStats {
+        private final int maxSamples;
+        private final ReentrantLock lock = new ReentrantLock();
+        private double haversineSum;
+        private double distanceSum;
+        private double durationSum;
+        private int samples;
+
+        private RegionStats(int maxSamples) {
+            this.maxSamples = maxSamples;
+        }
+
+        void merge(Sums sums) {
+            lock.lock();
+            try {
+                haversineSum += sums.haversineSum;
+                distanceSum += sums.distanceSum;
+                durationSum += sums.durationSum;
+                samples += sums.samples;
+                while (samples > maxSamples) {
+                    haversineSum /= 2;
+                    distanceSum /= 2;
+                    durationSum /= 2;
+                    samples /= 2;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Factors factors(int minSamples) {
+            lock.lock();
+            try {
+                if (samples < minSamples) return null;
+                return new Factors(Math.max(1.0, distanceSum / haversineSum), distanceSum / durationSum);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package id.segari.ortools.external;
+
+import id.segari.ortools.error.SegariRoutingErrors;
+import id.segari.ortools.exception.BaseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Fetches rectangles of the OSRM table service. Blocks larger than OSRM's {@code max-table-size}
+ * are split into tiles that are fetched concurrently on virtual threads; the number of in-flight
+ * tile calls is bounded across all requests, and every tile is retried on its own.
+ */
+@Component
+public class OSRMTableFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OSRMTableFetcher.class);
+    private static final String ANNOTATIONS = "duration,distance";
+    private static final String ALL_INDICES = "all";
+
+    private final RestClient restClient;
+    private final int maxCoordinates;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final Semaphore inFlightTiles;
+    private final Counter tileCounter;
+    private final Counter tileRetryCounter;
+
+    public OSRMTableFetcher(@Qualifier("osrmRestClient") RestClient restClient,
+                            @Value("${osrm.table.max-coordinates:100}") int maxCoordinates,
+                            @Value("${osrm.table.max-concurrency:8}") int maxConcurrency,
+                            @Value("${osrm.table.max-attempts:3}") int maxAttempts,
+                            @Value("${osrm.table.retry-backoff-millis:200}") long retryBackoffMillis,
+                            MeterRegistry meterRegistry) {
+        if (maxCoordinates < 2) throw new IllegalArgumentException("osrm.table.max-coordinates must be at least 2");
+        this.restClient = restClient;
+        this.maxCoordinates = maxCoordinates;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.inFlightTiles = new Semaphore(Math.max(1, maxConcurrency), true);
+        this.tileCounter = meterRegistry.counter("osrm.table.tiles");
+        this.tileRetryCounter = meterRegistry.counter("osrm.table.tile.retries");
+    }
+
+    @FunctionalInterface
+    interface TileConsumer {
+        /**
+         * Receives one unscaled tile, row-major over {@code sources} x {@code destinations}; invoked concurrently from
+         * tile threads for disjoint tiles.
+         */
+        void accept(int[] sources, int[] destinations, double[] distances, double[] durations);
+    }
+
+    /**
+     * @return the OSRM {@code data_version} reported by the tiles, or null when none was reported
+     */
+    String fetch(List<LatLong> locations, List<OSRMMatrixBlock> blocks, TileConsumer consumer) {
+        List<OSRMMatrixBlock> tiles = new ArrayList<>();
+        for (OSRMMatrixBlock block : blocks) {
+            tiles.addAll(split(block));
+        }
+        if (tiles.isEmpty()) return null;
+        if (tiles.size() == 1) {
+            return fetchTile(locations, tiles.getFirst(), consumer);
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> futures = tiles.stream()
+                    .map(tile -> executor.submit(() -> fetchTile(locations, tile, consumer)))
+                    .toList();
+            String dataVersion = null;
+            try {
+                for (Future<String> future : futures) {
+                    String tileDataVersion = awaitTile(future);
+                    if (tileDataVersion != null) dataVersion = tileDataVersion;
+                }
+            } catch (RuntimeException e) {
+                executor.shutdownNow();
+                throw e;
+            }
+            return dataVersion;
+        }
+    }
+
+    List<OSRMMatrixBlock> split(OSRMMatrixBlock block) {
+        int[] sources = block.sources();
+        int[] destinations = block.destinations();
+        if (sources.length == 0 || destinations.length == 0) return List.of();
+
+        // A tile never references more than maxCoordinates distinct coordinates (sources + destinations)
+        int destinationStep = Math.min(destinations.length, maxCoordinates / 2);
+        int sourceStep = Math.min(sources.length, maxCoordinates - destinationStep);
+        destinationStep = Math.min(destinations.length, maxCoordinates - sourceStep);
+
+        List<OSRMMatrixBlock> tiles = new ArrayList<>();
+        for (int s = 0; s < sources.length; s += sourceStep) {
+            int[] tileSources = Arrays.copyOfRange(sources, s, Math.min(sources.length, s + sourceStep));
+            for (int d = 0; d < destinations.length; d += destinationStep) {
+                int[] tileDestinations = Arrays.copyOfRange(destinations, d, Math.min(destinations.length, d + destinationStep));
+                tiles.add(new OSRMMatrixBlock(tileSources, tileDestinations));
+            }
+        }
+        return tiles;
+    }
+
+    private String fetchTile(List<LatLong> locations, OSRMMatrixBlock tile, TileConsumer consumer) {
+        inFlightTiles.acquireUninterruptibly();
+        try {
+            tileCounter.increment();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return fetchBlock(locations, tile, consumer);
+                } catch (RuntimeException e) {
+                    if (attempt >= maxAttempts) throw e;
+                    tileRetryCounter.increment();
+                    log.warn("OSRM table tile {}x{} failed on attempt {}: {}",
+                            tile.sources().length, tile.destinations().length, attempt, e.getMessage());
+                    backoff(attempt);
+                }
+            }
+        } finally {
+            inFlightTiles.release();
+        }
+    }
+
+    private String fetchBlock(List<LatLong> locations, OSRMMatrixBlock block, TileConsumer consumer) {
+        // Only the coordinates referenced by the block are sent; sources/destinations index into that subset
+        int[] coordinateIndices = IntStream.concat(Arrays.stream(block.sources()), Arrays.stream(block.destinations()))
+                .distinct()
+                .sorted()
+                .toArray();
+        List<LatLong> blockLocations = Arrays.stream(coordinateIndices).mapToObj(locations::get).toList();
+
+        int rows = block.sources().length;
+        int columns = block.destinations().length;
+        double[] durations = new double[rows * columns];
+        double[] distances = new double[rows * columns];
+        String dataVersion = callOsrmApi(buildCoordinates(blockLocations),
+                buildIndices(block.sources(), coordinateIndices),
+                buildIndices(block.destinations(), coordinateIndices),
+                rows, columns, durations, distances);
+
+        consumer.accept(block.sources(), block.destinations(), distances, durations);
+        return dataVersion;
+    }
+
+    private String buildCoordinates(List<LatLong> locations) {
+        return locations.stream()
+                .map(loc -> loc.longitude() + "," + loc.latitude())
+                .collect(Collectors.joining(";"));
+    }
+
+    private String buildIndices(int[] indices, int[] coordinateIndices) {
+        if (indices.length == coordinateIndices.length) return ALL_INDICES;
+        return Arrays.stream(indices)
+                .map(index -> Arrays.binarySearch(coordinateIndices, index))
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(";"));
+    }
+
+    private String callOsrmApi(String coordinates, String sources, String destinations,
+                               int rows, int columns, double[] durations, double[] distances) {
+        return restClient.get()
+                .uri("/table/v1/driving/{coordinates}?annotations={annotations}&sources={sources}&destinations={destinations}",
+                        coordinates, ANNOTATIONS, sources, destinations)
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isError()) {
+                        throw SegariRoutingErrors.osrmApiError(response.getStatusCode().toString());
+                    }
+                    return OSRMTableResponseParser.parse(response.getBody(), rows, columns, durations, distances);
+                });
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMillis * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SegariRoutingErrors.osrmApiError("interrupted while retrying table tile");
+        }
+    }
+
+    private static String awaitTile(Future<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SegariRoutingErrors.osrmApiError("interrupted while fetching table tiles");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BaseException baseException) throw baseException;
+            throw SegariRoutingErrors.osrmApiError(e.getCause().getMessage());
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package id.segari.ortools.external;
 
+import id.segari.ortools.util.DistanceMatrix;
+
+/**
+ * @param approximate true when some cells were estimated from calibrated haversine instead of OSRM
+ */
 public record OSRMTableResponseDTO(
-        long[][] durations,
-        long[][] distances
+        DistanceMatrix durations,
+        DistanceMatrix distances,
+        boolean approximate
 ) {
 }
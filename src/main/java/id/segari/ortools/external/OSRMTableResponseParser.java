@@ -0,0 +1,79 @@
+package id.segari.ortools.external;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import id.segari.ortools.error.SegariRoutingErrors;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Token-level decoder for the OSRM table response.
+ * Only {@code code}, {@code data_version}, {@code durations} and {@code distances} are read; {@code sources}, {@code destinations}
+ * and anything else are skipped without materialising objects. Matrix values are written straight into
+ * flat row-major primitive buffers, so no {@code double[][]}, DTO or response String is ever allocated.
+ */
+final class OSRMTableResponseParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String OSRM_OK = "Ok";
+
+    private OSRMTableResponseParser() {
+    }
+
+    /**
+     * @param durations row-major buffer of {@code rows * columns} cells receiving unscaled durations in seconds
+     * @param distances row-major buffer of {@code rows * columns} cells receiving distances in meters
+     * @return the {@code data_version} of the OSRM dataset, or null when the dataset was built without one
+     */
+    static String parse(InputStream body, int rows, int columns, double[] durations, double[] distances) throws IOException {
+        String code = null;
+        String dataVersion = null;
+        boolean hasDurations = false;
+        boolean hasDistances = false;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) throw SegariRoutingErrors.osrmNullResponse();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "code" -> code = parser.getValueAsString();
+                    case "data_version" -> dataVersion = parser.getValueAsString();
+                    case "durations" -> hasDurations = readMatrix(parser, value, rows, columns, durations);
+                    case "distances" -> hasDistances = readMatrix(parser, value, rows, columns, distances);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        if (code == null) throw SegariRoutingErrors.osrmNullResponse();
+        if (!OSRM_OK.equals(code)) throw SegariRoutingErrors.osrmInvalidResponse(code);
+        if (!hasDurations || !hasDistances) throw SegariRoutingErrors.osrmInvalidResponse(code);
+        return dataVersion;
+    }
+
+    private static boolean readMatrix(JsonParser parser, JsonToken token, int rows, int columns, double[] target) throws IOException {
+        if (token == JsonToken.VALUE_NULL) return false;
+        if (token != JsonToken.START_ARRAY) throw SegariRoutingErrors.osrmInvalidResponse("malformed table");
+
+        int row = 0;
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            if (row >= rows) throw SegariRoutingErrors.osrmInvalidResponse("unexpected table rows");
+            int offset = row * columns;
+            int column = 0;
+            JsonToken cell;
+            while ((cell = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (column >= columns) throw SegariRoutingErrors.osrmInvalidResponse("unexpected table columns");
+                // OSRM returns null for unroutable pairs; keep the historical behaviour of treating it as 0
+                target[offset + column] = cell == JsonToken.VALUE_NULL ? 0 : parser.getDoubleValue();
+                column++;
+            }
+            if (column != columns) throw SegariRoutingErrors.osrmInvalidResponse("unexpected table columns");
+            row++;
+        }
+        if (row != rows) throw SegariRoutingErrors.osrmInvalidResponse("unexpected table rows");
+        return true;
+    }
+}
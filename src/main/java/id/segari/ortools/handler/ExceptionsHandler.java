@@ -3,11 +3,14 @@ package id.segari.ortools.handler;
 import id.segari.ortools.dto.ResponseDTO;
 import id.segari.ortools.exception.BaseException;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.util.Objects;
+
 @RestControllerAdvice
 public class ExceptionsHandler {
 
@@ -20,9 +23,11 @@ public class ExceptionsHandler {
 
     @ExceptionHandler(BaseException.class)
     public ResponseEntity<ResponseDTO<?>> handleException(BaseException ex){
-        return ResponseEntity
-                .status(ex.getHttpStatus())
-                .body(new ResponseDTO<>(null, ex.getMessage()));
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(ex.getHttpStatus());
+        if (Objects.nonNull(ex.getRetryAfter())) {
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())));
+        }
+        return response.body(new ResponseDTO<>(null, ex.getMessage()));
     }
 
 }
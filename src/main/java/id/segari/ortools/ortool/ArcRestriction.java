@@ -0,0 +1,106 @@
+package id.segari.ortools.ortool;
+
+import com.google.ortools.constraintsolver.RoutingIndexManager;
+import com.google.ortools.constraintsolver.RoutingModel;
+import id.segari.ortools.util.DistanceMatrix;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Restricts which nodes may follow each order to its {@code solver.arc-restriction.neighbours} nearest orders within
+ * the route's distance limit, so the search no longer scans arcs the distance caps already made prohibitive or that
+ * are too long to ever be worth taking. Only applied to models of at least {@code solver.arc-restriction.min-nodes}
+ * nodes.
+ * <p>
+ * What feasibility needs is always kept: vehicle starts keep every successor, every order may still end its route or
+ * be left unvisited (its own index), and nodes before the first order, such as an SP visited as a regular node, stay
+ * reachable from every order and keep every successor.
+ */
+@Component
+public class ArcRestriction {
+
+    private final boolean enabled;
+    private final int neighbours;
+    private final int minNodes;
+    private final Counter restrictedCounter;
+
+    public ArcRestriction(@Value("${solver.arc-restriction.enabled:false}") boolean enabled,
+                          @Value("${solver.arc-restriction.neighbours:20}") int neighbours,
+                          @Value("${solver.arc-restriction.min-nodes:100}") int minNodes,
+                          MeterRegistry meterRegistry) {
+        if (neighbours <= 0) throw new IllegalArgumentException("solver.arc-restriction.neighbours must be positive, got " + neighbours);
+        this.enabled = enabled;
+        this.neighbours = neighbours;
+        this.minNodes = minNodes;
+        this.restrictedCounter = Counter.builder("solver.arc.restriction.models").register(meterRegistry);
+    }
+
+    /**
+     * Must be called before the model is closed.
+     *
+     * @param maxDistance    arcs longer than this are infeasible and never kept
+     * @param firstOrderNode the first node that is an order; the nodes before it are never restricted
+     */
+    public void restrict(RoutingModel routing, RoutingIndexManager manager, DistanceMatrix distances, long maxDistance,
+                         int firstOrderNode) {
+        if (!enabled || distances.size() < minNodes || distances.size() - firstOrderNode <= neighbours + 1) return;
+
+        int indexCount = (int) routing.size();
+        int[] regularIndexOfNode = new int[distances.size()];
+        Arrays.fill(regularIndexOfNode, -1);
+        for (int index = 0; index < indexCount; index++) {
+            if (!routing.isStart(index)) regularIndexOfNode[manager.indexToNode(index)] = index;
+        }
+        long[] kept = new long[neighbours + firstOrderNode + routing.vehicles() + 1];
+        int[][] nearest = nearestSuccessors(distances, maxDistance, firstOrderNode, neighbours);
+
+        for (int index = 0; index < indexCount; index++) {
+            if (routing.isStart(index)) continue;
+            int node = manager.indexToNode(index);
+            if (node < firstOrderNode) continue;
+
+            int count = 0;
+            kept[count++] = index;
+            for (int vehicle = 0; vehicle < routing.vehicles(); vehicle++) kept[count++] = routing.end(vehicle);
+            for (int special = 0; special < firstOrderNode; special++) {
+                if (regularIndexOfNode[special] >= 0) kept[count++] = regularIndexOfNode[special];
+            }
+            for (int successor : nearest[node]) {
+                if (regularIndexOfNode[successor] >= 0) kept[count++] = regularIndexOfNode[successor];
+            }
+            routing.nextVar(index).setValues(Arrays.copyOf(kept, count));
+        }
+        restrictedCounter.increment();
+    }
+
+    /**
+     * For every order node, the (at most) {@code neighbours} other orders closest to it among those reachable within
+     * {@code maxDistance}, nearest first. Nodes before {@code firstOrderNode} get no entries.
+     */
+    static int[][] nearestSuccessors(DistanceMatrix distances, long maxDistance, int firstOrderNode, int neighbours) {
+        int size = distances.size();
+        int[][] nearest = new int[size][];
+        // Distance in the high bits and node in the low bits, so sorting orders by distance without boxing
+        long[] candidates = new long[size];
+        for (int from = 0; from < size; from++) {
+            if (from < firstOrderNode) {
+                nearest[from] = new int[0];
+                continue;
+            }
+            int count = 0;
+            for (int to = firstOrderNode; to < size; to++) {
+                int distance = distances.get(from, to);
+                if (to == from || distance > maxDistance) continue;
+                candidates[count++] = ((long) distance << 32) | to;
+            }
+            Arrays.sort(candidates, 0, count);
+            nearest[from] = new int[Math.min(neighbours, count)];
+            for (int i = 0; i < nearest[from].length; i++) nearest[from][i] = (int) candidates[i];
+        }
+        return nearest;
+    }
+}
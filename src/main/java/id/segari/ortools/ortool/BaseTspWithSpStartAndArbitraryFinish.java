@@ -2,10 +2,10 @@ package id.segari.ortools.ortool;
 
 import com.google.ortools.Loader;
 import com.google.ortools.constraintsolver.*;
-import com.google.protobuf.Duration;
 import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
 import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
 import id.segari.ortools.error.SegariRoutingErrors;
+import id.segari.ortools.util.DistanceMatrix;
 
 import java.util.*;
 
@@ -31,34 +31,16 @@ public abstract class BaseTspWithSpStartAndArbitraryFinish {
         return type.equals(order.type());
     }
 
-    protected static boolean isDummyNode(int index, List<RouteOrderV2DTO> orders) {
-        return isNodeType(orders.get(index), SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY);
-    }
-
-    protected static boolean isSpNode(int index, List<RouteOrderV2DTO> orders) {
-        return isNodeType(orders.get(index), SegariRouteOrderDTO.SegariRouteOrderEnum.SP);
-    }
-
-    protected static boolean isOrderNode(int index, List<RouteOrderV2DTO> orders) {
-        return isNodeType(orders.get(index), SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER);
-    }
-
-    protected static boolean isSpecialNode(int index, List<RouteOrderV2DTO> orders) {
-        return isDummyNode(index, orders) || isSpNode(index, orders);
-    }
-
-    protected static boolean isExtensionEdge(int i, int j, List<RouteOrderV2DTO> orders) {
-        return Boolean.TRUE.equals(orders.get(i).isExtension()) || Boolean.TRUE.equals(orders.get(j).isExtension());
-    }
-
-    protected static Set<Integer> getExtensionOrderIndices(List<RouteOrderV2DTO> orders) {
-        Set<Integer> indices = new HashSet<>();
-        for (int i = ORDER_START_INDEX; i < orders.size(); i++) {
-            if (Boolean.TRUE.equals(orders.get(i).isExtension())) {
-                indices.add(i);
-            }
-        }
-        return indices;
+    /**
+     * Drops the orders farther from the SP than the route may travel: the extension limit when any order is an
+     * extension, the non-extension limit otherwise.
+     */
+    protected static ReachabilityPruner.Pruned<RouteOrderV2DTO> pruneUnreachable(List<RouteOrderV2DTO> orders, ReachabilityPruner pruner,
+                                                                                int maxTotalDistanceWithExtension, int maxTotalDistanceWithNonExtension,
+                                                                                Set<Long> mandatoryOrderIds) {
+        int maxTotalDistance = CompiledNodes.of(orders).hasExtensions() ? maxTotalDistanceWithExtension : maxTotalDistanceWithNonExtension;
+        return pruner.prune(orders, RouteOrderV2DTO::id, RouteOrderV2DTO::latitude, RouteOrderV2DTO::longitude,
+                maxTotalDistance, mandatoryOrderIds);
     }
 
     // ==================== Data Preparation ====================
@@ -74,120 +56,94 @@ public abstract class BaseTspWithSpStartAndArbitraryFinish {
 
     // ==================== Routing Setup ====================
 
-    protected static RoutingIndexManager createRoutingManager(long[][] distanceMatrix) {
-        if (distanceMatrix.length == 0) {
+    protected static RoutingIndexManager createRoutingManager(DistanceMatrix distanceMatrix) {
+        if (distanceMatrix.size() == 0) {
             throw SegariRoutingErrors.invalidRoutingParameter("distanceMatrix");
         }
         int[] start = arrayOf(SP_INDEX);
         int[] finish = arrayOf(DUMMY_INDEX);
-        return new RoutingIndexManager(distanceMatrix.length, VEHICLE_COUNT, start, finish);
+        return new RoutingIndexManager(distanceMatrix.size(), VEHICLE_COUNT, start, finish);
     }
 
     // ==================== Dimension Methods ====================
 
-    protected static void addDistanceDimension(RoutingModel routing, RoutingIndexManager manager,
-                                               int maxTotalDistance, long[][] distanceMatrix) {
-        int callback = routing.registerTransitCallback((fromIndex, toIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            int toNode = manager.indexToNode(toIndex);
-            return distanceMatrix[fromNode][toNode];
-        });
+    protected static void addDistanceDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar,
+                                               int maxTotalDistance, DistanceMatrix distanceMatrix) {
+        int callback = transitRegistrar.registerMatrix(routing, manager, distanceMatrix);
         routing.setArcCostEvaluatorOfAllVehicles(callback);
         routing.addDimension(callback, 0, maxTotalDistance, true, "Distance");
     }
 
-    protected static void addMaxOrderCountDimension(RoutingModel routing, RoutingIndexManager manager,
+    protected static void addMaxOrderCountDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar,
                                                     long[] orderDemands, int maxOrderCount) {
-        int callback = routing.registerUnaryTransitCallback(fromIndex -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            return orderDemands[fromNode];
-        });
+        int callback = transitRegistrar.registerVector(routing, manager, orderDemands);
         long[] capacities = new long[]{maxOrderCount};
         routing.addDimensionWithVehicleCapacity(callback, 0, capacities, true, "MaxOrderCount");
     }
 
-    protected static void addNonExtensionCountDimension(RoutingModel routing, RoutingIndexManager manager,
+    protected static void addNonExtensionCountDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar,
                                                         Set<Integer> extensionOrderIndices, int maxNonExtensionCount) {
-        int callback = routing.registerUnaryTransitCallback(fromIndex -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            if (fromNode == DUMMY_INDEX || fromNode == SP_INDEX) return 0;
-            return extensionOrderIndices.contains(fromNode) ? 0 : 1;
-        });
+        long[] nonExtensionDemands = createOrderDemands(manager.getNumberOfNodes());
+        for (int extensionIndex : extensionOrderIndices) {
+            nonExtensionDemands[extensionIndex] = 0;
+        }
+        int callback = transitRegistrar.registerVector(routing, manager, nonExtensionDemands);
         routing.addDimension(callback, 0, maxNonExtensionCount, true, "NonExtensionCount");
     }
 
-    protected static void addNonExtensionDistanceDimension(RoutingModel routing, RoutingIndexManager manager,
+    protected static void addNonExtensionDistanceDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar,
                                                            Set<Integer> extensionOrderIndices,
-                                                           int maxNonExtensionDistance, long[][] distanceMatrix) {
-        int callback = routing.registerTransitCallback((fromIndex, toIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            int toNode = manager.indexToNode(toIndex);
-
-            if (fromNode == DUMMY_INDEX || toNode == DUMMY_INDEX) return 0;
-            if (extensionOrderIndices.contains(fromNode) || extensionOrderIndices.contains(toNode)) return 0;
-
-            return distanceMatrix[fromNode][toNode];
-        });
+                                                           int maxNonExtensionDistance, DistanceMatrix distanceMatrix) {
+        // Arcs touching the dummy node or an extension order do not count towards the non-extension distance
+        DistanceMatrix nonExtensionDistanceMatrix = distanceMatrix.copy();
+        nonExtensionDistanceMatrix.fillRow(DUMMY_INDEX, 0);
+        nonExtensionDistanceMatrix.fillColumn(DUMMY_INDEX, 0);
+        for (int extensionIndex : extensionOrderIndices) {
+            nonExtensionDistanceMatrix.fillRow(extensionIndex, 0);
+            nonExtensionDistanceMatrix.fillColumn(extensionIndex, 0);
+        }
+        int callback = transitRegistrar.registerMatrix(routing, manager, nonExtensionDistanceMatrix);
         routing.addDimension(callback, 0, maxNonExtensionDistance, true, "NonExtensionDistance");
     }
 
-    protected static void addPenaltyAndDropVisit(RoutingModel routing, RoutingIndexManager manager,
-                                                 List<RouteOrderV2DTO> orders, Set<Long> mandatoryOrderIds) {
-        for (int i = ORDER_START_INDEX; i < orders.size(); i++) {
-            long orderId = orders.get(i).id();
-            long penalty = mandatoryOrderIds.contains(orderId) ? MANDATORY_PENALTY : DROP_PENALTY;
-            routing.addDisjunction(new long[]{manager.nodeToIndex(i)}, penalty);
+    protected static void addPenaltyAndDropVisit(RoutingModel routing, RoutingIndexManager manager, long[] dropPenalties) {
+        for (int i = ORDER_START_INDEX; i < dropPenalties.length; i++) {
+            routing.addDisjunction(new long[]{manager.nodeToIndex(i)}, dropPenalties[i]);
         }
     }
 
-    // ==================== Solution ====================
-
-    protected static Assignment findSolution(RoutingModel routing) {
-        RoutingSearchParameters searchParameters = main.defaultRoutingSearchParameters()
-                .toBuilder()
-                .setFirstSolutionStrategy(FirstSolutionStrategy.Value.CHRISTOFIDES)
-                .setTimeLimit(Duration.newBuilder().setSeconds(60).build())
-                .build();
-        return routing.solveWithParameters(searchParameters);
+    protected static long[] dropPenalties(CompiledNodes nodes, Set<Long> mandatoryOrderIds) {
+        long[] penalties = new long[nodes.size()];
+        for (int i = ORDER_START_INDEX; i < nodes.size(); i++) {
+            penalties[i] = mandatoryOrderIds.contains(nodes.id(i)) ? MANDATORY_PENALTY : DROP_PENALTY;
+        }
+        return penalties;
     }
 
-    protected static List<Long> extractResult(RoutingModel routing, RoutingIndexManager manager,
-                                              Assignment solution, List<RouteOrderV2DTO> orders,
-                                              Set<Long> mandatoryOrderIds) {
-        if (Objects.isNull(solution)) return Collections.emptyList();
-
-        List<ArrayList<Long>> results = new ArrayList<>();
-        for (int vehicle = 0; vehicle < VEHICLE_COUNT; vehicle++) {
-            final ArrayList<Long> route = extractVehicleRoute(routing, manager, solution, orders, vehicle);
-            results.add(route);
-        }
+    // ==================== Solution ====================
 
-        if (!mandatoryOrderIds.isEmpty()) {
-            if (!new HashSet<>(results.getFirst()).containsAll(mandatoryOrderIds)) {
-                return Collections.emptyList();
-            }
+    protected static List<Long> toOrderIds(int[] route, CompiledNodes nodes, Set<Long> mandatoryOrderIds) {
+        List<Long> result = new ArrayList<>(route.length);
+        for (int node : route) {
+            result.add(nodes.id(node));
         }
-        return results.isEmpty() ? Collections.emptyList() : results.getFirst();
-    }
-
-    protected static ArrayList<Long> extractVehicleRoute(RoutingModel routing, RoutingIndexManager manager,
-                                                         Assignment solution, List<RouteOrderV2DTO> orders, int vehicle) {
-        ArrayList<Long> route = new ArrayList<>();
-        long index = routing.start(vehicle);
-
-        while (!routing.isEnd(index)) {
-            int nodeIndex = manager.indexToNode(index);
-            long orderId = orders.get(nodeIndex).id();
-            if (orderId != -1L && orderId != -2L) {
-                route.add(orderId);
-            }
-            index = solution.value(routing.nextVar(index));
+        if (!mandatoryOrderIds.isEmpty() && !new HashSet<>(result).containsAll(mandatoryOrderIds)) {
+            return Collections.emptyList();
         }
-        return route;
+        return result;
     }
 
     // ==================== Utility Methods ====================
 
+    protected static List<Long> concat(List<Long> first, List<Long> second) {
+        if (second.isEmpty()) return first;
+        if (first.isEmpty()) return second;
+        List<Long> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+
     protected static long[] createOrderDemands(int orderCount) {
         long[] demands = new long[orderCount];
         for (int i = ORDER_START_INDEX; i < orderCount; i++) {
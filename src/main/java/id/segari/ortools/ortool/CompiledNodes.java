@@ -0,0 +1,122 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The nodes of a request compiled once into primitive arrays: a node type byte, an extension mask and the order ids,
+ * indexed like the matrices. Matrix preprocessing looks node types up per cell, which against the request's list of
+ * records costs a {@code List.get} and an enum comparison each; here it is one array load.
+ */
+final class CompiledNodes {
+
+    static final byte DUMMY = 0;
+    static final byte SP = 1;
+    static final byte ORDER = 2;
+
+    /** Below this many nodes a matrix is preprocessed on the calling thread; forking would cost more than it saves. */
+    static final int PARALLEL_ROWS_THRESHOLD = 256;
+
+    private final byte[] types;
+    private final boolean[] extensions;
+    private final long[] ids;
+
+    private CompiledNodes(byte[] types, boolean[] extensions, long[] ids) {
+        this.types = types;
+        this.extensions = extensions;
+        this.ids = ids;
+    }
+
+    static CompiledNodes of(List<RouteOrderV2DTO> orders) {
+        return compile(orders, RouteOrderV2DTO::type, RouteOrderV2DTO::id, RouteOrderV2DTO::isExtension);
+    }
+
+    static CompiledNodes ofSegariRouteOrders(List<SegariRouteOrderDTO> orders) {
+        return compile(orders, SegariRouteOrderDTO::type, SegariRouteOrderDTO::id, SegariRouteOrderDTO::isExtension);
+    }
+
+    private static <T> CompiledNodes compile(List<T> orders, Function<T, SegariRouteOrderDTO.SegariRouteOrderEnum> type,
+                                             Function<T, Long> id, Function<T, Boolean> isExtension) {
+        int size = orders.size();
+        byte[] types = new byte[size];
+        boolean[] extensions = new boolean[size];
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            T order = orders.get(i);
+            types[i] = switch (type.apply(order)) {
+                case DUMMY -> DUMMY;
+                case SP -> SP;
+                case ORDER -> ORDER;
+                case null -> ORDER;
+            };
+            // Only orders count as extensions, whatever the dummy and SP entries say
+            extensions[i] = types[i] == ORDER && Boolean.TRUE.equals(isExtension.apply(order));
+            Long orderId = id.apply(order);
+            ids[i] = orderId == null ? 0 : orderId;
+        }
+        return new CompiledNodes(types, extensions, ids);
+    }
+
+    int size() {
+        return types.length;
+    }
+
+    boolean isDummy(int node) {
+        return types[node] == DUMMY;
+    }
+
+    boolean isSp(int node) {
+        return types[node] == SP;
+    }
+
+    boolean isOrder(int node) {
+        return types[node] == ORDER;
+    }
+
+    boolean isSpecial(int node) {
+        return types[node] != ORDER;
+    }
+
+    boolean hasExtensions() {
+        for (boolean extension : extensions) {
+            if (extension) return true;
+        }
+        return false;
+    }
+
+    boolean isExtension(int node) {
+        return extensions[node];
+    }
+
+    boolean isExtensionEdge(int from, int to) {
+        return extensions[from] || extensions[to];
+    }
+
+    long id(int node) {
+        return ids[node];
+    }
+
+    /**
+     * The extension mask; callers must not modify it.
+     */
+    boolean[] extensions() {
+        return extensions;
+    }
+
+    /**
+     * Runs {@code row} for every row index of a {@code size} x {@code size} matrix, spread over the common fork/join
+     * pool from {@link #PARALLEL_ROWS_THRESHOLD} nodes on. Rows must only write their own cells.
+     */
+    static void forEachRow(int size, IntConsumer row) {
+        if (size < PARALLEL_ROWS_THRESHOLD) {
+            for (int i = 0; i < size; i++) row.accept(i);
+            return;
+        }
+        IntStream.range(0, size).parallel().forEach(row);
+    }
+}
@@ -0,0 +1,169 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.MAX_ROUTE_TIME;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.SP_INDEX;
+
+/**
+ * Solves TSPs with at most {@code solver.exact.max-orders} orders exactly, in pure Java and without OR-tools.
+ * <p>
+ * This is Held-Karp over (visited orders, last order) extended with optional visits: every state keeps the labels of
+ * its Pareto-optimal partial routes by distance, time and non-extension distance, so the capacity and time window
+ * checks stay exact, and the best route is the cheapest label of any state plus the drop penalties of the orders it
+ * leaves out. Arcs into the dummy end are free, so a route ends at its last order.
+ */
+@Component
+public class ExactTspSolver implements TspEngine {
+
+    public static final String NAME = "exact";
+
+    // 2^16 subsets times 16 last orders is about a million states, well past where the DP stops being instant
+    private static final int MAX_SUPPORTED_ORDERS = 16;
+
+    private record Label(int node, long distance, long time, long nonExtensionDistance, Label previous) {
+
+        boolean dominates(Label other) {
+            return distance <= other.distance && time <= other.time && nonExtensionDistance <= other.nonExtensionDistance;
+        }
+    }
+
+    private final int maxOrders;
+    private final Counter solveCounter;
+
+    public ExactTspSolver(@Value("${solver.exact.max-orders:12}") int maxOrders, MeterRegistry meterRegistry) {
+        if (maxOrders > MAX_SUPPORTED_ORDERS) {
+            throw new IllegalArgumentException("solver.exact.max-orders must not exceed " + MAX_SUPPORTED_ORDERS + ", got " + maxOrders);
+        }
+        this.maxOrders = maxOrders;
+        this.solveCounter = Counter.builder("solver.exact.solves")
+                .description("TSPs solved exactly without OR-tools")
+                .register(meterRegistry);
+    }
+
+    public boolean accepts(int orderCount) {
+        return orderCount <= maxOrders;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    /**
+     * Microseconds of pure Java, not worth waiting for a solver thread.
+     */
+    @Override
+    public boolean needsSolverThread() {
+        return false;
+    }
+
+    /**
+     * Returns the optimal route; the initial route and the deadline do not matter at this size.
+     */
+    @Override
+    public Result solve(TspProblem problem, int[] initialRoute, Deadline deadline) {
+        if (problem.orderCount() > MAX_SUPPORTED_ORDERS) {
+            throw new IllegalArgumentException("Exact solving supports at most " + MAX_SUPPORTED_ORDERS + " orders, got " + problem.orderCount());
+        }
+        solveCounter.increment();
+        int orderCount = problem.orderCount();
+        int nonExtensionMask = nonExtensionMask(problem, orderCount);
+        long[] keptPenalty = new long[1 << orderCount];
+        for (int mask = 1; mask < keptPenalty.length; mask++) {
+            int lowest = Integer.numberOfTrailingZeros(mask);
+            keptPenalty[mask] = keptPenalty[mask & (mask - 1)] + problem.dropPenalties()[ORDER_START_INDEX + lowest];
+        }
+        long totalPenalty = keptPenalty[keptPenalty.length - 1];
+
+        @SuppressWarnings("unchecked")
+        List<Label>[] labels = new List[keptPenalty.length * Math.max(1, orderCount)];
+        Label start = new Label(SP_INDEX, 0, 0, 0, null);
+        for (int order = 0; order < orderCount; order++) {
+            Label label = extend(problem, start, 0, order, nonExtensionMask);
+            if (label != null) insert(labels, (1 << order) * orderCount + order, label);
+        }
+
+        Label best = null;
+        long bestObjective = totalPenalty;
+        // Extending a route only adds bits, so every state is complete before it is expanded
+        for (int mask = 1; mask < keptPenalty.length; mask++) {
+            boolean extensible = Integer.bitCount(mask) < problem.maxOrderCount();
+            for (int last = 0; last < orderCount; last++) {
+                List<Label> state = labels[mask * orderCount + last];
+                if (state == null) continue;
+                for (Label label : state) {
+                    long objective = label.distance() + problem.spanCostCoefficient() * label.time() + totalPenalty - keptPenalty[mask];
+                    if (objective < bestObjective) {
+                        best = label;
+                        bestObjective = objective;
+                    }
+                    if (!extensible) continue;
+                    for (int order = 0; order < orderCount; order++) {
+                        if ((mask & (1 << order)) != 0) continue;
+                        Label next = extend(problem, label, mask, order, nonExtensionMask);
+                        if (next != null) insert(labels, (mask | (1 << order)) * orderCount + order, next);
+                    }
+                }
+            }
+        }
+        return new Result(route(best), SearchStatus.CONVERGED);
+    }
+
+    private static Label extend(TspProblem problem, Label label, int mask, int order, int nonExtensionMask) {
+        int from = label.node();
+        int to = ORDER_START_INDEX + order;
+        if (Integer.bitCount((mask | (1 << order)) & nonExtensionMask) > problem.maxNonExtensionCount()) return null;
+
+        long distance = label.distance() + problem.distances().get(from, to);
+        if (distance > problem.maxTotalDistance()) return null;
+        long time = label.time() + problem.durations().get(from, to);
+        if (time > Math.min(problem.timeWindows()[to][1], MAX_ROUTE_TIME)) return null;
+        boolean extensionArc = problem.extensions()[from] || problem.extensions()[to];
+        long nonExtensionDistance = label.nonExtensionDistance() + (extensionArc ? 0 : problem.distances().get(from, to));
+        if (nonExtensionDistance > problem.maxNonExtensionDistance()) return null;
+        return new Label(to, distance, time, nonExtensionDistance, label);
+    }
+
+    private static void insert(List<Label>[] labels, int index, Label label) {
+        List<Label> state = labels[index];
+        if (state == null) {
+            state = new ArrayList<>(2);
+            labels[index] = state;
+        }
+        for (Label other : state) {
+            if (other.dominates(label)) return;
+        }
+        state.removeIf(label::dominates);
+        state.add(label);
+    }
+
+    private static int nonExtensionMask(TspProblem problem, int orderCount) {
+        int mask = 0;
+        for (int order = 0; order < orderCount; order++) {
+            if (!problem.extensions()[ORDER_START_INDEX + order]) mask |= 1 << order;
+        }
+        return mask;
+    }
+
+    private static int[] route(Label last) {
+        List<Integer> nodes = new ArrayList<>();
+        for (Label label = last; label != null && label.node() != SP_INDEX; label = label.previous()) {
+            nodes.add(label.node());
+        }
+        int[] route = new int[nodes.size()];
+        for (int position = 0; position < route.length; position++) {
+            route[position] = nodes.get(route.length - 1 - position);
+        }
+        return route;
+    }
+}
@@ -0,0 +1,424 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.util.DistanceMatrix;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.MAX_ROUTE_TIME;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.SP_INDEX;
+
+/**
+ * Solves a {@link TspProblem} in pure Java, without any JNI call: greedy insertion builds a first route (starting
+ * from the initial route when it is feasible), then relocate, Or-opt and 2-opt moves improve it until no move helps
+ * or {@code solver.local-search.time-limit} (or the request's deadline) runs out. Orders left out are retried
+ * after every pass.
+ * <p>
+ * A move is described as up to four pieces of the current route and scored in O(1) from prefix sums kept for the
+ * route, walked forwards and backwards; only a move that improves the objective has its time windows checked, from
+ * its first changed position on, and the unchanged tail through a suffix slack. Nothing is allocated per move. Meant
+ * for medium sized, loosely constrained problems; tight time windows are better served by OR-tools.
+ */
+@Component
+public class LocalSearchTspEngine implements TspEngine {
+
+    public static final String NAME = "local-search";
+
+    private static final int MAX_SEGMENT_LENGTH = 3;
+
+    private final Duration timeLimit;
+
+    public LocalSearchTspEngine(@Value("${solver.local-search.time-limit:10s}") Duration timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Result solve(TspProblem problem, int[] initialRoute, Deadline deadline) {
+        long limitNanos = timeLimit.toNanos();
+        boolean limitedByDeadline = false;
+        if (deadline.isBounded() && deadline.remaining().toNanos() < limitNanos) {
+            limitNanos = deadline.remaining().toNanos();
+            limitedByDeadline = true;
+        }
+
+        Search search = new Search(problem, System.nanoTime() + limitNanos);
+        search.construct(initialRoute);
+        boolean converged = search.improve();
+        SearchStatus status = converged ? SearchStatus.CONVERGED : limitedByDeadline ? SearchStatus.DEADLINE : SearchStatus.TIME_LIMIT;
+        return new Result(search.route(), status);
+    }
+
+    private static final class Search {
+
+        private static final int MAX_PIECES = 4;
+
+        private final TspProblem problem;
+        private final long stopAt;
+        private final int[] insertionOrder;
+        private final boolean[] routed;
+        private final long[] due;
+        private final int[] route;
+        private final int[] candidate;
+        private int length;
+        private long objective;
+        private long routedPenalty;
+        private int nonExtensionCount;
+
+        // Per position of the current route: cumulative distance, time and non-extension distance from the SP, the
+        // same sums along the route walked backwards, and the least time-window slack from that position on
+        private final long[] distance;
+        private final long[] arrival;
+        private final long[] nonExtensionDistance;
+        private final long[] reverseDistance;
+        private final long[] reverseArrival;
+        private final long[] reverseNonExtensionDistance;
+        private final long[] slack;
+
+        // The move being scored, as up to four pieces of the current route (or a single unrouted node) in order
+        private final int[] pieceStart = new int[MAX_PIECES];
+        private final int[] pieceEnd = new int[MAX_PIECES];
+        private final int[] pieceNode = new int[MAX_PIECES];
+        private final boolean[] pieceReversed = new boolean[MAX_PIECES];
+        private int pieces;
+
+        Search(TspProblem problem, long stopAt) {
+            this.problem = problem;
+            this.stopAt = stopAt;
+            // Mandatory orders first, then the ones closest to the SP
+            this.insertionOrder = IntStream.range(ORDER_START_INDEX, problem.size()).boxed()
+                    .sorted(Comparator.<Integer>comparingLong(node -> -problem.dropPenalties()[node])
+                            .thenComparingInt(node -> problem.distances().get(SP_INDEX, node)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            this.routed = new boolean[problem.size()];
+            this.due = new long[problem.size()];
+            for (int node = 0; node < due.length; node++) {
+                due[node] = Math.min(problem.timeWindows()[node][1], MAX_ROUTE_TIME);
+            }
+            int capacity = Math.max(0, Math.min(problem.orderCount(), problem.maxOrderCount()));
+            this.route = new int[capacity];
+            this.candidate = new int[capacity];
+            this.distance = new long[capacity];
+            this.arrival = new long[capacity];
+            this.nonExtensionDistance = new long[capacity];
+            this.reverseDistance = new long[capacity];
+            this.reverseArrival = new long[capacity];
+            this.reverseNonExtensionDistance = new long[capacity];
+            this.slack = new long[capacity + 1];
+            refresh();
+        }
+
+        void construct(int[] initialRoute) {
+            if (initialRoute != null && initialRoute.length <= route.length
+                    && problem.objective(initialRoute) != Long.MAX_VALUE) {
+                System.arraycopy(initialRoute, 0, route, 0, initialRoute.length);
+                length = initialRoute.length;
+                for (int node : initialRoute) routed[node] = true;
+                refresh();
+            }
+            insertUnrouted();
+        }
+
+        /**
+         * @return true when the route is a local optimum, false when the time ran out first
+         */
+        boolean improve() {
+            while (true) {
+                if (timeUp()) return false;
+                boolean improved = relocateSegments();
+                if (timeUp()) return false;
+                improved |= twoOpt();
+                improved |= insertUnrouted();
+                if (!improved) return true;
+            }
+        }
+
+        int[] route() {
+            return Arrays.copyOf(route, length);
+        }
+
+        private boolean insertUnrouted() {
+            boolean improved = false;
+            for (int node : insertionOrder) {
+                if (length == route.length) break;
+                if (routed[node]) continue;
+                int bestPosition = -1;
+                long bestObjective = objective;
+                for (int position = 0; position <= length; position++) {
+                    insertion(node, position);
+                    long candidateObjective = score(bestObjective);
+                    if (candidateObjective < bestObjective) {
+                        bestObjective = candidateObjective;
+                        bestPosition = position;
+                    }
+                }
+                if (bestPosition < 0) continue;
+                insertion(node, bestPosition);
+                apply();
+                improved = true;
+            }
+            return improved;
+        }
+
+        /**
+         * Relocate (one order) and Or-opt (two or three consecutive orders) moves: takes the segment out and puts it
+         * back at every other position.
+         */
+        private boolean relocateSegments() {
+            boolean improved = false;
+            for (int segmentLength = 1; segmentLength <= MAX_SEGMENT_LENGTH; segmentLength++) {
+                for (int from = 0; from + segmentLength <= length; from++) {
+                    if (timeUp()) return improved;
+                    for (int to = 0; to <= length - segmentLength; to++) {
+                        if (to == from) continue;
+                        moveSegment(from, segmentLength, to);
+                        if (score(objective) < objective) {
+                            apply();
+                            improved = true;
+                        }
+                    }
+                }
+            }
+            return improved;
+        }
+
+        private boolean twoOpt() {
+            boolean improved = false;
+            for (int first = 0; first < length - 1; first++) {
+                if (timeUp()) return improved;
+                for (int last = first + 1; last < length; last++) {
+                    pieces = 0;
+                    addPiece(0, first - 1, false);
+                    addPiece(first, last, true);
+                    addPiece(last + 1, length - 1, false);
+                    if (score(objective) < objective) {
+                        apply();
+                        improved = true;
+                    }
+                }
+            }
+            return improved;
+        }
+
+        private void insertion(int node, int position) {
+            pieces = 0;
+            addPiece(0, position - 1, false);
+            pieceNode[pieces++] = node;
+            addPiece(position, length - 1, false);
+        }
+
+        /**
+         * Describes the route with the segment at {@code from} moved to {@code to}, where {@code to} is a position in
+         * the route without the segment.
+         */
+        private void moveSegment(int from, int segmentLength, int to) {
+            pieces = 0;
+            if (to < from) {
+                addPiece(0, to - 1, false);
+                addPiece(from, from + segmentLength - 1, false);
+                addPiece(to, from - 1, false);
+                addPiece(from + segmentLength, length - 1, false);
+            } else {
+                addPiece(0, from - 1, false);
+                addPiece(from + segmentLength, to + segmentLength - 1, false);
+                addPiece(from, from + segmentLength - 1, false);
+                addPiece(to + segmentLength, length - 1, false);
+            }
+        }
+
+        private void addPiece(int start, int end, boolean reversed) {
+            if (start > end) return;
+            pieceStart[pieces] = start;
+            pieceEnd[pieces] = end;
+            pieceNode[pieces] = -1;
+            pieceReversed[pieces] = reversed;
+            pieces++;
+        }
+
+        /**
+         * Scores the described move in O(1) from the prefix sums, and only checks the time windows of a move that
+         * beats {@code bound}, from its first changed position on.
+         *
+         * @return the objective of the move, or {@link Long#MAX_VALUE} when it is infeasible or not below {@code bound}
+         */
+        private long score(long bound) {
+            DistanceMatrix distances = problem.distances();
+            DistanceMatrix durations = problem.durations();
+            boolean[] extensions = problem.extensions();
+            long totalDistance = 0;
+            long totalTime = 0;
+            long totalNonExtensionDistance = 0;
+            int count = 0;
+            int candidateNonExtensionCount = nonExtensionCount;
+            long penalty = problem.totalDropPenalty() - routedPenalty;
+            int previous = SP_INDEX;
+            for (int piece = 0; piece < pieces; piece++) {
+                int first = firstNode(piece);
+                int arcDistance = distances.get(previous, first);
+                totalDistance += arcDistance;
+                totalTime += durations.get(previous, first);
+                if (!extensions[first] && !extensions[previous]) totalNonExtensionDistance += arcDistance;
+
+                int node = pieceNode[piece];
+                int start = pieceStart[piece];
+                int end = pieceEnd[piece];
+                if (node >= 0) {
+                    count++;
+                    if (!extensions[node]) candidateNonExtensionCount++;
+                    penalty -= problem.dropPenalties()[node];
+                } else if (pieceReversed[piece]) {
+                    count += end - start + 1;
+                    totalDistance += reverseDistance[end] - reverseDistance[start];
+                    totalTime += reverseArrival[end] - reverseArrival[start];
+                    totalNonExtensionDistance += reverseNonExtensionDistance[end] - reverseNonExtensionDistance[start];
+                } else {
+                    count += end - start + 1;
+                    totalDistance += distance[end] - distance[start];
+                    totalTime += arrival[end] - arrival[start];
+                    totalNonExtensionDistance += nonExtensionDistance[end] - nonExtensionDistance[start];
+                }
+                previous = lastNode(piece);
+            }
+
+            long candidateObjective = totalDistance + problem.spanCostCoefficient() * totalTime + penalty;
+            if (candidateObjective >= bound) return Long.MAX_VALUE;
+            if (count > problem.maxOrderCount() || totalDistance > problem.maxTotalDistance()
+                    || candidateNonExtensionCount > problem.maxNonExtensionCount()
+                    || totalNonExtensionDistance > problem.maxNonExtensionDistance()) {
+                return Long.MAX_VALUE;
+            }
+            return meetsTimeWindows() ? candidateObjective : Long.MAX_VALUE;
+        }
+
+        private boolean meetsTimeWindows() {
+            DistanceMatrix durations = problem.durations();
+            long time = 0;
+            int previous = SP_INDEX;
+            for (int piece = 0; piece < pieces; piece++) {
+                time += durations.get(previous, firstNode(piece));
+                int node = pieceNode[piece];
+                int start = pieceStart[piece];
+                int end = pieceEnd[piece];
+                if (node >= 0) {
+                    if (time > due[node]) return false;
+                } else if (pieceReversed[piece]) {
+                    if (time > due[route[end]]) return false;
+                    for (int position = end - 1; position >= start; position--) {
+                        time += durations.get(route[position + 1], route[position]);
+                        if (time > due[route[position]]) return false;
+                    }
+                } else {
+                    // The current route is feasible, so a piece reached no later than before still is
+                    long shift = time - arrival[start];
+                    if (shift > 0) {
+                        if (end == length - 1) {
+                            if (shift > slack[start]) return false;
+                        } else {
+                            for (int position = start; position <= end; position++) {
+                                if (arrival[position] + shift > due[route[position]]) return false;
+                            }
+                        }
+                    }
+                    time = arrival[end] + shift;
+                }
+                previous = lastNode(piece);
+            }
+            return true;
+        }
+
+        private int firstNode(int piece) {
+            if (pieceNode[piece] >= 0) return pieceNode[piece];
+            return route[pieceReversed[piece] ? pieceEnd[piece] : pieceStart[piece]];
+        }
+
+        private int lastNode(int piece) {
+            if (pieceNode[piece] >= 0) return pieceNode[piece];
+            return route[pieceReversed[piece] ? pieceStart[piece] : pieceEnd[piece]];
+        }
+
+        /**
+         * Makes the described move the current route.
+         */
+        private void apply() {
+            int written = 0;
+            for (int piece = 0; piece < pieces; piece++) {
+                int node = pieceNode[piece];
+                if (node >= 0) {
+                    candidate[written++] = node;
+                    routed[node] = true;
+                } else if (pieceReversed[piece]) {
+                    for (int position = pieceEnd[piece]; position >= pieceStart[piece]; position--) {
+                        candidate[written++] = route[position];
+                    }
+                } else {
+                    int segmentLength = pieceEnd[piece] - pieceStart[piece] + 1;
+                    System.arraycopy(route, pieceStart[piece], candidate, written, segmentLength);
+                    written += segmentLength;
+                }
+            }
+            System.arraycopy(candidate, 0, route, 0, written);
+            length = written;
+            refresh();
+        }
+
+        /**
+         * Recomputes the objective and the prefix sums of the current route.
+         */
+        private void refresh() {
+            DistanceMatrix distances = problem.distances();
+            DistanceMatrix durations = problem.durations();
+            boolean[] extensions = problem.extensions();
+            long totalDistance = 0;
+            long time = 0;
+            long totalNonExtensionDistance = 0;
+            routedPenalty = 0;
+            nonExtensionCount = 0;
+            int previous = SP_INDEX;
+            for (int position = 0; position < length; position++) {
+                int node = route[position];
+                int arcDistance = distances.get(previous, node);
+                totalDistance += arcDistance;
+                time += durations.get(previous, node);
+                if (!extensions[node] && !extensions[previous]) totalNonExtensionDistance += arcDistance;
+                if (!extensions[node]) nonExtensionCount++;
+                routedPenalty += problem.dropPenalties()[node];
+                distance[position] = totalDistance;
+                arrival[position] = time;
+                nonExtensionDistance[position] = totalNonExtensionDistance;
+                if (position == 0) {
+                    reverseDistance[0] = 0;
+                    reverseArrival[0] = 0;
+                    reverseNonExtensionDistance[0] = 0;
+                } else {
+                    int reverseArcDistance = distances.get(node, previous);
+                    reverseDistance[position] = reverseDistance[position - 1] + reverseArcDistance;
+                    reverseArrival[position] = reverseArrival[position - 1] + durations.get(node, previous);
+                    reverseNonExtensionDistance[position] = reverseNonExtensionDistance[position - 1]
+                            + (!extensions[node] && !extensions[previous] ? reverseArcDistance : 0);
+                }
+                previous = node;
+            }
+            slack[length] = Long.MAX_VALUE;
+            for (int position = length - 1; position >= 0; position--) {
+                slack[position] = Math.min(slack[position + 1], due[route[position]] - arrival[position]);
+            }
+            objective = totalDistance + problem.spanCostCoefficient() * time + problem.totalDropPenalty() - routedPenalty;
+        }
+
+        private boolean timeUp() {
+            return System.nanoTime() - stopAt >= 0;
+        }
+    }
+}
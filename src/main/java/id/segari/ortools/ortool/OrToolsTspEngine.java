@@ -0,0 +1,105 @@
+package id.segari.ortools.ortool;
+
+import com.google.ortools.constraintsolver.Assignment;
+import com.google.ortools.constraintsolver.FirstSolutionStrategy;
+import com.google.ortools.constraintsolver.RoutingDimension;
+import com.google.ortools.constraintsolver.RoutingIndexManager;
+import com.google.ortools.constraintsolver.RoutingModel;
+import id.segari.ortools.solver.Deadline;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.MAX_ROUTE_TIME;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.addDistanceDimension;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.addMaxOrderCountDimension;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.addNonExtensionCountDimension;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.addNonExtensionDistanceDimension;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.addPenaltyAndDropVisit;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.createOrderDemands;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.createRoutingManager;
+
+/**
+ * Solves a {@link TspProblem} with the OR-tools routing solver through {@link RoutingSearch}: one vehicle, a
+ * dimension per limit, a time dimension holding the time windows and a disjunction per order for its drop penalty.
+ */
+@Component
+public class OrToolsTspEngine implements TspEngine {
+
+    public static final String NAME = "ortools";
+
+    private final TransitRegistrar transitRegistrar;
+    private final ArcRestriction arcRestriction;
+    private final RoutingSearch routingSearch;
+
+    public OrToolsTspEngine(TransitRegistrar transitRegistrar, ArcRestriction arcRestriction, RoutingSearch routingSearch) {
+        this.transitRegistrar = transitRegistrar;
+        this.arcRestriction = arcRestriction;
+        this.routingSearch = routingSearch;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int modelCopies() {
+        return routingSearch.modelCopies();
+    }
+
+    @Override
+    public Result solve(TspProblem problem, int[] initialRoute, Deadline deadline) {
+        RoutingSearch.Result result = routingSearch.solve(() -> buildModel(problem), FirstSolutionStrategy.Value.CHRISTOFIDES,
+                deadline, initialRoute == null ? null : new int[][]{initialRoute});
+        return new Result(route(result.model(), result.solution()), result.status());
+    }
+
+    private RoutingSearch.Model buildModel(TspProblem problem) {
+        RoutingIndexManager manager = createRoutingManager(problem.distances());
+        RoutingModel routing = new RoutingModel(manager);
+        long[] orderDemands = createOrderDemands(problem.size());
+
+        addDistanceDimension(routing, manager, transitRegistrar, problem.maxTotalDistance(), problem.distances());
+        addMaxOrderCountDimension(routing, manager, transitRegistrar, orderDemands, problem.maxOrderCount());
+        if (problem.hasExtensions()) {
+            Set<Integer> extensionOrderIndices = problem.extensionOrderIndices();
+            addNonExtensionCountDimension(routing, manager, transitRegistrar, extensionOrderIndices, problem.maxNonExtensionCount());
+            addNonExtensionDistanceDimension(routing, manager, transitRegistrar, extensionOrderIndices, problem.maxNonExtensionDistance(), problem.distances());
+        }
+        addTimeWindowDimension(routing, manager, problem);
+        addPenaltyAndDropVisit(routing, manager, problem.dropPenalties());
+        arcRestriction.restrict(routing, manager, problem.distances(), problem.maxTotalDistance(), ORDER_START_INDEX);
+        return new RoutingSearch.Model(manager, routing);
+    }
+
+    private void addTimeWindowDimension(RoutingModel routing, RoutingIndexManager manager, TspProblem problem) {
+        int callback = transitRegistrar.registerMatrix(routing, manager, problem.durations());
+        routing.addDimension(callback, problem.timeSlack(), MAX_ROUTE_TIME, false, "Time");
+
+        RoutingDimension timeDimension = routing.getMutableDimension("Time");
+        for (int i = ORDER_START_INDEX; i < problem.size(); i++) {
+            long index = manager.nodeToIndex(i);
+            timeDimension.cumulVar(index).setRange(problem.timeWindows()[i][0], problem.timeWindows()[i][1]);
+        }
+        if (problem.spanCostCoefficient() > 0) {
+            timeDimension.setGlobalSpanCostCoefficient(problem.spanCostCoefficient());
+        }
+    }
+
+    private static int[] route(RoutingSearch.Model model, Assignment solution) {
+        if (solution == null) return new int[0];
+        RoutingModel routing = model.routing();
+        RoutingIndexManager manager = model.manager();
+        List<Integer> nodes = new ArrayList<>();
+        long index = solution.value(routing.nextVar(routing.start(0)));
+        while (!routing.isEnd(index)) {
+            nodes.add(manager.indexToNode(index));
+            index = solution.value(routing.nextVar(index));
+        }
+        return nodes.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,176 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.error.SegariRoutingErrors;
+import id.segari.ortools.util.DistanceMatrix;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.MAX_ROUTE_TIME;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.SP_INDEX;
+
+/**
+ * Looks at a compiled {@link TspProblem} before any engine builds a model for it, so requests no route can serve fail
+ * or finish in milliseconds instead of after a full search.
+ * <p>
+ * The shortest distance and the earliest arrival time from the SP to every order are propagated over the preprocessed
+ * matrices. No route reaches an order sooner, so an order whose shortest distance exceeds the route's distance limit
+ * or whose earliest arrival is past its time window is served by no solution: it is pruned from the problem, or, when
+ * it is mandatory, the request fails. Mandatory orders that alone exceed the route's order count limits fail the
+ * request as well. The time windows of the remaining orders are tightened to start at their earliest arrival.
+ */
+@Component
+public class Presolver {
+
+    /**
+     * @param problem        the problem to solve, with the pruned orders removed
+     * @param nodes          the node in the original problem of every node of {@code problem}
+     * @param prunedOrderIds ids of the orders that were pruned
+     */
+    public record Presolved(TspProblem problem, int[] nodes, List<Long> prunedOrderIds) {
+
+        public boolean hasNoOrders() {
+            return problem.orderCount() == 0;
+        }
+
+        public <T> List<T> keep(List<T> orders) {
+            if (prunedOrderIds.isEmpty()) return orders;
+            List<T> kept = new ArrayList<>(nodes.length);
+            for (int node : nodes) kept.add(orders.get(node));
+            return kept;
+        }
+
+        public int[] toOriginalNodes(int[] route) {
+            if (prunedOrderIds.isEmpty()) return route;
+            int[] original = new int[route.length];
+            for (int i = 0; i < route.length; i++) original[i] = nodes[route[i]];
+            return original;
+        }
+    }
+
+    private final boolean enabled;
+    private final Counter prunedCounter;
+    private final Counter infeasibleCounter;
+
+    public Presolver(@Value("${solver.presolve.enabled:true}") boolean enabled, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.prunedCounter = Counter.builder("solver.presolve.pruned.orders").register(meterRegistry);
+        this.infeasibleCounter = Counter.builder("solver.presolve.infeasible").register(meterRegistry);
+    }
+
+    /**
+     * @param nodes the compiled nodes {@code problem} was built from
+     * @throws id.segari.ortools.exception.BaseException when the mandatory orders cannot all be served
+     */
+    public Presolved presolve(TspProblem problem, CompiledNodes nodes, Set<Long> mandatoryOrderIds) {
+        int[] identity = identity(problem.size());
+        if (!enabled) return new Presolved(problem, identity, List.of());
+
+        checkMandatoryCounts(problem, nodes, mandatoryOrderIds);
+        long[] shortestDistances = shortestPathsFromSp(problem.distances());
+        long[] earliestArrivals = shortestPathsFromSp(problem.durations());
+        long[][] timeWindows = problem.timeWindows();
+
+        List<Long> prunedOrderIds = new ArrayList<>();
+        List<Long> unreachableMandatoryOrderIds = new ArrayList<>();
+        List<Long> lateMandatoryOrderIds = new ArrayList<>();
+        for (int node = ORDER_START_INDEX; node < problem.size(); node++) {
+            boolean mandatory = mandatoryOrderIds.contains(nodes.id(node));
+            if (shortestDistances[node] > problem.maxTotalDistance()) {
+                (mandatory ? unreachableMandatoryOrderIds : prunedOrderIds).add(nodes.id(node));
+            } else if (earliestArrivals[node] > Math.min(timeWindows[node][1], MAX_ROUTE_TIME)) {
+                (mandatory ? lateMandatoryOrderIds : prunedOrderIds).add(nodes.id(node));
+            } else {
+                timeWindows[node][0] = Math.max(timeWindows[node][0], earliestArrivals[node]);
+            }
+        }
+        if (!unreachableMandatoryOrderIds.isEmpty()) {
+            infeasibleCounter.increment();
+            throw SegariRoutingErrors.mandatoryOrderUnreachable(unreachableMandatoryOrderIds, problem.maxTotalDistance());
+        }
+        if (!lateMandatoryOrderIds.isEmpty()) {
+            infeasibleCounter.increment();
+            throw SegariRoutingErrors.mandatoryOrderMissesTimeWindow(lateMandatoryOrderIds);
+        }
+        if (prunedOrderIds.isEmpty()) return new Presolved(problem, identity, List.of());
+
+        prunedCounter.increment(prunedOrderIds.size());
+        Set<Long> pruned = Set.copyOf(prunedOrderIds);
+        int[] kept = Arrays.stream(identity)
+                .filter(node -> node < ORDER_START_INDEX || !pruned.contains(nodes.id(node)))
+                .toArray();
+        return new Presolved(select(problem, kept), kept, prunedOrderIds);
+    }
+
+    private void checkMandatoryCounts(TspProblem problem, CompiledNodes nodes, Set<Long> mandatoryOrderIds) {
+        if (mandatoryOrderIds.isEmpty()) return;
+        int mandatoryCount = 0;
+        int mandatoryNonExtensionCount = 0;
+        for (int node = ORDER_START_INDEX; node < problem.size(); node++) {
+            if (!mandatoryOrderIds.contains(nodes.id(node))) continue;
+            mandatoryCount++;
+            if (!problem.extensions()[node]) mandatoryNonExtensionCount++;
+        }
+        if (mandatoryCount > problem.maxOrderCount()) {
+            infeasibleCounter.increment();
+            throw SegariRoutingErrors.mandatoryOrdersExceedCapacity(mandatoryCount, problem.maxOrderCount());
+        }
+        if (mandatoryNonExtensionCount > problem.maxNonExtensionCount()) {
+            infeasibleCounter.increment();
+            throw SegariRoutingErrors.mandatoryOrdersExceedCapacity(mandatoryNonExtensionCount, problem.maxNonExtensionCount());
+        }
+    }
+
+    /**
+     * Dijkstra over the dense matrix from the SP, through the SP and the orders only: the dummy node ends the route,
+     * so no path continues from it.
+     */
+    static long[] shortestPathsFromSp(DistanceMatrix matrix) {
+        int size = matrix.size();
+        long[] shortest = new long[size];
+        boolean[] settled = new boolean[size];
+        Arrays.fill(shortest, Long.MAX_VALUE);
+        shortest[SP_INDEX] = 0;
+        for (int node = 0; node < ORDER_START_INDEX; node++) settled[node] = node != SP_INDEX;
+
+        for (int round = 0; round < size - ORDER_START_INDEX + 1; round++) {
+            int from = -1;
+            for (int node = 0; node < size; node++) {
+                if (!settled[node] && shortest[node] != Long.MAX_VALUE && (from < 0 || shortest[node] < shortest[from])) from = node;
+            }
+            if (from < 0) break;
+            settled[from] = true;
+            for (int to = ORDER_START_INDEX; to < size; to++) {
+                if (!settled[to]) shortest[to] = Math.min(shortest[to], shortest[from] + matrix.get(from, to));
+            }
+        }
+        return shortest;
+    }
+
+    private static TspProblem select(TspProblem problem, int[] nodes) {
+        long[][] timeWindows = new long[nodes.length][];
+        boolean[] extensions = new boolean[nodes.length];
+        long[] dropPenalties = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            timeWindows[i] = problem.timeWindows()[nodes[i]];
+            extensions[i] = problem.extensions()[nodes[i]];
+            dropPenalties[i] = problem.dropPenalties()[nodes[i]];
+        }
+        return new TspProblem(problem.distances().select(nodes), problem.durations().select(nodes), timeWindows, extensions,
+                dropPenalties, problem.maxOrderCount(), problem.maxTotalDistance(), problem.maxNonExtensionCount(),
+                problem.maxNonExtensionDistance(), problem.timeSlack(), problem.spanCostCoefficient());
+    }
+
+    private static int[] identity(int size) {
+        int[] nodes = new int[size];
+        for (int i = 0; i < size; i++) nodes[i] = i;
+        return nodes;
+    }
+}
@@ -0,0 +1,87 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.error.SegariRoutingErrors;
+import id.segari.ortools.util.GeoUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.SP_INDEX;
+
+/**
+ * Drops orders no SP-start route can reach before their matrix is fetched. A road is never shorter than the
+ * great-circle distance between its ends, so an order whose haversine distance from the SP already exceeds the
+ * route's total distance limit is dropped by every solution; sending it to OSRM and into the model only costs time.
+ * <p>
+ * OSRM snaps coordinates to the nearest road, which can bring two points slightly closer than their raw coordinates,
+ * so the limit is widened by {@code solver.pruning.tolerance} before comparing. Mandatory orders are never pruned:
+ * an unreachable mandatory order fails the request instead of silently producing a route without it.
+ */
+@Component
+public class ReachabilityPruner {
+
+    /**
+     * @param orders         the dummy, the SP and every order that may still be reachable, in their original order
+     * @param prunedOrderIds ids of the orders that were dropped
+     */
+    public record Pruned<T>(List<T> orders, List<Long> prunedOrderIds) {
+
+        public boolean prunedEveryOrder() {
+            return orders.size() <= ORDER_START_INDEX && !prunedOrderIds.isEmpty();
+        }
+    }
+
+    private final boolean enabled;
+    private final double tolerance;
+    private final Counter prunedCounter;
+
+    public ReachabilityPruner(@Value("${solver.pruning.enabled:true}") boolean enabled,
+                              @Value("${solver.pruning.tolerance:0.05}") double tolerance,
+                              MeterRegistry meterRegistry) {
+        if (tolerance < 0) throw new IllegalArgumentException("solver.pruning.tolerance must not be negative, got " + tolerance);
+        this.enabled = enabled;
+        this.tolerance = tolerance;
+        this.prunedCounter = Counter.builder("solver.pruned.orders").register(meterRegistry);
+    }
+
+    /**
+     * @param orders            the dummy at index 0, the SP at index 1 and the orders after them
+     * @param maxDistanceInMeter the longest distance a route may travel from the SP
+     * @throws id.segari.ortools.exception.BaseException when a mandatory order is out of reach
+     */
+    public <T> Pruned<T> prune(List<T> orders, Function<T, Long> id, Function<T, Double> latitude, Function<T, Double> longitude,
+                               long maxDistanceInMeter, Set<Long> mandatoryOrderIds) {
+        if (!enabled || orders.size() <= ORDER_START_INDEX) return new Pruned<>(orders, List.of());
+        T sp = orders.get(SP_INDEX);
+        if (latitude.apply(sp) == null || longitude.apply(sp) == null) return new Pruned<>(orders, List.of());
+
+        double reach = maxDistanceInMeter * (1 + tolerance);
+        List<T> reachable = new ArrayList<>(orders.subList(0, ORDER_START_INDEX));
+        List<Long> prunedOrderIds = new ArrayList<>();
+        List<Long> unreachableMandatoryOrderIds = new ArrayList<>();
+        for (T order : orders.subList(ORDER_START_INDEX, orders.size())) {
+            if (latitude.apply(order) == null || longitude.apply(order) == null
+                    || GeoUtils.getHaversineDistanceInMeter(latitude.apply(sp), longitude.apply(sp),
+                    latitude.apply(order), longitude.apply(order)) <= reach) {
+                reachable.add(order);
+            } else if (mandatoryOrderIds != null && mandatoryOrderIds.contains(id.apply(order))) {
+                unreachableMandatoryOrderIds.add(id.apply(order));
+            } else {
+                prunedOrderIds.add(id.apply(order));
+            }
+        }
+        if (!unreachableMandatoryOrderIds.isEmpty()) {
+            throw SegariRoutingErrors.mandatoryOrderUnreachable(unreachableMandatoryOrderIds, maxDistanceInMeter);
+        }
+        if (prunedOrderIds.isEmpty()) return new Pruned<>(orders, List.of());
+        prunedCounter.increment(prunedOrderIds.size());
+        return new Pruned<>(reachable, prunedOrderIds);
+    }
+}
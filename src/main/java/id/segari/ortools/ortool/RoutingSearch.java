@@ -0,0 +1,311 @@
+package id.segari.ortools.ortool;
+
+import com.google.ortools.constraintsolver.Assignment;
+import com.google.ortools.constraintsolver.FirstSolutionStrategy;
+import com.google.ortools.constraintsolver.LocalSearchMetaheuristic;
+import com.google.ortools.constraintsolver.RoutingIndexManager;
+import com.google.ortools.constraintsolver.RoutingModel;
+import com.google.ortools.constraintsolver.RoutingSearchParameters;
+import com.google.ortools.constraintsolver.RoutingSearchStatus;
+import com.google.ortools.constraintsolver.main;
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs the OR-tools search on routing models built by the caller.
+ * By default a single search runs with the caller's first solution strategy for {@code solver.search.time-limit}.
+ * <p>
+ * With {@code solver.portfolio.enabled} the model is built once more per configured member and all of them search
+ * concurrently for {@code solver.portfolio.time-limit}: the caller's strategy on the calling solver thread, each
+ * {@code FIRST_SOLUTION_STRATEGY:METAHEURISTIC} member on its own {@code portfolio-N} thread. Members that do not get
+ * a free thread are skipped. Once the caller's search returns, the others get a short grace period and are then
+ * cancelled through a custom search limit; the lowest objective among all members wins.
+ * <p>
+ * For requests with a {@link Deadline} each search is limited to what is left of it once its model is built, minus
+ * {@code solver.deadline.reserve} for extracting and returning the result, but never less than
+ * {@code solver.deadline.min-search-time}. The {@link Result#status()} tells whether the search converged or was cut short.
+ * <p>
+ * Every search also watches its own objective: with {@code solver.plateau.enabled} it stops once no improvement larger
+ * than {@code solver.plateau.relative-threshold} of the best objective was found for {@code solver.plateau.window}.
+ * The stop reason and the time to the last improvement are recorded in {@code solver.search.stopped} and
+ * {@code solver.search.last.improvement}.
+ * <p>
+ * Callers that already know a good route can pass it as initial routes; the caller's search then starts from it
+ * instead of running its first solution strategy. Routes the model rejects fall back to a cold start, counted in
+ * {@code solver.warm.start}.
+ */
+@Component
+public class RoutingSearch {
+
+    private static final Logger log = LoggerFactory.getLogger(RoutingSearch.class);
+    // Members start slightly later than the caller's search because their model is built on another thread
+    private static final long PORTFOLIO_GRACE_MILLIS = 500;
+
+    public record Model(RoutingIndexManager manager, RoutingModel routing) {
+    }
+
+    public record Member(FirstSolutionStrategy.Value firstSolutionStrategy, LocalSearchMetaheuristic.Value metaheuristic) {
+
+        static Member parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("solver.portfolio.members entries must be FIRST_SOLUTION_STRATEGY:METAHEURISTIC, got '" + spec + "'");
+            }
+            return new Member(FirstSolutionStrategy.Value.valueOf(parts[0].trim()), LocalSearchMetaheuristic.Value.valueOf(parts[1].trim()));
+        }
+
+        String tag() {
+            return firstSolutionStrategy + ":" + metaheuristic;
+        }
+    }
+
+    /**
+     * @param timeToLastImprovement time from the start of the search to its last significant improvement,
+     *                              null when no solution was found
+     */
+    public record Result(Model model, Assignment solution, Member member, SearchStatus status, Duration timeToLastImprovement) {
+    }
+
+    private final Duration timeLimit;
+    private final boolean portfolioEnabled;
+    private final List<Member> portfolioMembers;
+    private final Duration portfolioTimeLimit;
+    private final Duration deadlineReserve;
+    private final Duration minSearchTime;
+    private final Duration plateauWindow;
+    private final double plateauThreshold;
+    private final Supplier<RoutingSearchParameters> defaultParameters;
+    private final ThreadPoolExecutor portfolioExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Counter skippedCounter;
+    private final Timer lastImprovementTimer;
+
+    @Autowired
+    public RoutingSearch(@Value("${solver.search.time-limit:60s}") Duration timeLimit,
+                         @Value("${solver.portfolio.enabled:false}") boolean portfolioEnabled,
+                         @Value("${solver.portfolio.members:SAVINGS:GUIDED_LOCAL_SEARCH,PARALLEL_CHEAPEST_INSERTION:GUIDED_LOCAL_SEARCH,PATH_CHEAPEST_ARC:SIMULATED_ANNEALING}") List<String> portfolioMembers,
+                         @Value("${solver.portfolio.time-limit:10s}") Duration portfolioTimeLimit,
+                         @Value("${solver.portfolio.threads:0}") int portfolioThreads,
+                         @Value("${solver.deadline.reserve:50ms}") Duration deadlineReserve,
+                         @Value("${solver.deadline.min-search-time:100ms}") Duration minSearchTime,
+                         @Value("${solver.plateau.enabled:true}") boolean plateauEnabled,
+                         @Value("${solver.plateau.window:5s}") Duration plateauWindow,
+                         @Value("${solver.plateau.relative-threshold:0.001}") double plateauThreshold,
+                         MeterRegistry meterRegistry) {
+        this(timeLimit, portfolioEnabled, portfolioMembers, portfolioTimeLimit, portfolioThreads, deadlineReserve, minSearchTime,
+                plateauEnabled, plateauWindow, plateauThreshold, meterRegistry, main::defaultRoutingSearchParameters);
+    }
+
+    RoutingSearch(Duration timeLimit, boolean portfolioEnabled, List<String> portfolioMembers, Duration portfolioTimeLimit,
+                  int portfolioThreads, Duration deadlineReserve, Duration minSearchTime, boolean plateauEnabled,
+                  Duration plateauWindow, double plateauThreshold, MeterRegistry meterRegistry,
+                  Supplier<RoutingSearchParameters> defaultParameters) {
+        this.timeLimit = timeLimit;
+        this.portfolioEnabled = portfolioEnabled && !portfolioMembers.isEmpty();
+        this.portfolioMembers = portfolioMembers.stream().map(Member::parse).toList();
+        this.portfolioTimeLimit = portfolioTimeLimit;
+        this.deadlineReserve = deadlineReserve;
+        this.minSearchTime = minSearchTime;
+        // A disabled plateau still tracks improvements for the metrics, it just never ends the search
+        this.plateauWindow = plateauEnabled ? plateauWindow : Duration.ofNanos(Long.MAX_VALUE);
+        this.plateauThreshold = plateauThreshold;
+        this.defaultParameters = defaultParameters;
+        this.meterRegistry = meterRegistry;
+        int threads = portfolioThreads > 0 ? portfolioThreads : Runtime.getRuntime().availableProcessors();
+        // No queue: a member that cannot start right away is not worth running at all
+        this.portfolioExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                Thread.ofPlatform().name("portfolio-", 0).factory(), new ThreadPoolExecutor.AbortPolicy());
+        this.skippedCounter = Counter.builder("solver.portfolio.skipped")
+                .description("Portfolio members skipped because no portfolio thread was free")
+                .register(meterRegistry);
+        this.lastImprovementTimer = Timer.builder("solver.search.last.improvement")
+                .description("Time from the start of a search to its last significant objective improvement")
+                .register(meterRegistry);
+    }
+
+    /**
+     * How many models one solve builds, for memory admission in {@link id.segari.ortools.solver.SolverExecutor}.
+     */
+    public int modelCopies() {
+        return portfolioEnabled ? portfolioMembers.size() + 1 : 1;
+    }
+
+    /**
+     * Builds the model with {@code modelFactory} (once per portfolio member) and returns the best solution found.
+     * The returned {@link Result#solution()} is null when no member found a solution.
+     */
+    public Result solve(Supplier<Model> modelFactory, FirstSolutionStrategy.Value firstSolutionStrategy, Deadline deadline) {
+        return solve(modelFactory, firstSolutionStrategy, deadline, null);
+    }
+
+    /**
+     * @param initialRoutes node indices per vehicle the caller's search starts from, or null for a cold start.
+     *                      Portfolio members always start cold so they keep exploring elsewhere.
+     */
+    public Result solve(Supplier<Model> modelFactory, FirstSolutionStrategy.Value firstSolutionStrategy, Deadline deadline,
+                        int[][] initialRoutes) {
+        Member primary = new Member(firstSolutionStrategy, LocalSearchMetaheuristic.Value.AUTOMATIC);
+        Result result = portfolioEnabled
+                ? solvePortfolio(modelFactory, primary, deadline, initialRoutes)
+                : runMember(modelFactory, primary, timeLimit, deadline, new AtomicBoolean(), initialRoutes);
+        meterRegistry.counter("solver.search.stopped", "reason", result.status().name().toLowerCase()).increment();
+        if (result.timeToLastImprovement() != null) lastImprovementTimer.record(result.timeToLastImprovement());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        portfolioExecutor.shutdown();
+    }
+
+    private Result solvePortfolio(Supplier<Model> modelFactory, Member primary, Deadline deadline, int[][] initialRoutes) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<Future<Result>> members = new ArrayList<>(portfolioMembers.size());
+        for (Member member : portfolioMembers) {
+            try {
+                members.add(portfolioExecutor.submit(() -> runMember(modelFactory, member, portfolioTimeLimit, deadline, cancelled, null)));
+            } catch (RejectedExecutionException e) {
+                skippedCounter.increment();
+            }
+        }
+
+        Result best = null;
+        try {
+            best = runMember(modelFactory, primary, portfolioTimeLimit, deadline, cancelled, initialRoutes);
+            long graceNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(PORTFOLIO_GRACE_MILLIS),
+                    deadline.remaining().minus(deadlineReserve).toNanos());
+            awaitAll(members, System.nanoTime() + graceNanos);
+        } finally {
+            // Cancelled members stop at their next limit check and still hand back their best solution so far
+            cancelled.set(true);
+            for (Future<Result> member : members) {
+                Result result = join(member);
+                if (isBetter(result, best)) best = result;
+            }
+        }
+        meterRegistry.counter("solver.portfolio.wins", "member", best.member().tag()).increment();
+        return best;
+    }
+
+    private Result runMember(Supplier<Model> modelFactory, Member member, Duration configuredLimit, Deadline deadline,
+                             AtomicBoolean cancelled, int[][] initialRoutes) {
+        Model model = modelFactory.get();
+        RoutingModel routing = model.routing();
+        SearchPlateau plateau = new SearchPlateau(plateauThreshold, plateauWindow, System::nanoTime);
+        // The cost variable only exists once the model is closed, i.e. by the time solutions come in
+        routing.addAtSolutionCallback(() -> plateau.onSolution(routing.costVar().value()));
+        routing.addSearchMonitor(routing.solver().makeCustomLimit(() -> cancelled.get() || plateau.reached()));
+
+        Duration limit = configuredLimit;
+        boolean limitedByDeadline = false;
+        if (deadline.isBounded()) {
+            Duration available = deadline.remaining().minus(deadlineReserve);
+            if (available.compareTo(minSearchTime) < 0) available = minSearchTime;
+            if (available.compareTo(limit) < 0) {
+                limit = available;
+                limitedByDeadline = true;
+            }
+        }
+        Assignment solution = search(model, parameters(member, limit), initialRoutes);
+        RoutingSearchStatus.Value status = routing.status();
+        // Nothing left to gain from the other members once one of them proved optimality
+        if (status == RoutingSearchStatus.Value.ROUTING_OPTIMAL) cancelled.set(true);
+        SearchStatus searchStatus = plateau.stoppedSearch() ? SearchStatus.PLATEAU : searchStatus(status, solution, limitedByDeadline);
+        return new Result(model, solution, member, searchStatus, plateau.timeToLastImprovement());
+    }
+
+    private Assignment search(Model model, RoutingSearchParameters parameters, int[][] initialRoutes) {
+        if (initialRoutes == null) return model.routing().solveWithParameters(parameters);
+
+        RoutingModel routing = model.routing();
+        routing.closeModelWithParameters(parameters);
+        long[][] routes = new long[initialRoutes.length][];
+        for (int vehicle = 0; vehicle < initialRoutes.length; vehicle++) {
+            routes[vehicle] = new long[initialRoutes[vehicle].length];
+            for (int position = 0; position < initialRoutes[vehicle].length; position++) {
+                routes[vehicle][position] = model.manager().nodeToIndex(initialRoutes[vehicle][position]);
+            }
+        }
+        // Null when the routes break a constraint of the model, e.g. a time window or a capacity
+        Assignment initial = routing.readAssignmentFromRoutes(routes, true);
+        meterRegistry.counter("solver.warm.start", "outcome", initial == null ? "rejected" : "used").increment();
+        return initial == null
+                ? routing.solveWithParameters(parameters)
+                : routing.solveFromAssignmentWithParameters(initial, parameters);
+    }
+
+    private static SearchStatus searchStatus(RoutingSearchStatus.Value status, Assignment solution, boolean limitedByDeadline) {
+        if (status == RoutingSearchStatus.Value.ROUTING_PARTIAL_SUCCESS_LOCAL_OPTIMUM_NOT_REACHED
+                || status == RoutingSearchStatus.Value.ROUTING_FAIL_TIMEOUT) {
+            return limitedByDeadline ? SearchStatus.DEADLINE : SearchStatus.TIME_LIMIT;
+        }
+        return solution == null ? SearchStatus.NO_SOLUTION : SearchStatus.CONVERGED;
+    }
+
+    private RoutingSearchParameters parameters(Member member, Duration limit) {
+        return defaultParameters.get()
+                .toBuilder()
+                .setFirstSolutionStrategy(member.firstSolutionStrategy())
+                .setLocalSearchMetaheuristic(member.metaheuristic())
+                .setTimeLimit(com.google.protobuf.Duration.newBuilder()
+                        .setSeconds(limit.getSeconds())
+                        .setNanos(limit.getNano())
+                        .build())
+                .build();
+    }
+
+    private static void awaitAll(List<Future<Result>> members, long deadlineNanos) {
+        for (Future<Result> member : members) {
+            try {
+                member.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return;
+            } catch (ExecutionException e) {
+                // Reported by join
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static Result join(Future<Result> member) {
+        try {
+            return member.get();
+        } catch (ExecutionException e) {
+            log.warn("Portfolio member failed, ignoring it", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static boolean isBetter(Result candidate, Result best) {
+        if (candidate == null || candidate.solution() == null) return false;
+        if (best == null || best.solution() == null) return true;
+        return candidate.solution().objectiveValue() < best.solution().objectiveValue();
+    }
+}
@@ -0,0 +1,58 @@
+package id.segari.ortools.ortool;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Follows the objective of one search and reports a plateau once no improvement larger than
+ * {@code relativeThreshold} of the best objective was seen for {@code window}.
+ * The search never plateaus before its first solution. Solutions are reported and the plateau is polled from the
+ * OR-tools search thread only, so no synchronization is needed.
+ */
+final class SearchPlateau {
+
+    private final double relativeThreshold;
+    private final long windowNanos;
+    private final LongSupplier nanoClock;
+    private final long startedAt;
+    private long bestObjective = Long.MAX_VALUE;
+    private long lastImprovementAt;
+    private boolean reached;
+
+    SearchPlateau(double relativeThreshold, Duration window, LongSupplier nanoClock) {
+        this.relativeThreshold = relativeThreshold;
+        this.windowNanos = window.toNanos();
+        this.nanoClock = nanoClock;
+        this.startedAt = nanoClock.getAsLong();
+        this.lastImprovementAt = startedAt;
+    }
+
+    void onSolution(long objective) {
+        if (bestObjective == Long.MAX_VALUE || bestObjective - objective > relativeThreshold * Math.abs(bestObjective)) {
+            lastImprovementAt = nanoClock.getAsLong();
+        }
+        // Smaller gains still move the reference, so a slow crawl does not count as an improvement each step
+        bestObjective = Math.min(bestObjective, objective);
+    }
+
+    boolean reached() {
+        if (!reached && bestObjective != Long.MAX_VALUE) {
+            reached = nanoClock.getAsLong() - lastImprovementAt >= windowNanos;
+        }
+        return reached;
+    }
+
+    /**
+     * Whether {@link #reached()} ever returned true, i.e. whether the plateau is what stopped the search.
+     */
+    boolean stoppedSearch() {
+        return reached;
+    }
+
+    /**
+     * @return time from the start of the search to the last significant improvement, or null before the first solution
+     */
+    Duration timeToLastImprovement() {
+        return bestObjective == Long.MAX_VALUE ? null : Duration.ofNanos(lastImprovementAt - startedAt);
+    }
+}
@@ -2,7 +2,7 @@ package id.segari.ortools.ortool;
 
 import com.google.ortools.Loader;
 import com.google.ortools.constraintsolver.*;
-import com.google.protobuf.Duration;
+import id.segari.ortools.dto.route.SearchStatus;
 import id.segari.ortools.dto.route.v1.SegariRouteDTO;
 import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
 import id.segari.ortools.error.SegariRoutingErrors;
@@ -10,18 +10,26 @@ import id.segari.ortools.exception.BaseException;
 import id.segari.ortools.external.LatLong;
 import id.segari.ortools.external.OSRMRestService;
 import id.segari.ortools.external.OSRMTableResponseDTO;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.solver.SolverExecutor;
+import id.segari.ortools.util.DistanceMatrix;
 import id.segari.ortools.util.GeoUtils;
 import org.springframework.http.HttpStatus;
 
 import java.util.*;
 
 public class SegariRoute {
+    static final long PENALTY = 100_000;
+    static final long MANDATORY_PENALTY = 1_000_000_000;
+
     private final SegariRouteType type;
     private final List<SegariRouteOrderDTO> orders;
+    private final CompiledNodes nodes;
 
     private SegariRoute(SegariRouteType type, List<SegariRouteOrderDTO> orders) {
         this.type = type;
         this.orders = orders;
+        this.nodes = CompiledNodes.ofSegariRouteOrders(orders);
     }
 
     private void setVehicleNumbers(int vehicleNumbers) {
@@ -51,8 +59,11 @@ public class SegariRoute {
     private boolean hasTimeWindowDimension = false;
     private int minimumResult = 0;
     private boolean hasResultMustContainExtension = false;
-    private long[][] distanceMatrix;
-    private long[][] durationMatrix;
+    private boolean approximateMatrix = false;
+    private SearchStatus searchStatus;
+    private Deadline deadline = Deadline.none();
+    private DistanceMatrix distanceMatrix;
+    private DistanceMatrix durationMatrix;
     private int[] start;
     private int[] finish;
     private int vehicleNumbers;
@@ -224,9 +235,79 @@ public class SegariRoute {
         return this;
     }
 
-    public List<ArrayList<Long>> route(){
+    /**
+     * Whether {@link VrpDecomposer} may split this route into clusters: only SP-start VRPs whose result does not depend
+     * on seeing every order at once, so no ratio dimension, result filters, time windows or mandatory orders.
+     */
+    boolean isDecomposable() {
+        return SegariRouteType.VRP_SP_START_ARBITRARY_FINISH.equals(this.type)
+                && !this.hasExtensionTurboInstanRatioDimension
+                && !this.hasSetResultMinimum
+                && !this.hasResultMustContainExtension
+                && !this.hasTimeWindowDimension
+                && !this.hasLoadFactorDimension
+                && this.mandatoryOrderIds.isEmpty();
+    }
+
+    List<SegariRouteOrderDTO> getOrders() {
+        return this.orders;
+    }
+
+    VrpDecomposer.Limits getLimits() {
+        return new VrpDecomposer.Limits(
+                this.maxTotalDistanceInMeter,
+                this.maxOrderCount,
+                this.hasMaxInstanOrderCountDimension ? this.maxInstanOrderCount : Integer.MAX_VALUE,
+                this.hasMaxTurboOrderCountDimension ? this.maxTurboOrderCount : Integer.MAX_VALUE);
+    }
+
+    /**
+     * A route with the same limits and dimensions over {@code orders}, which must start with this route's dummy and
+     * SP, and as many vehicles as those orders need.
+     */
+    SegariRoute forOrders(List<SegariRouteOrderDTO> orders) {
+        SegariRoute segariRoute = new SegariRoute(this.type, orders);
+        injectVrpAttributes(segariRoute, this.maxTotalDistanceInMeter, this.maxOrderCount, orders.size() - 2);
+        segariRoute.osrmRestService = this.osrmRestService;
+        segariRoute.useOsrm = this.useOsrm;
+        segariRoute.hasDistanceBetweenOrderDimension = this.hasDistanceBetweenOrderDimension;
+        segariRoute.maxDistanceBetweenOrderInMeter = this.maxDistanceBetweenOrderInMeter;
+        segariRoute.hasDistanceWithSpDimension = this.hasDistanceWithSpDimension;
+        segariRoute.maxDistanceWithSpInMeter = this.maxDistanceWithSpInMeter;
+        segariRoute.hasDistanceBetweenNodeDimension = this.hasDistanceBetweenNodeDimension;
+        segariRoute.maxDistanceBetweenNodeInMeter = this.maxDistanceBetweenNodeInMeter;
+        segariRoute.hasMaxInstanOrderCountDimension = this.hasMaxInstanOrderCountDimension;
+        segariRoute.maxInstanOrderCount = this.maxInstanOrderCount;
+        segariRoute.hasMaxTurboOrderCountDimension = this.hasMaxTurboOrderCountDimension;
+        segariRoute.maxTurboOrderCount = this.maxTurboOrderCount;
+        return segariRoute;
+    }
+
+    /**
+     * Fetches the distance matrix {@link #route(SolverExecutor, TransitRegistrar, ArcRestriction, RoutingSearch, Deadline)} would solve
+     * on, with the distance limits applied, without solving.
+     */
+    DistanceMatrix fetchDistanceMatrix(Deadline deadline) {
+        this.deadline = deadline;
+        final OSRMTableResponseDTO rawDistanceAndDurationMatrix = getRawDistanceAndDurationMatrix();
+        this.approximateMatrix = rawDistanceAndDurationMatrix.approximate();
+        return getDistanceMatrix(this.orders.size(), rawDistanceAndDurationMatrix);
+    }
+
+    /**
+     * Fetches the matrices on the calling thread, then builds and solves the model on {@code solverExecutor},
+     * spending from {@code deadline} along the way.
+     */
+    public List<ArrayList<Long>> route(SolverExecutor solverExecutor, TransitRegistrar transitRegistrar, ArcRestriction arcRestriction,
+                                       RoutingSearch routingSearch, Deadline deadline){
         try {
-            return handleRoute();
+            this.deadline = deadline;
+            solverExecutor.ensureAdmissible(this.orders.size(), routingSearch.modelCopies());
+            fillRequiredAttributes();
+            return solverExecutor.execute(this.orders.size(), routingSearch.modelCopies(), deadline, () -> handleRoute(transitRegistrar, arcRestriction, routingSearch));
+        }
+        catch (BaseException e){
+            throw e;
         }
         catch (Exception e){
           throw BaseException.builder()
@@ -236,60 +317,71 @@ public class SegariRoute {
         }
     }
 
-    private List<ArrayList<Long>> handleRoute() {
-        fillRequiredAttributes();
+    /**
+     * Whether the last {@link #route(SolverExecutor, TransitRegistrar, ArcRestriction, RoutingSearch, Deadline)} ran on an OSRM matrix that was partly estimated while OSRM was unavailable.
+     */
+    public boolean isApproximateMatrix() {
+        return approximateMatrix;
+    }
+
+    /**
+     * How the search of the last {@link #route(SolverExecutor, TransitRegistrar, ArcRestriction, RoutingSearch, Deadline)} ended.
+     */
+    public SearchStatus getSearchStatus() {
+        return searchStatus;
+    }
+
+    private List<ArrayList<Long>> handleRoute(TransitRegistrar transitRegistrar, ArcRestriction arcRestriction, RoutingSearch routingSearch) {
+        RoutingSearch.Result result = routingSearch.solve(() -> buildModel(transitRegistrar, arcRestriction), getFirstSolutionStrategy(), this.deadline);
+        this.searchStatus = result.status();
+        return getResult(result.model().routing(), result.model().manager(), result.solution());
+    }
+
+    private RoutingSearch.Model buildModel(TransitRegistrar transitRegistrar, ArcRestriction arcRestriction) {
         RoutingIndexManager manager = getRoutingIndexManager();
         RoutingModel routing = new RoutingModel(manager);
-        addDistanceDimension(routing, manager);
-        addMaxOrderCountDimension(routing, manager);
-        if (this.hasTimeWindowDimension) addTimeWindowDimension(routing, manager);
-        if (this.hasExtensionTurboInstanRatioDimension) addExtensionTurboInstanRatioDimension(routing, manager);
-        if (this.hasMaxInstanOrderCountDimension) addMaxInstanOrderCountDimension(routing, manager);
-        if (this.hasMaxTurboOrderCountDimension) addMaxTurboOrderCountDimension(routing, manager);
-        if (this.hasLoadFactorDimension) addLoadFactorDimension(routing, manager);
+        addDistanceDimension(routing, manager, transitRegistrar);
+        addMaxOrderCountDimension(routing, manager, transitRegistrar);
+        if (this.hasTimeWindowDimension) addTimeWindowDimension(routing, manager, transitRegistrar);
+        if (this.hasExtensionTurboInstanRatioDimension) addExtensionTurboInstanRatioDimension(routing, manager, transitRegistrar);
+        if (this.hasMaxInstanOrderCountDimension) addMaxInstanOrderCountDimension(routing, manager, transitRegistrar);
+        if (this.hasMaxTurboOrderCountDimension) addMaxTurboOrderCountDimension(routing, manager, transitRegistrar);
+        if (this.hasLoadFactorDimension) addLoadFactorDimension(routing, manager, transitRegistrar);
         addPenaltyAndDropVisit(routing, manager);
-        Assignment solution = findSolution(routing);
-        return getResult(routing, manager, solution);
+        arcRestriction.restrict(routing, manager, this.distanceMatrix, this.maxTotalDistanceInMeter, determineStartFromVrpType());
+        return new RoutingSearch.Model(manager, routing);
     }
 
 
     private RoutingIndexManager getRoutingIndexManager() {
-        if (this.distanceMatrix.length == 0) throw SegariRoutingErrors.invalidRoutingParameter("distanceMatrix in getRoutingIndexManager");
+        if (this.distanceMatrix.size() == 0) throw SegariRoutingErrors.invalidRoutingParameter("distanceMatrix in getRoutingIndexManager");
         if (this.vehicleNumbers <= 0) throw SegariRoutingErrors.invalidRoutingParameter("vehicleNumbers in getRoutingIndexManager");
         if (this.start.length == 0) throw SegariRoutingErrors.invalidRoutingParameter("start in getRoutingIndexManager");
         if (this.finish.length == 0) throw SegariRoutingErrors.invalidRoutingParameter("finish in getRoutingIndexManager");
-        return new RoutingIndexManager(this.distanceMatrix.length, this.vehicleNumbers, this.start, this.finish);
+        return new RoutingIndexManager(this.distanceMatrix.size(), this.vehicleNumbers, this.start, this.finish);
     }
 
-    private void addDistanceDimension(RoutingModel routing, RoutingIndexManager manager) {
+    private void addDistanceDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar) {
         if (this.maxTotalDistanceInMeter <= 0) throw SegariRoutingErrors.invalidRoutingParameter("maxTotalDistanceInMeter in addDistanceDimension");
-        if (this.distanceMatrix.length == 0) throw SegariRoutingErrors.invalidRoutingParameter("distanceMatrix in addDistanceDimension");
+        if (this.distanceMatrix.size() == 0) throw SegariRoutingErrors.invalidRoutingParameter("distanceMatrix in addDistanceDimension");
         final int transitCallbackIndex =
-                routing.registerTransitCallback((long fromIndex, long toIndex) -> {
-                    int fromNode = manager.indexToNode(fromIndex);
-                    int toNode = manager.indexToNode(toIndex);
-                    return distanceMatrix[fromNode][toNode];
-                });
+                transitRegistrar.registerMatrix(routing, manager, distanceMatrix);
         routing.setArcCostEvaluatorOfAllVehicles(transitCallbackIndex);
         routing.addDimension(transitCallbackIndex, 0, this.maxTotalDistanceInMeter,
                 true,
                 "Distance");
     }
 
-    private void addTimeWindowDimension(RoutingModel routing, RoutingIndexManager manager) {
+    private void addTimeWindowDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar) {
         final int transitCallbackIndex =
-                routing.registerTransitCallback((long fromIndex, long toIndex) -> {
-                    int fromNode = manager.indexToNode(fromIndex);
-                    int toNode = manager.indexToNode(toIndex);
-                    return durationMatrix[fromNode][toNode];
-                });
+                transitRegistrar.registerMatrix(routing, manager, durationMatrix);
         routing.addDimension(transitCallbackIndex, 120, 86400,
                 false,
                 "Time");
 
         RoutingDimension timeDimension = routing.getMutableDimension("Time");
 
-        for (int i = determineStartFromVrpType(); i < durationMatrix.length; i++) {
+        for (int i = determineStartFromVrpType(); i < durationMatrix.size(); i++) {
             long index = manager.nodeToIndex(i);
             timeDimension.cumulVar(index).setRange(
                     this.timeWindows[i][0],
@@ -298,65 +390,50 @@ public class SegariRoute {
         }
     }
 
-    private void addMaxOrderCountDimension(RoutingModel routing, RoutingIndexManager manager) {
+    private void addMaxOrderCountDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar) {
         if (notEqualToDistanceMatrixLength(this.maxOrderDemands.length)) throw SegariRoutingErrors.invalidRoutingParameter("maxOrderDemands in addMaxOrderCountDimension");
         if (notEqualToVehicleNumber(this.maxOrderVehicleCapacities.length)) throw SegariRoutingErrors.invalidRoutingParameter("maxOrderVehicleCapacities in addMaxOrderCountDimension");
-        final int maxOrderCountCallbackIndex = routing.registerUnaryTransitCallback((long fromIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            return this.maxOrderDemands[fromNode];
-        });
+        final int maxOrderCountCallbackIndex = transitRegistrar.registerVector(routing, manager, this.maxOrderDemands);
         routing.addDimensionWithVehicleCapacity(maxOrderCountCallbackIndex, 0,
                 this.maxOrderVehicleCapacities,
                 true,
                 "MaxOrderCount");
     }
 
-    private void addExtensionTurboInstanRatioDimension(RoutingModel routing, RoutingIndexManager manager) {
+    private void addExtensionTurboInstanRatioDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar) {
         if (notEqualToDistanceMatrixLength(this.extensionRatioDemands.length)) throw SegariRoutingErrors.invalidRoutingParameter("extensionRatioDemands in addExtensionTurboInstanRatioDimension");
         if (notEqualToVehicleNumber(this.extensionRatioVehicleCapacities.length)) throw SegariRoutingErrors.invalidRoutingParameter("extensionRatioVehicleCapacities in addExtensionTurboInstanRatioDimension");
-        final int extensionTurboInstanRatioCallbackIndex = routing.registerUnaryTransitCallback((long fromIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            return this.extensionRatioDemands[fromNode];
-        });
+        final int extensionTurboInstanRatioCallbackIndex = transitRegistrar.registerVector(routing, manager, this.extensionRatioDemands);
         routing.addDimensionWithVehicleCapacity(extensionTurboInstanRatioCallbackIndex, 0,
                 this.extensionRatioVehicleCapacities,
                 true,
                 "ExtensionTurboInstanRatio");
     }
 
-    private void addMaxInstanOrderCountDimension(RoutingModel routing, RoutingIndexManager manager) {
+    private void addMaxInstanOrderCountDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar) {
         if (notEqualToDistanceMatrixLength(this.maxInstanDemands.length)) throw SegariRoutingErrors.invalidRoutingParameter("maxInstanDemands in addMaxInstanOrderCountDimension");
         if (notEqualToVehicleNumber(this.maxInstanVehicleCapacities.length)) throw SegariRoutingErrors.invalidRoutingParameter("maxInstanVehicleCapacities in addMaxInstanOrderCountDimension");
-        final int maxInstanOrderCountCallbackIndex = routing.registerUnaryTransitCallback((long fromIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            return this.maxInstanDemands[fromNode];
-        });
+        final int maxInstanOrderCountCallbackIndex = transitRegistrar.registerVector(routing, manager, this.maxInstanDemands);
         routing.addDimensionWithVehicleCapacity(maxInstanOrderCountCallbackIndex, 0,
                 this.maxInstanVehicleCapacities,
                 true,
                 "MaxInstanOrderCount");
     }
 
-    private void addMaxTurboOrderCountDimension(RoutingModel routing, RoutingIndexManager manager) {
+    private void addMaxTurboOrderCountDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar) {
         if (notEqualToDistanceMatrixLength(this.maxTurboDemands.length)) throw SegariRoutingErrors.invalidRoutingParameter("maxTurboDemands in addMaxTurboOrderCountDimension");
         if (notEqualToVehicleNumber(this.maxTurboVehicleCapacities.length)) throw SegariRoutingErrors.invalidRoutingParameter("maxTurboVehicleCapacities in addMaxTurboOrderCountDimension");
-        final int maxTurboOrderCountCallbackIndex = routing.registerUnaryTransitCallback((long fromIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            return this.maxTurboDemands[fromNode];
-        });
+        final int maxTurboOrderCountCallbackIndex = transitRegistrar.registerVector(routing, manager, this.maxTurboDemands);
         routing.addDimensionWithVehicleCapacity(maxTurboOrderCountCallbackIndex, 0,
                 this.maxTurboVehicleCapacities,
                 true,
                 "MaxTurboOrderCount");
     }
 
-    private void addLoadFactorDimension(RoutingModel routing, RoutingIndexManager manager) {
+    private void addLoadFactorDimension(RoutingModel routing, RoutingIndexManager manager, TransitRegistrar transitRegistrar) {
         if (notEqualToDistanceMatrixLength(this.loadFactorDemands.length)) throw SegariRoutingErrors.invalidRoutingParameter("loadFactorDemands in addLoadFactorDimension");
         if (notEqualToVehicleNumber(this.loadFactorVehicleCapacities.length)) throw SegariRoutingErrors.invalidRoutingParameter("loadFactorVehicleCapacities in addLoadFactorDimension");
-        final int loadFactorCallbackIndex = routing.registerUnaryTransitCallback((long fromIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            return this.loadFactorDemands[fromNode];
-        });
+        final int loadFactorCallbackIndex = transitRegistrar.registerVector(routing, manager, this.loadFactorDemands);
         routing.addDimensionWithVehicleCapacity(loadFactorCallbackIndex, 0,
                 this.loadFactorVehicleCapacities,
                 true,
@@ -364,7 +441,7 @@ public class SegariRoute {
     }
 
     private boolean notEqualToDistanceMatrixLength(int length) {
-        return length != this.distanceMatrix.length;
+        return length != this.distanceMatrix.size();
     }
 
     private boolean notEqualToVehicleNumber(int length) {
@@ -372,26 +449,16 @@ public class SegariRoute {
     }
 
     private void addPenaltyAndDropVisit(RoutingModel routing, RoutingIndexManager manager) {
-        long penalty = 100_000;
-        long mandatoryPenalty = 1_000_000_000;
-        for (int i = determineStartFromVrpType(); i < this.distanceMatrix.length; ++i) {
+        for (int i = determineStartFromVrpType(); i < this.distanceMatrix.size(); ++i) {
             SegariRouteOrderDTO order = this.orders.get(i);
-            routing.addDisjunction(new long[] {manager.nodeToIndex(i)}, mandatoryOrderIds.contains(order.id()) ? mandatoryPenalty : penalty);
+            routing.addDisjunction(new long[] {manager.nodeToIndex(i)}, mandatoryOrderIds.contains(order.id()) ? MANDATORY_PENALTY : PENALTY);
         }
     }
 
-    private Assignment findSolution(RoutingModel routing) {
-        RoutingSearchParameters searchParameters =
-                main.defaultRoutingSearchParameters()
-                        .toBuilder()
-                        .setFirstSolutionStrategy(
-                                SegariRouteType.TSP_SP_START_ARBITRARY_FINISH.equals(type)
-                                        ? FirstSolutionStrategy.Value.CHRISTOFIDES
-                                        : FirstSolutionStrategy.Value.PATH_CHEAPEST_ARC
-                                )
-                        .setTimeLimit(Duration.newBuilder().setSeconds(60).build())
-                        .build();
-        return routing.solveWithParameters(searchParameters);
+    private FirstSolutionStrategy.Value getFirstSolutionStrategy() {
+        return SegariRouteType.TSP_SP_START_ARBITRARY_FINISH.equals(type)
+                ? FirstSolutionStrategy.Value.CHRISTOFIDES
+                : FirstSolutionStrategy.Value.PATH_CHEAPEST_ARC;
     }
 
     private List<ArrayList<Long>> getResult(RoutingModel routing, RoutingIndexManager manager,
@@ -439,6 +506,7 @@ public class SegariRoute {
         int length = this.orders.size();
 
         final OSRMTableResponseDTO rawDistanceAndDurationMatrix = getRawDistanceAndDurationMatrix();
+        this.approximateMatrix = rawDistanceAndDurationMatrix.approximate();
 
         this.distanceMatrix = getDistanceMatrix(length, rawDistanceAndDurationMatrix);
         this.maxOrderVehicleCapacities = initiateVehicleArray(this.vehicleNumbers, this.maxOrderCount);
@@ -477,18 +545,19 @@ public class SegariRoute {
         }
     }
 
-    private long[][] getDurationMatrix(OSRMTableResponseDTO rawDistanceAndDurationMatrix, int length) {
-        long[][] durationMatrix = rawDistanceAndDurationMatrix.durations();
-        for (int i = 0; i < length; i++) {
+    private DistanceMatrix getDurationMatrix(OSRMTableResponseDTO rawDistanceAndDurationMatrix, int length) {
+        DistanceMatrix durationMatrix = rawDistanceAndDurationMatrix.durations();
+        // Only SP rows widen time windows, so rows stay independent
+        CompiledNodes.forEachRow(length, i -> {
             for (int j = 0; j < length; j++) {
-                if (isDummyNode(i, j)){
-                    durationMatrix[i][j] = 0;
+                if (this.nodes.isDummy(i) || this.nodes.isDummy(j)){
+                    durationMatrix.set(i, j, 0);
                 }
-                if (isISpNode(i) && durationMatrix[i][j] > this.timeWindows[j][1]) {
+                if (this.nodes.isSp(i) && durationMatrix.get(i, j) > this.timeWindows[j][1]) {
                     this.timeWindows[j][1] = 43200;
                 }
             }
-        }
+        });
         return durationMatrix;
     }
 
@@ -497,9 +566,9 @@ public class SegariRoute {
             final List<LatLong> latLongs = this.orders.stream()
                     .map(order -> new LatLong(order.latitude(), order.longitude()))
                     .toList();
-            return osrmRestService.getMatrix(latLongs);
+            return osrmRestService.getMatrix(latLongs, this.deadline);
         }
-        return new OSRMTableResponseDTO(new long[0][0], new long[0][0]);
+        return new OSRMTableResponseDTO(DistanceMatrix.empty(), DistanceMatrix.empty(), false);
     }
 
     private int determineRatioCapacity() {
@@ -517,76 +586,45 @@ public class SegariRoute {
         return capacity;
     }
 
-    private long[][] getDistanceMatrix(int length, OSRMTableResponseDTO rawDistanceAndDurationMatrix) {
-        if (this.useOsrm){
-            if (rawDistanceAndDurationMatrix.distances().length == length) {
-                long[][] distanceMatrix = rawDistanceAndDurationMatrix.distances();
-                for (int i = 0; i < length; i++) {
-                    for (int j = 0; j < length; j++) {
-                        if (isDummyNode(i, j)){
-                            distanceMatrix[i][j] = 0;
-                            continue;
-                        }
-                        long basicValue = distanceMatrix[i][j];
-                        if (this.hasDistanceBetweenNodeDimension){
-                            distanceMatrix[i][j] = basicValue > this.maxDistanceBetweenNodeInMeter ? this.maxTotalDistanceInMeter + 1 : basicValue;
-                            continue;
-                        }
-                        if (this.hasDistanceWithSpDimension && isSpNode(i, j)){
-                            distanceMatrix[i][j] = basicValue > this.maxDistanceWithSpInMeter ? this.maxTotalDistanceInMeter + 1 : basicValue;
-                            continue;
-                        }
-                        if (this.hasDistanceBetweenOrderDimension){
-                            distanceMatrix[i][j] = basicValue > this.maxDistanceBetweenOrderInMeter ? this.maxTotalDistanceInMeter + 1 : basicValue;
-                        }
-                    }
-                }
-                return distanceMatrix;
-            }
-        }
-
-        long[][] distanceMatrix = new long[length][length];
-        for (int i = 0; i < length; i++) {
+    private DistanceMatrix getDistanceMatrix(int length, OSRMTableResponseDTO rawDistanceAndDurationMatrix) {
+        DistanceMatrix distanceMatrix = this.useOsrm && rawDistanceAndDurationMatrix.distances().size() == length
+                ? rawDistanceAndDurationMatrix.distances()
+                : getHaversineDistanceMatrix(length);
+        CompiledNodes.forEachRow(length, i -> {
             for (int j = 0; j < length; j++) {
-                if (isDummyNode(i, j)){
-                    distanceMatrix[i][j] = 0;
-                    continue;
-                }
-                long basicValue = Math.round(GeoUtils.getHaversineDistanceInMeter(
-                        this.orders.get(i).latitude(),
-                        this.orders.get(i).longitude(),
-                        this.orders.get(j).latitude(),
-                        this.orders.get(j).longitude()));
-                if (this.hasDistanceBetweenNodeDimension){
-                    distanceMatrix[i][j] = basicValue > this.maxDistanceBetweenNodeInMeter ? this.maxTotalDistanceInMeter + 1 : basicValue;
-                    continue;
-                }
-                if (this.hasDistanceWithSpDimension && isSpNode(i, j)){
-                    distanceMatrix[i][j] = basicValue > this.maxDistanceWithSpInMeter ? this.maxTotalDistanceInMeter + 1 : basicValue;
-                    continue;
-                }
-                if (this.hasDistanceBetweenOrderDimension){
-                    distanceMatrix[i][j] = basicValue > this.maxDistanceBetweenOrderInMeter ? this.maxTotalDistanceInMeter + 1 : basicValue;
-                }
+                applyDistanceLimit(distanceMatrix, i, j);
             }
-        }
+        });
         return distanceMatrix;
     }
 
-    private boolean isSpNode(int i, int j) {
-        return SegariRouteOrderDTO.SegariRouteOrderEnum.SP.equals(this.orders.get(i).type()) || SegariRouteOrderDTO.SegariRouteOrderEnum.SP.equals(this.orders.get(j).type());
-    }
-
-    private boolean isISpNode(int i) {
-        return SegariRouteOrderDTO.SegariRouteOrderEnum.SP.equals(this.orders.get(i).type());
-    }
-
-    private boolean isJSpNode(int j) {
-        return SegariRouteOrderDTO.SegariRouteOrderEnum.SP.equals(this.orders.get(j).type());
+    private DistanceMatrix getHaversineDistanceMatrix(int length) {
+        double[] latitudes = new double[length];
+        double[] longitudes = new double[length];
+        for (int i = 0; i < length; i++) {
+            latitudes[i] = this.orders.get(i).latitude();
+            longitudes[i] = this.orders.get(i).longitude();
+        }
+        return GeoUtils.getHaversineDistanceMatrixInMeter(latitudes, longitudes);
     }
 
-    private boolean isDummyNode(int i, int j) {
-        return SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY.equals(this.orders.get(i).type()) || SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY.equals(this.orders.get(j).type());
+    private void applyDistanceLimit(DistanceMatrix distanceMatrix, int i, int j) {
+        if (this.nodes.isDummy(i) || this.nodes.isDummy(j)){
+            distanceMatrix.set(i, j, 0);
+            return;
+        }
+        long prohibitiveDistance = this.maxTotalDistanceInMeter + 1L;
+        if (this.hasDistanceBetweenNodeDimension){
+            distanceMatrix.capAt(i, j, this.maxDistanceBetweenNodeInMeter, prohibitiveDistance);
+            return;
+        }
+        if (this.hasDistanceWithSpDimension && (this.nodes.isSp(i) || this.nodes.isSp(j))){
+            distanceMatrix.capAt(i, j, this.maxDistanceWithSpInMeter, prohibitiveDistance);
+            return;
+        }
+        if (this.hasDistanceBetweenOrderDimension){
+            distanceMatrix.capAt(i, j, this.maxDistanceBetweenOrderInMeter, prohibitiveDistance);
+        }
     }
 
     private int[] getFinish() {
@@ -0,0 +1,61 @@
+package id.segari.ortools.ortool;
+
+import com.google.ortools.constraintsolver.RoutingIndexManager;
+import com.google.ortools.constraintsolver.RoutingModel;
+import id.segari.ortools.util.DistanceMatrix;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registers transit evaluators on a routing model.
+ * In {@code matrix} mode (the default) precomputed node-indexed values are handed to OR-tools with
+ * {@code registerTransitMatrix}/{@code registerUnaryTransitVector}, so the search never calls back into Java.
+ * {@code callback} mode keeps the old per-arc Java lambdas and counts every upcall in
+ * {@code solver.transit.callbacks}, which makes the difference between the two measurable.
+ */
+@Component
+public class TransitRegistrar {
+
+    public enum Mode { MATRIX, CALLBACK }
+
+    private final Mode mode;
+    private final LongAdder callbackInvocations = new LongAdder();
+    private final Counter registrationCounter;
+
+    public TransitRegistrar(@Value("${solver.transit.mode:matrix}") Mode mode, MeterRegistry meterRegistry) {
+        this.mode = mode;
+        FunctionCounter.builder("solver.transit.callbacks", callbackInvocations, LongAdder::sum)
+                .description("Transit evaluations that crossed JNI into Java")
+                .register(meterRegistry);
+        this.registrationCounter = Counter.builder("solver.transit.registrations")
+                .tag("mode", mode.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    public int registerMatrix(RoutingModel routing, RoutingIndexManager manager, DistanceMatrix matrix) {
+        registrationCounter.increment();
+        if (mode == Mode.MATRIX) return routing.registerTransitMatrix(matrix.toLongArrays());
+        return routing.registerTransitCallback((fromIndex, toIndex) -> {
+            callbackInvocations.increment();
+            return matrix.get(manager.indexToNode(fromIndex), manager.indexToNode(toIndex));
+        });
+    }
+
+    public int registerVector(RoutingModel routing, RoutingIndexManager manager, long[] values) {
+        registrationCounter.increment();
+        if (mode == Mode.MATRIX) return routing.registerUnaryTransitVector(values);
+        return routing.registerUnaryTransitCallback(fromIndex -> {
+            callbackInvocations.increment();
+            return values[manager.indexToNode(fromIndex)];
+        });
+    }
+
+    long callbackInvocations() {
+        return callbackInvocations.sum();
+    }
+}
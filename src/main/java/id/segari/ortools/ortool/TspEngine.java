@@ -0,0 +1,41 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.solver.Deadline;
+
+/**
+ * Solves a compiled {@link TspProblem}. Engines are Spring beans picked per endpoint through {@link TspEngines}.
+ */
+public interface TspEngine {
+
+    /**
+     * @param route the route as order node indices, without SP and dummy; empty when no order is visited
+     */
+    record Result(int[] route, SearchStatus status) {
+    }
+
+    /**
+     * The name used in the {@code solver.engine.*} properties.
+     */
+    String name();
+
+    /**
+     * @param initialRoute order node indices to start from, or null. Engines may ignore it.
+     */
+    Result solve(TspProblem problem, int[] initialRoute, Deadline deadline);
+
+    /**
+     * Whether a solve is heavy enough to go through {@link id.segari.ortools.solver.SolverExecutor} admission and
+     * run on a solver thread.
+     */
+    default boolean needsSolverThread() {
+        return true;
+    }
+
+    /**
+     * How many models one solve builds, for memory admission in {@link id.segari.ortools.solver.SolverExecutor}.
+     */
+    default int modelCopies() {
+        return 1;
+    }
+}
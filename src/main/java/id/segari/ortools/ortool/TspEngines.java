@@ -0,0 +1,74 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the {@link TspEngine} for a TSP endpoint: the exact engine whenever the problem is small enough for it,
+ * otherwise the engine named in {@code solver.engine.tsp-v2} or {@code solver.engine.tsp-v3}.
+ * Solve time and objective are recorded per engine in {@code solver.engine.solve} and {@code solver.engine.objective},
+ * so engines can be compared on the same traffic.
+ */
+@Component
+public class TspEngines {
+
+    public enum Endpoint { TSP_V2, TSP_V3 }
+
+    private final ExactTspSolver exactTspSolver;
+    private final Map<Endpoint, TspEngine> engines = new EnumMap<>(Endpoint.class);
+    private final MeterRegistry meterRegistry;
+
+    public TspEngines(List<TspEngine> available, ExactTspSolver exactTspSolver,
+                      @Value("${solver.engine.tsp-v2:ortools}") String tspV2Engine,
+                      @Value("${solver.engine.tsp-v3:ortools}") String tspV3Engine,
+                      MeterRegistry meterRegistry) {
+        Map<String, TspEngine> byName = new HashMap<>();
+        for (TspEngine engine : available) {
+            byName.put(engine.name(), engine);
+        }
+        this.exactTspSolver = exactTspSolver;
+        this.engines.put(Endpoint.TSP_V2, lookup(byName, tspV2Engine, "solver.engine.tsp-v2"));
+        this.engines.put(Endpoint.TSP_V3, lookup(byName, tspV3Engine, "solver.engine.tsp-v3"));
+        this.meterRegistry = meterRegistry;
+    }
+
+    public TspEngine select(Endpoint endpoint, int orderCount) {
+        return exactTspSolver.accepts(orderCount) ? exactTspSolver : engines.get(endpoint);
+    }
+
+    public TspEngine.Result solve(TspEngine engine, TspProblem problem, int[] initialRoute, Deadline deadline) {
+        long startedAt = System.nanoTime();
+        TspEngine.Result result = engine.solve(problem, initialRoute, deadline);
+        Timer.builder("solver.engine.solve")
+                .tag("engine", engine.name())
+                .tag("status", result.status().name().toLowerCase())
+                .register(meterRegistry)
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("solver.engine.objective")
+                .tag("engine", engine.name())
+                .register(meterRegistry)
+                .record(problem.objective(result.route()));
+        return result;
+    }
+
+    private static TspEngine lookup(Map<String, TspEngine> byName, String name, String property) {
+        if (ExactTspSolver.NAME.equals(name)) {
+            throw new IllegalArgumentException(property + " cannot be " + name + ", it is picked automatically up to solver.exact.max-orders");
+        }
+        TspEngine engine = byName.get(name);
+        if (engine == null) {
+            throw new IllegalArgumentException(property + " must be one of " + byName.keySet() + ", got '" + name + "'");
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,105 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.util.DistanceMatrix;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.MAX_ROUTE_TIME;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.SP_INDEX;
+
+/**
+ * A single vehicle TSP compiled from a request, starting at the SP (node 1) and ending at the dummy node (node 0),
+ * with the request's matrices already preprocessed. Orders are nodes 2 and up and may be dropped for their penalty.
+ * <p>
+ * The objective every {@link TspEngine} minimizes is the route distance, plus {@code spanCostCoefficient} times the
+ * route duration, plus the drop penalties of the orders left out. Arcs into the dummy node are free.
+ *
+ * @param timeWindows             per node; only the upper bound is binding, the route starts at time 0
+ * @param extensions              whether each node is an extension order
+ * @param dropPenalties           penalty per node for leaving the order out
+ * @param maxNonExtensionCount    {@link Integer#MAX_VALUE} when there is no such limit
+ * @param maxNonExtensionDistance {@link Integer#MAX_VALUE} when there is no such limit
+ * @param timeSlack               waiting time OR-tools may add per node; with upper bound windows only it never helps
+ * @param totalDropPenalty        sum of the drop penalties of all orders, the objective of the empty route
+ */
+public record TspProblem(DistanceMatrix distances, DistanceMatrix durations, long[][] timeWindows, boolean[] extensions,
+                         long[] dropPenalties, int maxOrderCount, int maxTotalDistance, int maxNonExtensionCount,
+                         int maxNonExtensionDistance, int timeSlack, long spanCostCoefficient, long totalDropPenalty) {
+
+    public TspProblem(DistanceMatrix distances, DistanceMatrix durations, long[][] timeWindows, boolean[] extensions,
+                      long[] dropPenalties, int maxOrderCount, int maxTotalDistance, int maxNonExtensionCount,
+                      int maxNonExtensionDistance, int timeSlack, long spanCostCoefficient) {
+        this(distances, durations, timeWindows, extensions, dropPenalties, maxOrderCount, maxTotalDistance,
+                maxNonExtensionCount, maxNonExtensionDistance, timeSlack, spanCostCoefficient, totalDropPenalty(dropPenalties));
+    }
+
+    public int size() {
+        return distances.size();
+    }
+
+    public int orderCount() {
+        return distances.size() - ORDER_START_INDEX;
+    }
+
+    public boolean hasExtensions() {
+        for (boolean extension : extensions) {
+            if (extension) return true;
+        }
+        return false;
+    }
+
+    public Set<Integer> extensionOrderIndices() {
+        Set<Integer> indices = new HashSet<>();
+        for (int node = ORDER_START_INDEX; node < extensions.length; node++) {
+            if (extensions[node]) indices.add(node);
+        }
+        return indices;
+    }
+
+    public long objective(int[] route) {
+        return objective(route, route.length);
+    }
+
+    /**
+     * Scores the first {@code length} nodes of {@code route}, which must not repeat an order, in O(length) and
+     * without allocating.
+     *
+     * @return the objective, or {@link Long#MAX_VALUE} when the route breaks a limit or a time window
+     */
+    public long objective(int[] route, int length) {
+        if (length > maxOrderCount) return Long.MAX_VALUE;
+        long distance = 0;
+        long time = 0;
+        long nonExtensionDistance = 0;
+        int nonExtensionCount = 0;
+        long penalty = totalDropPenalty;
+
+        int from = SP_INDEX;
+        for (int position = 0; position < length; position++) {
+            int to = route[position];
+            int arcDistance = distances.get(from, to);
+            distance += arcDistance;
+            if (distance > maxTotalDistance) return Long.MAX_VALUE;
+            time += durations.get(from, to);
+            if (time > Math.min(timeWindows[to][1], MAX_ROUTE_TIME)) return Long.MAX_VALUE;
+            if (!extensions[to]) {
+                if (++nonExtensionCount > maxNonExtensionCount) return Long.MAX_VALUE;
+                if (!extensions[from]) nonExtensionDistance += arcDistance;
+                if (nonExtensionDistance > maxNonExtensionDistance) return Long.MAX_VALUE;
+            }
+            penalty -= dropPenalties[to];
+            from = to;
+        }
+        return distance + spanCostCoefficient * time + penalty;
+    }
+
+    private static long totalDropPenalty(long[] dropPenalties) {
+        long total = 0;
+        for (int node = ORDER_START_INDEX; node < dropPenalties.length; node++) {
+            total += dropPenalties[node];
+        }
+        return total;
+    }
+}
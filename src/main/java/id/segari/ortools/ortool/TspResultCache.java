@@ -0,0 +1,205 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.dto.route.v2.RouteV2DTO;
+import id.segari.ortools.dto.route.v2.TspResultDTO;
+import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.util.BoundedTtlCache;
+import id.segari.ortools.util.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Serves repeated TSP requests without solving them again. Clients retry on timeout, so the same payload often
+ * arrives while its first solve is still running: identical concurrent requests share that solve, and completed
+ * results are kept for {@code solver.result-cache.ttl}.
+ * <p>
+ * Requests are identified by a SHA-256 fingerprint of their canonical form: every limit, the scale factor, the
+ * mandatory orders sorted and every order field in request order. Results computed on an approximate matrix or cut
+ * short by the caller's deadline are shared with concurrent requests but not cached, so a retry gets a fresh solve.
+ * Failures are never cached.
+ * <p>
+ * A concurrent request only joins a solve started under a comparable deadline: unbounded solves are shared among
+ * unbounded callers, and bounded ones among callers whose remaining budget falls in the same power-of-two bucket of
+ * milliseconds. A short-deadline caller therefore never waits on a leader that may run up to a much longer budget,
+ * and a long-deadline caller never receives a result cut short by someone else's tighter one.
+ */
+@Component
+public class TspResultCache {
+
+    private final boolean enabled;
+    private final BoundedTtlCache<Fingerprint, TspResultDTO> results;
+    private final SingleFlight<InFlightKey, TspResultDTO> inFlightSolves = new SingleFlight<>();
+
+    public TspResultCache(@Value("${solver.result-cache.enabled:true}") boolean enabled,
+                          @Value("${solver.result-cache.max-entries:10000}") int maxEntries,
+                          @Value("${solver.result-cache.ttl:5m}") Duration ttl,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.results = new BoundedTtlCache<>(maxEntries, ttl);
+        FunctionCounter.builder("solver.result.cache.hits", results, BoundedTtlCache::hitCount).register(meterRegistry);
+        FunctionCounter.builder("solver.result.cache.misses", results, BoundedTtlCache::missCount).register(meterRegistry);
+        FunctionCounter.builder("solver.result.cache.evictions", results, BoundedTtlCache::evictionCount).register(meterRegistry);
+        Gauge.builder("solver.result.cache.size", results, BoundedTtlCache::size).register(meterRegistry);
+        FunctionCounter.builder("solver.result.requests.executed", inFlightSolves, SingleFlight::executionCount).register(meterRegistry);
+        FunctionCounter.builder("solver.result.requests.coalesced", inFlightSolves, SingleFlight::coalescedCount).register(meterRegistry);
+    }
+
+    public TspResultDTO solve(RouteV2DTO request, Deadline deadline, Supplier<TspResultDTO> solve) {
+        if (!enabled) return solve.get();
+        return solve(Fingerprint.builder("v2")
+                .add(request.maxTotalDistanceWithNonExtensionInMeter())
+                .add(request.maxTotalDistanceWithExtensionInMeter())
+                .add(request.maxDistanceBetweenOrderToNonExtensionInMeter())
+                .add(request.maxDistanceBetweenOrderToExtensionInMeter())
+                .add(request.maxOrderCountWithExtension())
+                .add(request.maxOrderCountWithNonExtension())
+                .add(request.mandatoryOrders())
+                .add(request.orders())
+                .build(), deadline, solve);
+    }
+
+    public TspResultDTO solve(RouteV3DTO request, Deadline deadline, Supplier<TspResultDTO> solve) {
+        if (!enabled) return solve.get();
+        return solve(Fingerprint.builder("v3")
+                .add(request.maxTotalDistanceWithNonExtensionInMeter())
+                .add(request.maxTotalDistanceWithExtensionInMeter())
+                .add(request.maxDistanceBetweenOrderToNonExtensionInMeter())
+                .add(request.maxDistanceBetweenOrderToExtensionInMeter())
+                .add(request.maxOrderCountWithExtension())
+                .add(request.maxOrderCountWithNonExtension())
+                .add(request.mandatoryOrders())
+                .add(request.scaleFactor())
+                .add(request.overheadTimeInSecond())
+                .add(request.slackTimeInSecond())
+                .add(request.orders())
+                .build(), deadline, solve);
+    }
+
+    private TspResultDTO solve(Fingerprint fingerprint, Deadline deadline, Supplier<TspResultDTO> solve) {
+        TspResultDTO cached = results.get(fingerprint);
+        if (cached != null) return cached;
+        return inFlightSolves.execute(new InFlightKey(fingerprint, budgetBucket(deadline)), () -> {
+            TspResultDTO result = solve.get();
+            if (isCacheable(result)) results.put(fingerprint, result);
+            return result;
+        });
+    }
+
+    private static boolean isCacheable(TspResultDTO result) {
+        return !result.approximateMatrix() && result.searchStatus() != SearchStatus.DEADLINE;
+    }
+
+    /**
+     * @return -1 for an unbounded deadline, otherwise the bit length of the remaining milliseconds
+     */
+    static int budgetBucket(Deadline deadline) {
+        if (!deadline.isBounded()) return -1;
+        return Long.SIZE - Long.numberOfLeadingZeros(deadline.remaining().toMillis());
+    }
+
+    private record InFlightKey(Fingerprint fingerprint, int budgetBucket) {
+    }
+
+    /**
+     * The first 128 bits of the SHA-256 of a request's canonical form.
+     */
+    record Fingerprint(long high, long low) {
+
+        static Builder builder(String endpoint) {
+            return new Builder().add(endpoint);
+        }
+
+        static final class Builder {
+            private static final byte NULL = 0;
+            private static final byte PRESENT = 1;
+
+            private final MessageDigest digest;
+            private final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + 1);
+
+            private Builder() {
+                try {
+                    this.digest = MessageDigest.getInstance("SHA-256");
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("SHA-256 is not available", e);
+                }
+            }
+
+            Builder add(String value) {
+                if (value == null) return nothing();
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                add(bytes.length);
+                digest.update(bytes);
+                return this;
+            }
+
+            Builder add(Integer value) {
+                return value == null ? nothing() : write(value);
+            }
+
+            Builder add(Long value) {
+                return value == null ? nothing() : write(value);
+            }
+
+            Builder add(Double value) {
+                return value == null ? nothing() : write(Double.doubleToLongBits(value));
+            }
+
+            Builder add(Boolean value) {
+                return value == null ? nothing() : write(value ? 1 : 0);
+            }
+
+            Builder add(Set<Long> ids) {
+                if (ids == null) return nothing();
+                add(ids.size());
+                ids.stream().sorted().forEach(this::add);
+                return this;
+            }
+
+            Builder add(List<RouteOrderV2DTO> orders) {
+                if (orders == null) return nothing();
+                add(orders.size());
+                for (RouteOrderV2DTO order : orders) {
+                    add(order.id())
+                            .add(order.type() == null ? null : order.type().name())
+                            .add(order.latitude())
+                            .add(order.longitude())
+                            .add(order.isExtension())
+                            .add(order.maxTimeWindow());
+                }
+                return this;
+            }
+
+            Fingerprint build() {
+                ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+                return new Fingerprint(hash.getLong(), hash.getLong());
+            }
+
+            private Builder nothing() {
+                digest.update(NULL);
+                return this;
+            }
+
+            private Builder write(long value) {
+                buffer.clear();
+                buffer.put(PRESENT).putLong(value);
+                digest.update(buffer.array(), 0, buffer.position());
+                return this;
+            }
+        }
+    }
+}
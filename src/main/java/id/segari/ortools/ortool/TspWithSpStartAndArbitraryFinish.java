@@ -1,6 +1,6 @@
 package id.segari.ortools.ortool;
 
-import com.google.ortools.constraintsolver.*;
+import id.segari.ortools.dto.route.SearchStatus;
 import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
 import id.segari.ortools.dto.route.v2.RouteV2DTO;
 import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
@@ -9,6 +9,9 @@ import id.segari.ortools.error.SegariRoutingErrors;
 import id.segari.ortools.external.LatLong;
 import id.segari.ortools.external.OSRMRestService;
 import id.segari.ortools.external.OSRMTableResponseDTO;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.solver.SolverExecutor;
+import id.segari.ortools.util.DistanceMatrix;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
@@ -17,27 +20,66 @@ public class TspWithSpStartAndArbitraryFinish extends BaseTspWithSpStartAndArbit
 
     private static final int TIME_SLACK = 120;
 
-    public static TspResultDTO run(RouteV2DTO dto, OSRMRestService osrmRestService) {
-        validateInput(dto);
+    public static TspResultDTO run(RouteV2DTO request, OSRMRestService osrmRestService, SolverExecutor solverExecutor,
+                                   TspEngines tspEngines, WarmStartStore warmStartStore, ReachabilityPruner reachabilityPruner,
+                                   Presolver presolver, Deadline deadline) {
+        validateInput(request);
+
+        final ReachabilityPruner.Pruned<RouteOrderV2DTO> pruned = pruneUnreachable(request.orders(), reachabilityPruner,
+                request.maxTotalDistanceWithExtensionInMeter(), request.maxTotalDistanceWithNonExtensionInMeter(),
+                getMandatoryOrderIds(request));
+        final RouteV2DTO dto = withOrders(request, pruned.orders());
 
         final List<RouteOrderV2DTO> orders = dto.orders();
         final Set<Long> mandatoryOrderIds = getMandatoryOrderIds(dto);
-        final Set<Integer> extensionOrderIndices = getExtensionOrderIndices(orders);
-        final boolean hasExtensions = !extensionOrderIndices.isEmpty();
-
-        final OSRMTableResponseDTO tableMatrix = fetchTableMatrix(orders, osrmRestService);
-        final long[][] distanceMatrix = preprocessDistanceMatrix(tableMatrix.distances(), orders, dto, hasExtensions);
-        final long[][] timeWindows = initializeTimeWindows(orders);
-        final long[][] durationMatrix = preprocessDurationMatrix(tableMatrix.durations(), orders, timeWindows);
+        final CompiledNodes nodes = CompiledNodes.of(orders);
+        final TspEngine engine = tspEngines.select(TspEngines.Endpoint.TSP_V2, orders.size() - ORDER_START_INDEX);
+
+        if (engine.needsSolverThread()) solverExecutor.ensureAdmissible(orders.size(), engine.modelCopies());
+        final OSRMTableResponseDTO tableMatrix = fetchTableMatrix(orders, osrmRestService, deadline);
+        if (!engine.needsSolverThread()) {
+            return solve(dto, tableMatrix, tspEngines, engine, warmStartStore, presolver, deadline, mandatoryOrderIds, nodes,
+                    pruned.prunedOrderIds());
+        }
+        return solverExecutor.execute(orders.size(), engine.modelCopies(), deadline,
+                () -> solve(dto, tableMatrix, tspEngines, engine, warmStartStore, presolver, deadline, mandatoryOrderIds, nodes,
+                        pruned.prunedOrderIds()));
+    }
 
-        final RoutingIndexManager manager = createRoutingManager(distanceMatrix);
-        final RoutingModel routing = new RoutingModel(manager);
+    private static TspResultDTO solve(RouteV2DTO dto, OSRMTableResponseDTO tableMatrix, TspEngines tspEngines, TspEngine engine,
+                                      WarmStartStore warmStartStore, Presolver presolver, Deadline deadline, Set<Long> mandatoryOrderIds,
+                                      CompiledNodes nodes, List<Long> prunedOrderIds) {
+        final Presolver.Presolved presolved = presolver.presolve(compile(dto, tableMatrix, mandatoryOrderIds, nodes), nodes, mandatoryOrderIds);
+        final List<Long> allPrunedOrderIds = concat(prunedOrderIds, presolved.prunedOrderIds());
+        if (presolved.hasNoOrders()) {
+            return new TspResultDTO(List.of(), tableMatrix.approximate(), SearchStatus.CONVERGED, allPrunedOrderIds);
+        }
+        final TspProblem problem = presolved.problem();
+        final List<RouteOrderV2DTO> orders = presolved.keep(dto.orders());
+        final int[] initialRoute = warmStartStore.initialRoute(orders, problem.distances(), problem.maxOrderCount(), problem.maxTotalDistance());
+
+        final TspEngine.Result result = tspEngines.solve(engine, problem, initialRoute, deadline);
+        final List<Long> routes = toOrderIds(presolved.toOriginalNodes(result.route()), nodes, mandatoryOrderIds);
+        warmStartStore.remember(orders, routes);
+        return new TspResultDTO(routes, tableMatrix.approximate(), result.status(), allPrunedOrderIds);
+    }
 
-        setupDimensions(routing, manager, orders, distanceMatrix, durationMatrix, timeWindows, extensionOrderIndices, dto, hasExtensions);
-        addPenaltyAndDropVisit(routing, manager, orders, mandatoryOrderIds);
+    private static TspProblem compile(RouteV2DTO dto, OSRMTableResponseDTO tableMatrix, Set<Long> mandatoryOrderIds,
+                                      CompiledNodes nodes) {
+        final boolean hasExtensions = nodes.hasExtensions();
+        final DistanceMatrix distanceMatrix = preprocessDistanceMatrix(tableMatrix.distances(), nodes, dto, hasExtensions);
+        final long[][] timeWindows = initializeTimeWindows(dto.orders());
+        final DistanceMatrix durationMatrix = preprocessDurationMatrix(tableMatrix.durations(), nodes, timeWindows);
 
-        Assignment solution = findSolution(routing);
-        return new TspResultDTO(extractResult(routing, manager, solution, orders, mandatoryOrderIds));
+        // This variant only minimizes distance, the route duration has no cost
+        if (hasExtensions) {
+            return new TspProblem(distanceMatrix, durationMatrix, timeWindows, nodes.extensions(), dropPenalties(nodes, mandatoryOrderIds),
+                    dto.maxOrderCountWithExtension(), dto.maxTotalDistanceWithExtensionInMeter(),
+                    dto.maxOrderCountWithNonExtension(), dto.maxTotalDistanceWithNonExtensionInMeter(), TIME_SLACK, 0);
+        }
+        return new TspProblem(distanceMatrix, durationMatrix, timeWindows, nodes.extensions(), dropPenalties(nodes, mandatoryOrderIds),
+                dto.maxOrderCountWithNonExtension(), dto.maxTotalDistanceWithNonExtensionInMeter(),
+                Integer.MAX_VALUE, Integer.MAX_VALUE, TIME_SLACK, 0);
     }
 
     // ==================== Validation ====================
@@ -76,88 +118,60 @@ public class TspWithSpStartAndArbitraryFinish extends BaseTspWithSpStartAndArbit
         return CollectionUtils.isEmpty(dto.mandatoryOrders()) ? Collections.emptySet() : dto.mandatoryOrders();
     }
 
-    private static OSRMTableResponseDTO fetchTableMatrix(List<RouteOrderV2DTO> orders, OSRMRestService osrmRestService) {
+    private static RouteV2DTO withOrders(RouteV2DTO dto, List<RouteOrderV2DTO> orders) {
+        if (orders == dto.orders()) return dto;
+        return new RouteV2DTO(dto.maxTotalDistanceWithNonExtensionInMeter(), dto.maxTotalDistanceWithExtensionInMeter(),
+                dto.maxDistanceBetweenOrderToNonExtensionInMeter(), dto.maxDistanceBetweenOrderToExtensionInMeter(), dto.maxOrderCountWithExtension(),
+                dto.maxOrderCountWithNonExtension(), dto.mandatoryOrders(), orders);
+    }
+
+    private static OSRMTableResponseDTO fetchTableMatrix(List<RouteOrderV2DTO> orders, OSRMRestService osrmRestService, Deadline deadline) {
         List<LatLong> latLongs = orders.stream()
                 .map(order -> new LatLong(order.latitude(), order.longitude()))
                 .toList();
-        return osrmRestService.getMatrix(latLongs);
+        return osrmRestService.getMatrix(latLongs, deadline);
     }
 
     // ==================== Matrix Preprocessing ====================
 
-    private static long[][] preprocessDistanceMatrix(long[][] distanceMatrix, List<RouteOrderV2DTO> orders,
+    private static DistanceMatrix preprocessDistanceMatrix(DistanceMatrix distanceMatrix, CompiledNodes nodes,
                                                       RouteV2DTO dto, boolean hasExtensions) {
-        int length = orders.size();
+        int length = nodes.size();
         int maxDistanceNonExt = dto.maxDistanceBetweenOrderToNonExtensionInMeter();
         int maxDistanceExt = dto.maxDistanceBetweenOrderToExtensionInMeter();
         int prohibitiveDistance = (hasExtensions ? dto.maxTotalDistanceWithExtensionInMeter() : dto.maxTotalDistanceWithNonExtensionInMeter()) + 1;
 
-        for (int i = 0; i < length; i++) {
+        CompiledNodes.forEachRow(length, i -> {
             for (int j = 0; j < length; j++) {
-                if (isSpecialNode(i, orders) || isSpecialNode(j, orders)) {
-                    if (isDummyNode(i, orders) || isDummyNode(j, orders)) {
-                        distanceMatrix[i][j] = 0;
+                if (nodes.isSpecial(i) || nodes.isSpecial(j)) {
+                    if (nodes.isDummy(i) || nodes.isDummy(j)) {
+                        distanceMatrix.set(i, j, 0);
                     }
                     continue;
                 }
 
-                long basicValue = distanceMatrix[i][j];
-                int maxAllowedDistance = (hasExtensions && isExtensionEdge(i, j, orders)) ? maxDistanceExt : maxDistanceNonExt;
-                distanceMatrix[i][j] = basicValue > maxAllowedDistance ? prohibitiveDistance : basicValue;
+                int maxAllowedDistance = (hasExtensions && nodes.isExtensionEdge(i, j)) ? maxDistanceExt : maxDistanceNonExt;
+                distanceMatrix.capAt(i, j, maxAllowedDistance, prohibitiveDistance);
             }
-        }
+        });
         return distanceMatrix;
     }
 
-    private static long[][] preprocessDurationMatrix(long[][] durationMatrix, List<RouteOrderV2DTO> orders, long[][] timeWindows) {
-        int length = orders.size();
-        for (int i = 0; i < length; i++) {
+    /**
+     * Only the SP row widens time windows, so rows stay independent.
+     */
+    private static DistanceMatrix preprocessDurationMatrix(DistanceMatrix durationMatrix, CompiledNodes nodes, long[][] timeWindows) {
+        int length = nodes.size();
+        CompiledNodes.forEachRow(length, i -> {
             for (int j = 0; j < length; j++) {
-                if (isDummyNode(i, orders) || isDummyNode(j, orders)) {
-                    durationMatrix[i][j] = 0;
+                if (nodes.isDummy(i) || nodes.isDummy(j)) {
+                    durationMatrix.set(i, j, 0);
                 }
-                if (isSpNode(i, orders) && durationMatrix[i][j] > timeWindows[j][1]) {
+                if (nodes.isSp(i) && durationMatrix.get(i, j) > timeWindows[j][1]) {
                     timeWindows[j][1] = TIME_WINDOW_BYPASS;
                 }
             }
-        }
-        return durationMatrix;
-    }
-
-    // ==================== Dimensions Setup ====================
-
-    private static void setupDimensions(RoutingModel routing, RoutingIndexManager manager,
-                                        List<RouteOrderV2DTO> orders, long[][] distanceMatrix,
-                                        long[][] durationMatrix, long[][] timeWindows,
-                                        Set<Integer> extensionOrderIndices, RouteV2DTO dto, boolean hasExtensions) {
-        long[] orderDemands = createOrderDemands(orders.size());
-
-        if (hasExtensions) {
-            addDistanceDimension(routing, manager, dto.maxTotalDistanceWithExtensionInMeter(), distanceMatrix);
-            addMaxOrderCountDimension(routing, manager, orderDemands, dto.maxOrderCountWithExtension());
-            addNonExtensionCountDimension(routing, manager, extensionOrderIndices, dto.maxOrderCountWithNonExtension());
-            addNonExtensionDistanceDimension(routing, manager, extensionOrderIndices, dto.maxTotalDistanceWithNonExtensionInMeter(), distanceMatrix);
-        } else {
-            addDistanceDimension(routing, manager, dto.maxTotalDistanceWithNonExtensionInMeter(), distanceMatrix);
-            addMaxOrderCountDimension(routing, manager, orderDemands, dto.maxOrderCountWithNonExtension());
-        }
-
-        addTimeWindowDimension(routing, manager, durationMatrix, timeWindows);
-    }
-
-    private static void addTimeWindowDimension(RoutingModel routing, RoutingIndexManager manager,
-                                                long[][] durationMatrix, long[][] timeWindows) {
-        int callback = routing.registerTransitCallback((fromIndex, toIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            int toNode = manager.indexToNode(toIndex);
-            return durationMatrix[fromNode][toNode];
         });
-        routing.addDimension(callback, TIME_SLACK, MAX_ROUTE_TIME, false, "Time");
-
-        RoutingDimension timeDimension = routing.getMutableDimension("Time");
-        for (int i = ORDER_START_INDEX; i < durationMatrix.length; i++) {
-            long index = manager.nodeToIndex(i);
-            timeDimension.cumulVar(index).setRange(timeWindows[i][0], timeWindows[i][1]);
-        }
+        return durationMatrix;
     }
 }
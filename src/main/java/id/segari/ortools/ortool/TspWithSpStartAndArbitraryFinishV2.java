@@ -1,7 +1,7 @@
 package id.segari.ortools.ortool;
 
-import com.google.ortools.constraintsolver.*;
 import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.SearchStatus;
 import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
 import id.segari.ortools.dto.route.v2.TspResultDTO;
 import id.segari.ortools.dto.route.v3.RouteV3DTO;
@@ -9,35 +9,77 @@ import id.segari.ortools.error.SegariRoutingErrors;
 import id.segari.ortools.external.LatLong;
 import id.segari.ortools.external.OSRMRestService;
 import id.segari.ortools.external.OSRMTableResponseDTO;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.solver.SolverExecutor;
+import id.segari.ortools.util.DistanceMatrix;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
 
 public class TspWithSpStartAndArbitraryFinishV2 extends BaseTspWithSpStartAndArbitraryFinish {
 
+    // Minimize time span to prioritize orders with tighter deadlines first
     protected static final int GLOBAL_SPAN_COST_COEFFICIENT = 100;
 
-    public static TspResultDTO run(RouteV3DTO dto, OSRMRestService osrmRestService) {
-        validateInput(dto);
+    public static TspResultDTO run(RouteV3DTO request, OSRMRestService osrmRestService, SolverExecutor solverExecutor,
+                                   TspEngines tspEngines, WarmStartStore warmStartStore, ReachabilityPruner reachabilityPruner,
+                                   Presolver presolver, Deadline deadline) {
+        validateInput(request);
+
+        final ReachabilityPruner.Pruned<RouteOrderV2DTO> pruned = pruneUnreachable(request.orders(), reachabilityPruner,
+                request.maxTotalDistanceWithExtensionInMeter(), request.maxTotalDistanceWithNonExtensionInMeter(),
+                getMandatoryOrderIds(request));
+        final RouteV3DTO dto = withOrders(request, pruned.orders());
 
         final List<RouteOrderV2DTO> orders = dto.orders();
         final Set<Long> mandatoryOrderIds = getMandatoryOrderIds(dto);
-        final Set<Integer> extensionOrderIndices = getExtensionOrderIndices(orders);
-        final boolean hasExtensions = !extensionOrderIndices.isEmpty();
-
-        final OSRMTableResponseDTO tableMatrix = fetchTableMatrix(dto, osrmRestService);
-        final long[][] distanceMatrix = preprocessDistanceMatrix(tableMatrix.distances(), orders, dto, hasExtensions);
-        final long[][] timeWindows = initializeTimeWindows(orders);
-        final long[][] durationMatrix = preprocessDurationMatrix(tableMatrix.durations(), orders, timeWindows, dto);
+        final CompiledNodes nodes = CompiledNodes.of(orders);
+        final TspEngine engine = tspEngines.select(TspEngines.Endpoint.TSP_V3, orders.size() - ORDER_START_INDEX);
+
+        if (engine.needsSolverThread()) solverExecutor.ensureAdmissible(orders.size(), engine.modelCopies());
+        final OSRMTableResponseDTO tableMatrix = fetchTableMatrix(dto, osrmRestService, deadline);
+        if (!engine.needsSolverThread()) {
+            return solve(dto, tableMatrix, tspEngines, engine, warmStartStore, presolver, deadline, mandatoryOrderIds, nodes,
+                    pruned.prunedOrderIds());
+        }
+        return solverExecutor.execute(orders.size(), engine.modelCopies(), deadline,
+                () -> solve(dto, tableMatrix, tspEngines, engine, warmStartStore, presolver, deadline, mandatoryOrderIds, nodes,
+                        pruned.prunedOrderIds()));
+    }
 
-        final RoutingIndexManager manager = createRoutingManager(distanceMatrix);
-        final RoutingModel routing = new RoutingModel(manager);
+    private static TspResultDTO solve(RouteV3DTO dto, OSRMTableResponseDTO tableMatrix, TspEngines tspEngines, TspEngine engine,
+                                      WarmStartStore warmStartStore, Presolver presolver, Deadline deadline, Set<Long> mandatoryOrderIds,
+                                      CompiledNodes nodes, List<Long> prunedOrderIds) {
+        final Presolver.Presolved presolved = presolver.presolve(compile(dto, tableMatrix, mandatoryOrderIds, nodes), nodes, mandatoryOrderIds);
+        final List<Long> allPrunedOrderIds = concat(prunedOrderIds, presolved.prunedOrderIds());
+        if (presolved.hasNoOrders()) {
+            return new TspResultDTO(List.of(), tableMatrix.approximate(), SearchStatus.CONVERGED, allPrunedOrderIds);
+        }
+        final TspProblem problem = presolved.problem();
+        final List<RouteOrderV2DTO> orders = presolved.keep(dto.orders());
+        final int[] initialRoute = warmStartStore.initialRoute(orders, problem.distances(), problem.maxOrderCount(), problem.maxTotalDistance());
+
+        final TspEngine.Result result = tspEngines.solve(engine, problem, initialRoute, deadline);
+        final List<Long> routes = toOrderIds(presolved.toOriginalNodes(result.route()), nodes, mandatoryOrderIds);
+        warmStartStore.remember(orders, routes);
+        return new TspResultDTO(routes, tableMatrix.approximate(), result.status(), allPrunedOrderIds);
+    }
 
-        setupDimensions(routing, manager, orders, distanceMatrix, durationMatrix, timeWindows, extensionOrderIndices, dto, hasExtensions);
-        addPenaltyAndDropVisit(routing, manager, orders, mandatoryOrderIds);
+    private static TspProblem compile(RouteV3DTO dto, OSRMTableResponseDTO tableMatrix, Set<Long> mandatoryOrderIds,
+                                      CompiledNodes nodes) {
+        final boolean hasExtensions = nodes.hasExtensions();
+        final DistanceMatrix distanceMatrix = preprocessDistanceMatrix(tableMatrix.distances(), nodes, dto, hasExtensions);
+        final long[][] timeWindows = initializeTimeWindows(dto.orders());
+        final DistanceMatrix durationMatrix = preprocessDurationMatrix(tableMatrix.durations(), nodes, timeWindows, dto);
 
-        Assignment solution = findSolution(routing);
-        return new TspResultDTO(extractResult(routing, manager, solution, orders, mandatoryOrderIds));
+        if (hasExtensions) {
+            return new TspProblem(distanceMatrix, durationMatrix, timeWindows, nodes.extensions(), dropPenalties(nodes, mandatoryOrderIds),
+                    dto.maxOrderCountWithExtension(), dto.maxTotalDistanceWithExtensionInMeter(),
+                    dto.maxOrderCountWithNonExtension(), dto.maxTotalDistanceWithNonExtensionInMeter(), 0, GLOBAL_SPAN_COST_COEFFICIENT);
+        }
+        return new TspProblem(distanceMatrix, durationMatrix, timeWindows, nodes.extensions(), dropPenalties(nodes, mandatoryOrderIds),
+                dto.maxOrderCountWithNonExtension(), dto.maxTotalDistanceWithNonExtensionInMeter(),
+                Integer.MAX_VALUE, Integer.MAX_VALUE, 0, GLOBAL_SPAN_COST_COEFFICIENT);
     }
 
     // ==================== Validation ====================
@@ -82,99 +124,68 @@ public class TspWithSpStartAndArbitraryFinishV2 extends BaseTspWithSpStartAndArb
         return CollectionUtils.isEmpty(dto.mandatoryOrders()) ? Collections.emptySet() : dto.mandatoryOrders();
     }
 
-    private static OSRMTableResponseDTO fetchTableMatrix(RouteV3DTO dto, OSRMRestService osrmRestService) {
+    private static RouteV3DTO withOrders(RouteV3DTO dto, List<RouteOrderV2DTO> orders) {
+        if (orders == dto.orders()) return dto;
+        return new RouteV3DTO(dto.maxTotalDistanceWithNonExtensionInMeter(), dto.maxTotalDistanceWithExtensionInMeter(),
+                dto.maxDistanceBetweenOrderToNonExtensionInMeter(), dto.maxDistanceBetweenOrderToExtensionInMeter(), dto.maxOrderCountWithExtension(),
+                dto.maxOrderCountWithNonExtension(), dto.mandatoryOrders(), dto.scaleFactor(), dto.overheadTimeInSecond(), dto.slackTimeInSecond(), orders);
+    }
+
+    private static OSRMTableResponseDTO fetchTableMatrix(RouteV3DTO dto, OSRMRestService osrmRestService, Deadline deadline) {
         List<LatLong> latLongs = dto.orders().stream()
                 .map(order -> new LatLong(order.latitude(), order.longitude()))
                 .toList();
-        return osrmRestService.getMatrixWithScaleFactor(latLongs, dto.scaleFactor());
+        return osrmRestService.getMatrixWithScaleFactor(latLongs, dto.scaleFactor(), deadline);
     }
 
     // ==================== Matrix Preprocessing ====================
 
-    private static long[][] preprocessDistanceMatrix(long[][] distanceMatrix, List<RouteOrderV2DTO> orders,
+    private static DistanceMatrix preprocessDistanceMatrix(DistanceMatrix distanceMatrix, CompiledNodes nodes,
                                                      RouteV3DTO dto, boolean hasExtensions) {
-        int length = orders.size();
+        int length = nodes.size();
         int maxDistanceNonExt = dto.maxDistanceBetweenOrderToNonExtensionInMeter();
         int maxDistanceExt = dto.maxDistanceBetweenOrderToExtensionInMeter();
         int prohibitiveDistance = (hasExtensions ? dto.maxTotalDistanceWithExtensionInMeter() : dto.maxTotalDistanceWithNonExtensionInMeter()) + 1;
 
-        for (int i = 0; i < length; i++) {
+        CompiledNodes.forEachRow(length, i -> {
             for (int j = 0; j < length; j++) {
-                if (isSpecialNode(i, orders) || isSpecialNode(j, orders)) {
-                    if (isDummyNode(i, orders) || isDummyNode(j, orders)) {
-                        distanceMatrix[i][j] = 0;
+                if (nodes.isSpecial(i) || nodes.isSpecial(j)) {
+                    if (nodes.isDummy(i) || nodes.isDummy(j)) {
+                        distanceMatrix.set(i, j, 0);
                     }
                     continue;
                 }
 
-                long basicValue = distanceMatrix[i][j];
-                int maxAllowedDistance = (hasExtensions && isExtensionEdge(i, j, orders)) ? maxDistanceExt : maxDistanceNonExt;
-                distanceMatrix[i][j] = basicValue > maxAllowedDistance ? prohibitiveDistance : basicValue;
+                int maxAllowedDistance = (hasExtensions && nodes.isExtensionEdge(i, j)) ? maxDistanceExt : maxDistanceNonExt;
+                distanceMatrix.capAt(i, j, maxAllowedDistance, prohibitiveDistance);
             }
-        }
+        });
         return distanceMatrix;
     }
 
-    private static long[][] preprocessDurationMatrix(long[][] durationMatrix, List<RouteOrderV2DTO> orders,
+    /**
+     * Only the SP row widens time windows, so rows stay independent.
+     */
+    private static DistanceMatrix preprocessDurationMatrix(DistanceMatrix durationMatrix, CompiledNodes nodes,
                                                      long[][] timeWindows, RouteV3DTO dto) {
-        int length = orders.size();
-        for (int i = 0; i < length; i++) {
+        int length = nodes.size();
+        CompiledNodes.forEachRow(length, i -> {
             for (int j = 0; j < length; j++) {
-                if (isDummyNode(i, orders) || isDummyNode(j, orders)) {
-                    durationMatrix[i][j] = 0;
+                if (nodes.isDummy(i) || nodes.isDummy(j)) {
+                    durationMatrix.set(i, j, 0);
                     continue;
                 }
-                if (isSpNode(i, orders) && isOrderNode(j, orders)) {
-                    durationMatrix[i][j] += dto.overheadTimeInSecond();
+                if (nodes.isSp(i) && nodes.isOrder(j)) {
+                    durationMatrix.add(i, j, dto.overheadTimeInSecond());
                 }
-                if (isOrderNode(i, orders) && isOrderNode(j, orders) && i != j) {
-                    durationMatrix[i][j] += dto.slackTimeInSecond();
+                if (nodes.isOrder(i) && nodes.isOrder(j) && i != j) {
+                    durationMatrix.add(i, j, dto.slackTimeInSecond());
                 }
-                if (isSpNode(i, orders) && durationMatrix[i][j] > timeWindows[j][1]) {
+                if (nodes.isSp(i) && durationMatrix.get(i, j) > timeWindows[j][1]) {
                     timeWindows[j][1] = TIME_WINDOW_BYPASS;
                 }
             }
-        }
-        return durationMatrix;
-    }
-
-    // ==================== Dimensions Setup ====================
-
-    private static void setupDimensions(RoutingModel routing, RoutingIndexManager manager,
-                                        List<RouteOrderV2DTO> orders, long[][] distanceMatrix,
-                                        long[][] durationMatrix, long[][] timeWindows,
-                                        Set<Integer> extensionOrderIndices, RouteV3DTO dto, boolean hasExtensions) {
-        long[] orderDemands = createOrderDemands(orders.size());
-
-        if (hasExtensions) {
-            addDistanceDimension(routing, manager, dto.maxTotalDistanceWithExtensionInMeter(), distanceMatrix);
-            addMaxOrderCountDimension(routing, manager, orderDemands, dto.maxOrderCountWithExtension());
-            addNonExtensionCountDimension(routing, manager, extensionOrderIndices, dto.maxOrderCountWithNonExtension());
-            addNonExtensionDistanceDimension(routing, manager, extensionOrderIndices, dto.maxTotalDistanceWithNonExtensionInMeter(), distanceMatrix);
-        } else {
-            addDistanceDimension(routing, manager, dto.maxTotalDistanceWithNonExtensionInMeter(), distanceMatrix);
-            addMaxOrderCountDimension(routing, manager, orderDemands, dto.maxOrderCountWithNonExtension());
-        }
-
-        addTimeWindowDimension(routing, manager, durationMatrix, timeWindows, dto);
-    }
-
-    private static void addTimeWindowDimension(RoutingModel routing, RoutingIndexManager manager,
-                                               long[][] durationMatrix, long[][] timeWindows, RouteV3DTO dto) {
-        int callback = routing.registerTransitCallback((fromIndex, toIndex) -> {
-            int fromNode = manager.indexToNode(fromIndex);
-            int toNode = manager.indexToNode(toIndex);
-            return durationMatrix[fromNode][toNode];
         });
-        routing.addDimension(callback, 0, MAX_ROUTE_TIME, false, "Time");
-
-        RoutingDimension timeDimension = routing.getMutableDimension("Time");
-        for (int i = ORDER_START_INDEX; i < durationMatrix.length; i++) {
-            long index = manager.nodeToIndex(i);
-            timeDimension.cumulVar(index).setRange(timeWindows[i][0], timeWindows[i][1]);
-        }
-
-        // Minimize time span to prioritize orders with tighter deadlines first
-        timeDimension.setGlobalSpanCostCoefficient(GLOBAL_SPAN_COST_COEFFICIENT);
+        return durationMatrix;
     }
 }
@@ -0,0 +1,422 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.dto.route.v1.RouteResultDTO;
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.error.SegariRoutingErrors;
+import id.segari.ortools.exception.BaseException;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.solver.SolverExecutor;
+import id.segari.ortools.util.DistanceMatrix;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.SP_INDEX;
+
+/**
+ * Solves large SP-start VRPs as several small ones: orders are swept by bearing around the SP into clusters of about
+ * {@code solver.decomposition.vehicles-per-cluster} vehicles worth of orders, every cluster is solved as its own
+ * {@link SegariRoute} concurrently on the solver pool, and a repair pass then moves orders across the border of each
+ * pair of neighbouring clusters, inserting orders a cluster dropped into its neighbour's routes and relocating orders
+ * whenever that shortens the total distance.
+ * <p>
+ * Each cluster fetches only its own matrix, and the repair pass one matrix per pair of neighbours, instead of the
+ * full matrix over every order. The price is that a vehicle never serves orders from clusters further apart than
+ * neighbours. Only requests of at least {@code solver.decomposition.min-orders} orders that
+ * {@link SegariRoute#isDecomposable()} are split.
+ */
+@Component
+public class VrpDecomposer {
+
+    /**
+     * The per-vehicle limits a repaired route must still satisfy; {@link Integer#MAX_VALUE} when there is no limit.
+     */
+    record Limits(int maxTotalDistance, int maxOrderCount, int maxInstanOrderCount, int maxTurboOrderCount) {
+    }
+
+    private static final int MAX_REPAIR_PASSES = 3;
+
+    private final boolean enabled;
+    private final int minOrders;
+    private final int vehiclesPerCluster;
+    private final Counter decomposedCounter;
+    private final DistributionSummary clusterSummary;
+    private final Counter repairMoveCounter;
+
+    public VrpDecomposer(@Value("${solver.decomposition.enabled:false}") boolean enabled,
+                         @Value("${solver.decomposition.min-orders:200}") int minOrders,
+                         @Value("${solver.decomposition.vehicles-per-cluster:3}") int vehiclesPerCluster,
+                         MeterRegistry meterRegistry) {
+        if (vehiclesPerCluster <= 0) {
+            throw new IllegalArgumentException("solver.decomposition.vehicles-per-cluster must be positive, got " + vehiclesPerCluster);
+        }
+        this.enabled = enabled;
+        this.minOrders = minOrders;
+        this.vehiclesPerCluster = vehiclesPerCluster;
+        this.decomposedCounter = Counter.builder("solver.decomposition.solves").register(meterRegistry);
+        this.clusterSummary = DistributionSummary.builder("solver.decomposition.clusters").register(meterRegistry);
+        this.repairMoveCounter = Counter.builder("solver.decomposition.repair.moves").register(meterRegistry);
+    }
+
+    public boolean applies(SegariRoute segariRoute) {
+        if (!enabled || !segariRoute.isDecomposable()) return false;
+        int orderCount = segariRoute.getOrders().size() - ORDER_START_INDEX;
+        return orderCount >= minOrders && orderCount > clusterSize(segariRoute.getLimits());
+    }
+
+    public RouteResultDTO route(SegariRoute segariRoute, SolverExecutor solverExecutor, TransitRegistrar transitRegistrar,
+                                ArcRestriction arcRestriction, RoutingSearch routingSearch, Deadline deadline) {
+        List<SegariRouteOrderDTO> orders = segariRoute.getOrders();
+        Limits limits = segariRoute.getLimits();
+        List<List<SegariRouteOrderDTO>> sweptClusters = clusters(orders, clusterSize(limits));
+        List<SegariRoute> subRoutes = sweptClusters.stream()
+                .map(cluster -> segariRoute.forOrders(withDepot(orders, cluster)))
+                .toList();
+        decomposedCounter.increment();
+        clusterSummary.record(subRoutes.size());
+
+        List<List<ArrayList<Long>>> solved = solveConcurrently(subRoutes, solverExecutor, transitRegistrar, arcRestriction,
+                routingSearch, deadline);
+        boolean approximateMatrix = subRoutes.stream().anyMatch(SegariRoute::isApproximateMatrix);
+        SearchStatus searchStatus = combine(subRoutes.stream().map(SegariRoute::getSearchStatus).toList());
+
+        List<Cluster> clusters = new ArrayList<>();
+        for (int i = 0; i < sweptClusters.size(); i++) {
+            clusters.add(new Cluster(sweptClusters.get(i), solved.get(i)));
+        }
+        Map<Long, SegariRouteOrderDTO> ordersById = new HashMap<>();
+        for (int i = ORDER_START_INDEX; i < orders.size(); i++) ordersById.put(orders.get(i).id(), orders.get(i));
+
+        // Two clusters share a single border; more sit on a circle around the SP
+        int pairs = clusters.size() == 2 ? 1 : clusters.size();
+        for (int i = 0; i < pairs; i++) {
+            if (deadline.isBounded() && deadline.remaining().isZero()) break;
+            approximateMatrix |= repairBorder(segariRoute, clusters.get(i), clusters.get((i + 1) % clusters.size()),
+                    ordersById, limits, deadline);
+        }
+
+        List<ArrayList<Long>> result = new ArrayList<>();
+        for (Cluster cluster : clusters) {
+            for (List<Long> route : cluster.routes) {
+                if (route.size() > 1) result.add(new ArrayList<>(route));
+            }
+        }
+        return new RouteResultDTO(result, approximateMatrix, searchStatus, List.of());
+    }
+
+    private int clusterSize(Limits limits) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) limits.maxOrderCount() * vehiclesPerCluster);
+    }
+
+    /**
+     * Sweeps the orders by bearing from the SP, starting after the widest gap between two bearings so no cluster
+     * straddles it, and cuts them into as few clusters of at most {@code clusterSize} orders as possible, as evenly
+     * sized as possible.
+     */
+    static List<List<SegariRouteOrderDTO>> clusters(List<SegariRouteOrderDTO> orders, int clusterSize) {
+        SegariRouteOrderDTO sp = orders.get(SP_INDEX);
+        double longitudeScale = Math.cos(Math.toRadians(sp.latitude()));
+        List<SegariRouteOrderDTO> swept = orders.subList(ORDER_START_INDEX, orders.size()).stream()
+                .sorted(Comparator.comparingDouble(order -> bearing(sp, order, longitudeScale)))
+                .toList();
+        int orderCount = swept.size();
+        double[] bearings = swept.stream().mapToDouble(order -> bearing(sp, order, longitudeScale)).toArray();
+
+        int start = 0;
+        double widestGap = -1;
+        for (int i = 0; i < orderCount; i++) {
+            double gap = i == 0 ? bearings[0] + 2 * Math.PI - bearings[orderCount - 1] : bearings[i] - bearings[i - 1];
+            if (gap > widestGap) {
+                widestGap = gap;
+                start = i;
+            }
+        }
+
+        int clusterCount = Math.ceilDiv(orderCount, clusterSize);
+        List<List<SegariRouteOrderDTO>> clusters = new ArrayList<>(clusterCount);
+        for (int c = 0; c < clusterCount; c++) {
+            List<SegariRouteOrderDTO> cluster = new ArrayList<>();
+            for (int k = c * orderCount / clusterCount; k < (c + 1) * orderCount / clusterCount; k++) {
+                cluster.add(swept.get((start + k) % orderCount));
+            }
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    /**
+     * The least finished status among the clusters: no solution only when no cluster found one.
+     */
+    static SearchStatus combine(List<SearchStatus> statuses) {
+        if (statuses.stream().allMatch(status -> status == null || status == SearchStatus.NO_SOLUTION)) {
+            return SearchStatus.NO_SOLUTION;
+        }
+        for (SearchStatus status : List.of(SearchStatus.DEADLINE, SearchStatus.TIME_LIMIT, SearchStatus.PLATEAU)) {
+            if (statuses.contains(status)) return status;
+        }
+        return SearchStatus.CONVERGED;
+    }
+
+    private static List<SegariRouteOrderDTO> withDepot(List<SegariRouteOrderDTO> orders, List<SegariRouteOrderDTO> cluster) {
+        List<SegariRouteOrderDTO> clusterOrders = new ArrayList<>(orders.subList(0, ORDER_START_INDEX));
+        clusterOrders.addAll(cluster);
+        return clusterOrders;
+    }
+
+    private static List<List<ArrayList<Long>>> solveConcurrently(List<SegariRoute> subRoutes, SolverExecutor solverExecutor,
+                                                                 TransitRegistrar transitRegistrar, ArcRestriction arcRestriction,
+                                                                 RoutingSearch routingSearch, Deadline deadline) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<ArrayList<Long>>>> futures = subRoutes.stream()
+                    .map(subRoute -> executor.submit(() -> subRoute.route(solverExecutor, transitRegistrar, arcRestriction, routingSearch, deadline)))
+                    .toList();
+            List<List<ArrayList<Long>>> results = new ArrayList<>();
+            try {
+                for (Future<List<ArrayList<Long>>> future : futures) results.add(await(future));
+            } catch (RuntimeException e) {
+                executor.shutdownNow();
+                throw e;
+            }
+            return results;
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SegariRoutingErrors.solverInterrupted();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BaseException baseException) throw baseException;
+            throw BaseException.builder()
+                    .message(e.getCause().getMessage())
+                    .httpStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .build();
+        }
+    }
+
+    /**
+     * Repairs the border between two clusters on a matrix over the orders of both.
+     *
+     * @return whether that matrix was partly estimated
+     */
+    private boolean repairBorder(SegariRoute segariRoute, Cluster first, Cluster second, Map<Long, SegariRouteOrderDTO> ordersById,
+                                 Limits limits, Deadline deadline) {
+        List<Long> ids = new ArrayList<>(first.orderIds());
+        ids.addAll(second.orderIds());
+        List<SegariRouteOrderDTO> orders = new ArrayList<>(segariRoute.getOrders().subList(0, ORDER_START_INDEX));
+        ids.forEach(id -> orders.add(ordersById.get(id)));
+        Map<Long, Integer> nodes = new HashMap<>();
+        for (int node = ORDER_START_INDEX; node < orders.size(); node++) nodes.put(orders.get(node).id(), node);
+
+        SegariRoute border = segariRoute.forOrders(orders);
+        DistanceMatrix distances = border.fetchDistanceMatrix(deadline);
+        boolean[] instan = new boolean[orders.size()];
+        boolean[] turbo = new boolean[orders.size()];
+        for (int node = ORDER_START_INDEX; node < orders.size(); node++) {
+            instan[node] = Boolean.TRUE.equals(orders.get(node).isInstan());
+            turbo[node] = Boolean.TRUE.equals(orders.get(node).isTurbo());
+        }
+
+        List<List<Integer>> routes = new ArrayList<>();
+        first.routes.forEach(route -> routes.add(new ArrayList<>(route.stream().map(nodes::get).toList())));
+        second.routes.forEach(route -> routes.add(new ArrayList<>(route.stream().map(nodes::get).toList())));
+        List<Integer> unrouted = new ArrayList<>();
+        first.unrouted.forEach(id -> unrouted.add(nodes.get(id)));
+        second.unrouted.forEach(id -> unrouted.add(nodes.get(id)));
+
+        int moves = new BoundaryRepair(distances, instan, turbo, limits).run(routes, unrouted);
+        repairMoveCounter.increment(moves);
+
+        Set<Long> stillUnrouted = unrouted.stream().map(node -> orders.get(node).id()).collect(Collectors.toSet());
+        first.update(routes.subList(0, first.routes.size()), orders, stillUnrouted);
+        second.update(routes.subList(first.routes.size(), routes.size()), orders, stillUnrouted);
+        return border.isApproximateMatrix();
+    }
+
+    private static double bearing(SegariRouteOrderDTO sp, SegariRouteOrderDTO order, double longitudeScale) {
+        return Math.atan2(order.latitude() - sp.latitude(), (order.longitude() - sp.longitude()) * longitudeScale);
+    }
+
+    /**
+     * The routes of one cluster and the orders it left out, by order id. Orders move between clusters with the
+     * routes they are relocated into.
+     */
+    private static final class Cluster {
+
+        private final List<List<Long>> routes = new ArrayList<>();
+        private final List<Long> unrouted = new ArrayList<>();
+
+        Cluster(List<SegariRouteOrderDTO> orders, List<ArrayList<Long>> routes) {
+            this.routes.addAll(routes);
+            Set<Long> routed = new HashSet<>();
+            routes.forEach(routed::addAll);
+            orders.stream().map(SegariRouteOrderDTO::id).filter(id -> !routed.contains(id)).forEach(unrouted::add);
+        }
+
+        List<Long> orderIds() {
+            List<Long> ids = new ArrayList<>();
+            routes.forEach(ids::addAll);
+            ids.addAll(unrouted);
+            return ids;
+        }
+
+        void update(List<List<Integer>> routes, List<SegariRouteOrderDTO> orders, Set<Long> stillUnrouted) {
+            this.routes.clear();
+            routes.forEach(route -> this.routes.add(route.stream().map(node -> orders.get(node).id()).toList()));
+            this.unrouted.removeIf(id -> !stillUnrouted.contains(id));
+        }
+    }
+
+    /**
+     * Local search over the routes of two neighbouring clusters: inserts left out orders at their cheapest feasible
+     * position while that costs less than dropping them, and relocates single orders to another route while that
+     * shortens the total distance. Routes start at the SP and end anywhere; a route never shrinks to a single order,
+     * since such routes are not returned.
+     */
+    static final class BoundaryRepair {
+
+        private final DistanceMatrix distances;
+        private final boolean[] instan;
+        private final boolean[] turbo;
+        private final Limits limits;
+
+        BoundaryRepair(DistanceMatrix distances, boolean[] instan, boolean[] turbo, Limits limits) {
+            this.distances = distances;
+            this.instan = instan;
+            this.turbo = turbo;
+            this.limits = limits;
+        }
+
+        /**
+         * Improves {@code routes} (node indices, without SP and dummy) in place and removes the orders it inserts
+         * from {@code unrouted}.
+         *
+         * @return the number of moves made
+         */
+        int run(List<List<Integer>> routes, List<Integer> unrouted) {
+            int moves = 0;
+            for (int pass = 0; pass < MAX_REPAIR_PASSES; pass++) {
+                int passMoves = insertUnrouted(routes, unrouted) + relocate(routes);
+                if (passMoves == 0) break;
+                moves += passMoves;
+            }
+            return moves;
+        }
+
+        private int insertUnrouted(List<List<Integer>> routes, List<Integer> unrouted) {
+            int moves = 0;
+            for (Integer node : new ArrayList<>(unrouted)) {
+                int bestRoute = -1;
+                int bestPosition = -1;
+                long bestDelta = SegariRoute.PENALTY;
+                for (int r = 0; r < routes.size(); r++) {
+                    List<Integer> route = routes.get(r);
+                    if (!canTake(route, node)) continue;
+                    long distance = distance(route);
+                    for (int position = 0; position <= route.size(); position++) {
+                        long delta = insertionDelta(route, position, node);
+                        if (delta < bestDelta && distance + delta <= limits.maxTotalDistance()) {
+                            bestDelta = delta;
+                            bestRoute = r;
+                            bestPosition = position;
+                        }
+                    }
+                }
+                if (bestRoute < 0) continue;
+                routes.get(bestRoute).add(bestPosition, node);
+                unrouted.remove(node);
+                moves++;
+            }
+            return moves;
+        }
+
+        private int relocate(List<List<Integer>> routes) {
+            int moves = 0;
+            for (int from = 0; from < routes.size(); from++) {
+                List<Integer> source = routes.get(from);
+                for (int index = 0; index < source.size() && source.size() > 2; index++) {
+                    int node = source.get(index);
+                    long removalDelta = removalDelta(source, index);
+                    if (distance(source) + removalDelta > limits.maxTotalDistance()) continue;
+                    int bestRoute = -1;
+                    int bestPosition = -1;
+                    long bestDelta = 0;
+                    for (int to = 0; to < routes.size(); to++) {
+                        List<Integer> target = routes.get(to);
+                        if (to == from || !canTake(target, node)) continue;
+                        long distance = distance(target);
+                        for (int position = 0; position <= target.size(); position++) {
+                            long delta = insertionDelta(target, position, node);
+                            if (removalDelta + delta < bestDelta && distance + delta <= limits.maxTotalDistance()) {
+                                bestDelta = removalDelta + delta;
+                                bestRoute = to;
+                                bestPosition = position;
+                            }
+                        }
+                    }
+                    if (bestRoute < 0) continue;
+                    source.remove(index);
+                    routes.get(bestRoute).add(bestPosition, node);
+                    index--;
+                    moves++;
+                }
+            }
+            return moves;
+        }
+
+        private boolean canTake(List<Integer> route, int node) {
+            if (route.size() >= limits.maxOrderCount()) return false;
+            if (instan[node] && count(route, instan) >= limits.maxInstanOrderCount()) return false;
+            return !turbo[node] || count(route, turbo) < limits.maxTurboOrderCount();
+        }
+
+        private long distance(List<Integer> route) {
+            long distance = 0;
+            int previous = SP_INDEX;
+            for (int node : route) {
+                distance += distances.get(previous, node);
+                previous = node;
+            }
+            return distance;
+        }
+
+        private long insertionDelta(List<Integer> route, int position, int node) {
+            int previous = position == 0 ? SP_INDEX : route.get(position - 1);
+            if (position == route.size()) return distances.get(previous, node);
+            int next = route.get(position);
+            return (long) distances.get(previous, node) + distances.get(node, next) - distances.get(previous, next);
+        }
+
+        private long removalDelta(List<Integer> route, int index) {
+            int previous = index == 0 ? SP_INDEX : route.get(index - 1);
+            int node = route.get(index);
+            if (index == route.size() - 1) return -distances.get(previous, node);
+            int next = route.get(index + 1);
+            return (long) distances.get(previous, next) - distances.get(previous, node) - distances.get(node, next);
+        }
+
+        private static int count(List<Integer> route, boolean[] flags) {
+            return (int) route.stream().filter(node -> flags[node]).count();
+        }
+    }
+}
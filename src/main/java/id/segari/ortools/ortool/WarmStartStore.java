@@ -0,0 +1,152 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.external.LatLong;
+import id.segari.ortools.external.OSRMMatrixCache;
+import id.segari.ortools.util.BoundedTtlCache;
+import id.segari.ortools.util.DistanceMatrix;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.DUMMY_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+import static id.segari.ortools.ortool.BaseTspWithSpStartAndArbitraryFinish.SP_INDEX;
+
+/**
+ * Keeps the last {@code solutions-per-sp} solved TSP routes per SP location, so a request for an SP that was solved
+ * moments ago with almost the same orders can start from that route instead of from scratch.
+ * <p>
+ * The initial route is derived from the previous solution whose order set is most similar (Jaccard) to the request:
+ * orders of that route still present keep their order, and orders the previous request did not contain are inserted
+ * at their cheapest position as long as the order count and total distance limits allow. Orders the previous request
+ * contained but dropped stay out; the search can still add them.
+ * Concurrent solves for the same SP may overwrite each other's entry, which only costs a warmer start.
+ */
+@Component
+public class WarmStartStore {
+
+    record Solution(Set<Long> requestOrderIds, List<Long> route) {
+    }
+
+    private final boolean enabled;
+    private final int solutionsPerSp;
+    private final BoundedTtlCache<Long, List<Solution>> solutions;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public WarmStartStore(@Value("${solver.warm-start.enabled:true}") boolean enabled,
+                          @Value("${solver.warm-start.max-sps:10000}") int maxSps,
+                          @Value("${solver.warm-start.solutions-per-sp:4}") int solutionsPerSp,
+                          @Value("${solver.warm-start.ttl:30m}") Duration ttl,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.solutionsPerSp = Math.max(1, solutionsPerSp);
+        this.solutions = new BoundedTtlCache<>(maxSps, ttl);
+        this.hitCounter = Counter.builder("solver.warm.start.lookups").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("solver.warm.start.lookups").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("solver.warm.start.sps", solutions, BoundedTtlCache::size).register(meterRegistry);
+    }
+
+    /**
+     * @param distanceMatrix the preprocessed distance matrix of the request
+     * @return the initial route as order node indices (without SP and dummy), or null when there is nothing to start from
+     */
+    public int[] initialRoute(List<RouteOrderV2DTO> orders, DistanceMatrix distanceMatrix, int maxOrderCount, long maxTotalDistance) {
+        if (!enabled) return null;
+        List<Solution> previous = solutions.get(spKey(orders));
+        if (previous == null) {
+            missCounter.increment();
+            return null;
+        }
+        hitCounter.increment();
+
+        Map<Long, Integer> nodeByOrderId = new HashMap<>();
+        for (int node = ORDER_START_INDEX; node < orders.size(); node++) {
+            nodeByOrderId.put(orders.get(node).id(), node);
+        }
+        Solution closest = mostSimilar(previous, nodeByOrderId.keySet());
+
+        List<Integer> path = new ArrayList<>();
+        path.add(SP_INDEX);
+        for (Long orderId : closest.route()) {
+            Integer node = nodeByOrderId.get(orderId);
+            if (node != null && path.size() <= maxOrderCount) path.add(node);
+        }
+        path.add(DUMMY_INDEX);
+
+        long totalDistance = 0;
+        for (int position = 1; position < path.size(); position++) {
+            totalDistance += distanceMatrix.get(path.get(position - 1), path.get(position));
+        }
+        for (int node = ORDER_START_INDEX; node < orders.size() && path.size() - 2 < maxOrderCount; node++) {
+            if (closest.requestOrderIds().contains(orders.get(node).id())) continue;
+            int bestPosition = -1;
+            long bestDelta = Long.MAX_VALUE;
+            for (int position = 1; position < path.size(); position++) {
+                int before = path.get(position - 1);
+                int after = path.get(position);
+                long delta = (long) distanceMatrix.get(before, node) + distanceMatrix.get(node, after) - distanceMatrix.get(before, after);
+                if (delta < bestDelta) {
+                    bestDelta = delta;
+                    bestPosition = position;
+                }
+            }
+            if (totalDistance + bestDelta > maxTotalDistance) continue;
+            path.add(bestPosition, node);
+            totalDistance += bestDelta;
+        }
+
+        if (path.size() == 2) return null;
+        return path.subList(1, path.size() - 1).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public void remember(List<RouteOrderV2DTO> orders, List<Long> route) {
+        if (!enabled || route.isEmpty()) return;
+        Set<Long> requestOrderIds = new HashSet<>();
+        for (int node = ORDER_START_INDEX; node < orders.size(); node++) {
+            requestOrderIds.add(orders.get(node).id());
+        }
+
+        long key = spKey(orders);
+        List<Solution> previous = solutions.get(key);
+        List<Solution> updated = new ArrayList<>(previous == null ? List.of() : previous);
+        updated.add(new Solution(Set.copyOf(requestOrderIds), List.copyOf(route)));
+        if (updated.size() > solutionsPerSp) updated = updated.subList(updated.size() - solutionsPerSp, updated.size());
+        solutions.put(key, List.copyOf(updated));
+    }
+
+    private static Solution mostSimilar(List<Solution> previous, Set<Long> orderIds) {
+        Solution closest = null;
+        double closestSimilarity = -1;
+        // Later entries are more recent and win ties
+        for (Solution solution : previous) {
+            int shared = 0;
+            for (Long orderId : solution.requestOrderIds()) {
+                if (orderIds.contains(orderId)) shared++;
+            }
+            int union = solution.requestOrderIds().size() + orderIds.size() - shared;
+            double similarity = union == 0 ? 0 : (double) shared / union;
+            if (similarity >= closestSimilarity) {
+                closest = solution;
+                closestSimilarity = similarity;
+            }
+        }
+        return closest;
+    }
+
+    private static long spKey(List<RouteOrderV2DTO> orders) {
+        RouteOrderV2DTO sp = orders.get(SP_INDEX);
+        return OSRMMatrixCache.quantize(new LatLong(sp.latitude(), sp.longitude()));
+    }
+}
@@ -5,6 +5,7 @@ import id.segari.ortools.dto.route.v1.RouteResultDTO;
 import id.segari.ortools.dto.route.v2.RouteV2DTO;
 import id.segari.ortools.dto.route.v2.TspResultDTO;
 import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.solver.Deadline;
 import id.segari.ortools.validation.group.TspFixStartArbitraryFinish;
 import id.segari.ortools.validation.group.VrpArbitraryStartArbitraryFinish;
 import id.segari.ortools.validation.group.VrpSpStartArbitraryFinish;
@@ -15,12 +16,12 @@ import org.springframework.validation.annotation.Validated;
 @Validated
 public interface RouteService {
     @Validated(VrpSpStartArbitraryFinish.class)
-    RouteResultDTO vrpWithSpStartAndArbitraryFinish(@Valid RouteDTO dto);
+    RouteResultDTO vrpWithSpStartAndArbitraryFinish(@Valid RouteDTO dto, Deadline deadline);
     @Validated(VrpArbitraryStartArbitraryFinish.class)
-    RouteResultDTO vrpWithArbitraryStartAndArbitraryFinish(@Valid RouteDTO dto);
+    RouteResultDTO vrpWithArbitraryStartAndArbitraryFinish(@Valid RouteDTO dto, Deadline deadline);
     @Validated(TspFixStartArbitraryFinish.class)
-    RouteResultDTO tspWithFixStartAndArbitraryFinish(@Valid RouteDTO dto, @NotNull Integer index);
-    RouteResultDTO tspWithSpStartAndArbitraryFinish(@Valid RouteDTO dto);
-    TspResultDTO tspWithSpStartAndArbitraryFinishV2(@Valid RouteV2DTO dto);
-    TspResultDTO tspWithSpStartAndArbitraryFinishV3(@Valid RouteV3DTO dto);
+    RouteResultDTO tspWithFixStartAndArbitraryFinish(@Valid RouteDTO dto, @NotNull Integer index, Deadline deadline);
+    RouteResultDTO tspWithSpStartAndArbitraryFinish(@Valid RouteDTO dto, Deadline deadline);
+    TspResultDTO tspWithSpStartAndArbitraryFinishV2(@Valid RouteV2DTO dto, Deadline deadline);
+    TspResultDTO tspWithSpStartAndArbitraryFinishV3(@Valid RouteV3DTO dto, Deadline deadline);
 }
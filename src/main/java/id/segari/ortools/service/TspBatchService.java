@@ -0,0 +1,23 @@
+package id.segari.ortools.service;
+
+import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.dto.route.v3.TspBatchResultDTO;
+import id.segari.ortools.solver.Deadline;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface TspBatchService {
+    /**
+     * Rejects a batch that cannot be solved at all, so callers can fail it before streaming any outcome.
+     */
+    void validate(List<RouteV3DTO> problems);
+
+    /**
+     * Solves every problem like the V3 TSP endpoint and hands each outcome to {@code onResult} as soon as it is
+     * known, in completion order, from the calling thread. A failed problem yields an error outcome instead of
+     * failing the batch. If {@code onResult} throws, the problems still pending are abandoned and the exception is
+     * rethrown.
+     */
+    void tspWithSpStartAndArbitraryFinishV3(List<RouteV3DTO> problems, Deadline deadline, Consumer<TspBatchResultDTO> onResult);
+}
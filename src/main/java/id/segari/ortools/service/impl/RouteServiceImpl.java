@@ -1,34 +1,77 @@
 package id.segari.ortools.service.impl;
 
+import id.segari.ortools.dto.route.SearchStatus;
 import id.segari.ortools.dto.route.v1.RouteDTO;
 import id.segari.ortools.dto.route.v1.RouteResultDTO;
+import id.segari.ortools.dto.route.v1.SegariRouteDTO;
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
 import id.segari.ortools.dto.route.v2.RouteV2DTO;
 import id.segari.ortools.dto.route.v2.TspResultDTO;
 import id.segari.ortools.dto.route.v3.RouteV3DTO;
 import id.segari.ortools.error.SegariRoutingErrors;
 import id.segari.ortools.external.OSRMRestService;
+import id.segari.ortools.ortool.ArcRestriction;
+import id.segari.ortools.ortool.Presolver;
+import id.segari.ortools.ortool.ReachabilityPruner;
+import id.segari.ortools.ortool.RoutingSearch;
 import id.segari.ortools.ortool.SegariRoute;
+import id.segari.ortools.ortool.TransitRegistrar;
+import id.segari.ortools.ortool.TspEngines;
+import id.segari.ortools.ortool.TspResultCache;
 import id.segari.ortools.ortool.TspWithSpStartAndArbitraryFinish;
 import id.segari.ortools.ortool.TspWithSpStartAndArbitraryFinishV2;
+import id.segari.ortools.ortool.VrpDecomposer;
+import id.segari.ortools.ortool.WarmStartStore;
 import id.segari.ortools.service.RouteService;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.solver.SolverExecutor;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 @Service
 @Primary
 public class RouteServiceImpl implements RouteService {
 
     private final OSRMRestService osrmRestService;
+    private final SolverExecutor solverExecutor;
+    private final TransitRegistrar transitRegistrar;
+    private final ArcRestriction arcRestriction;
+    private final RoutingSearch routingSearch;
+    private final WarmStartStore warmStartStore;
+    private final TspEngines tspEngines;
+    private final VrpDecomposer vrpDecomposer;
+    private final ReachabilityPruner reachabilityPruner;
+    private final Presolver presolver;
+    private final TspResultCache tspResultCache;
 
-    public RouteServiceImpl(OSRMRestService osrmRestService) {
+    public RouteServiceImpl(OSRMRestService osrmRestService, SolverExecutor solverExecutor, TransitRegistrar transitRegistrar,
+                            ArcRestriction arcRestriction, RoutingSearch routingSearch, WarmStartStore warmStartStore, TspEngines tspEngines,
+                            VrpDecomposer vrpDecomposer, ReachabilityPruner reachabilityPruner, Presolver presolver,
+                            TspResultCache tspResultCache) {
         this.osrmRestService = osrmRestService;
+        this.solverExecutor = solverExecutor;
+        this.transitRegistrar = transitRegistrar;
+        this.arcRestriction = arcRestriction;
+        this.routingSearch = routingSearch;
+        this.warmStartStore = warmStartStore;
+        this.tspEngines = tspEngines;
+        this.vrpDecomposer = vrpDecomposer;
+        this.reachabilityPruner = reachabilityPruner;
+        this.presolver = presolver;
+        this.tspResultCache = tspResultCache;
     }
 
     @Override
-    public RouteResultDTO vrpWithSpStartAndArbitraryFinish(RouteDTO dto) {
-        SegariRoute segariRoute = SegariRoute.newVrpStartFromSpAndArbitraryFinish(dto.route(), osrmRestService)
+    public RouteResultDTO vrpWithSpStartAndArbitraryFinish(RouteDTO dto, Deadline deadline) {
+        // This endpoint has no mandatory orders
+        ReachabilityPruner.Pruned<SegariRouteOrderDTO> pruned = pruneUnreachable(dto.route(), Set.of());
+        if (pruned.prunedEveryOrder()) return allPruned(pruned);
+        SegariRoute segariRoute = SegariRoute.newVrpStartFromSpAndArbitraryFinish(withOrders(dto.route(), pruned.orders()), osrmRestService)
                 .addDistanceBetweenOrderDimension(dto.maxDistanceBetweenOrder())
                 .addDistanceWithSpDimension(dto.maxDistanceFromSp())
                 .addMaxInstanOrderCountDimension(dto.maxInstanOrderCount())
@@ -40,19 +83,18 @@ public class RouteServiceImpl implements RouteService {
             segariRoute.setResultMinimum(4);
             segariRoute.alterVehicleNumbers(dto.extensionCount());
         }
-        return new RouteResultDTO(segariRoute.route());
+        return toResult(segariRoute, deadline, pruned.prunedOrderIds());
     }
 
     @Override
-    public RouteResultDTO vrpWithArbitraryStartAndArbitraryFinish(RouteDTO dto) {
+    public RouteResultDTO vrpWithArbitraryStartAndArbitraryFinish(RouteDTO dto, Deadline deadline) {
         SegariRoute segariRoute = SegariRoute.newVrpWithArbitraryStartAndFinish(dto.route(), osrmRestService);
-        return new RouteResultDTO(segariRoute.addDistanceBetweenNodeDimension(dto.maxDistanceBetweenOrder())
-                .setResultMinimum(dto.route().maxOrderCount())
-                .route());
+        return toResult(segariRoute.addDistanceBetweenNodeDimension(dto.maxDistanceBetweenOrder())
+                .setResultMinimum(dto.route().maxOrderCount()), deadline, List.of());
     }
 
     @Override
-    public RouteResultDTO tspWithFixStartAndArbitraryFinish(RouteDTO dto, Integer index) {
+    public RouteResultDTO tspWithFixStartAndArbitraryFinish(RouteDTO dto, Integer index, Deadline deadline) {
         SegariRoute segariRoute = SegariRoute.newTspWithStartAndFinish(dto.route(), index, osrmRestService);
 
         if (Objects.nonNull(dto.maxDistanceBetweenOrder())) segariRoute.addDistanceBetweenOrderDimension(dto.maxDistanceBetweenOrder());
@@ -60,25 +102,53 @@ public class RouteServiceImpl implements RouteService {
         if (Objects.nonNull(dto.maxInstanOrderCount())) segariRoute.addMaxInstanOrderCountDimension(dto.maxInstanOrderCount());
         if (Objects.nonNull(dto.maxTurboOrderCount())) segariRoute.addMaxTurboOrderCountDimension(dto.maxTurboOrderCount());
 
-        return new RouteResultDTO(segariRoute.route());
+        return toResult(segariRoute, deadline, List.of());
     }
 
     @Override
-    public RouteResultDTO tspWithSpStartAndArbitraryFinish(RouteDTO dto) {
-        final SegariRoute segariRoute = SegariRoute.newTspWithSpStartAndArbitraryFinish(dto.route(), osrmRestService);
+    public RouteResultDTO tspWithSpStartAndArbitraryFinish(RouteDTO dto, Deadline deadline) {
+        final ReachabilityPruner.Pruned<SegariRouteOrderDTO> pruned = pruneUnreachable(dto.route(), dto.route().mandatoryOrders());
+        if (pruned.prunedEveryOrder()) return allPruned(pruned);
+        final SegariRoute segariRoute = SegariRoute.newTspWithSpStartAndArbitraryFinish(withOrders(dto.route(), pruned.orders()), osrmRestService);
         segariRoute.addDistanceBetweenOrderDimension(dto.maxDistanceBetweenOrder());
         segariRoute.addDistanceWithSpDimension(Integer.MAX_VALUE);
 
-        return new RouteResultDTO(segariRoute.route());
+        return toResult(segariRoute, deadline, pruned.prunedOrderIds());
     }
 
     @Override
-    public TspResultDTO tspWithSpStartAndArbitraryFinishV2(RouteV2DTO dto) {
-        return TspWithSpStartAndArbitraryFinish.run(dto, osrmRestService);
+    public TspResultDTO tspWithSpStartAndArbitraryFinishV2(RouteV2DTO dto, Deadline deadline) {
+        return tspResultCache.solve(dto, deadline, () -> TspWithSpStartAndArbitraryFinish.run(dto, osrmRestService, solverExecutor, tspEngines,
+                warmStartStore, reachabilityPruner, presolver, deadline));
     }
 
     @Override
-    public TspResultDTO tspWithSpStartAndArbitraryFinishV3(RouteV3DTO dto) {
-        return TspWithSpStartAndArbitraryFinishV2.run(dto, osrmRestService);
+    public TspResultDTO tspWithSpStartAndArbitraryFinishV3(RouteV3DTO dto, Deadline deadline) {
+        return tspResultCache.solve(dto, deadline, () -> TspWithSpStartAndArbitraryFinishV2.run(dto, osrmRestService, solverExecutor, tspEngines,
+                warmStartStore, reachabilityPruner, presolver, deadline));
+    }
+
+    private RouteResultDTO toResult(SegariRoute segariRoute, Deadline deadline, List<Long> prunedOrderIds) {
+        if (vrpDecomposer.applies(segariRoute)) {
+            RouteResultDTO decomposed = vrpDecomposer.route(segariRoute, solverExecutor, transitRegistrar, arcRestriction, routingSearch, deadline);
+            return new RouteResultDTO(decomposed.result(), decomposed.approximateMatrix(), decomposed.searchStatus(), prunedOrderIds);
+        }
+        List<ArrayList<Long>> result = segariRoute.route(solverExecutor, transitRegistrar, arcRestriction, routingSearch, deadline);
+        return new RouteResultDTO(result, segariRoute.isApproximateMatrix(), segariRoute.getSearchStatus(), prunedOrderIds);
+    }
+
+    private ReachabilityPruner.Pruned<SegariRouteOrderDTO> pruneUnreachable(SegariRouteDTO route, Set<Long> mandatoryOrderIds) {
+        return reachabilityPruner.prune(route.orders(), SegariRouteOrderDTO::id, SegariRouteOrderDTO::latitude,
+                SegariRouteOrderDTO::longitude, route.maxTotalDistanceInMeter(), mandatoryOrderIds);
+    }
+
+    private static RouteResultDTO allPruned(ReachabilityPruner.Pruned<SegariRouteOrderDTO> pruned) {
+        return new RouteResultDTO(List.of(), false, SearchStatus.CONVERGED, pruned.prunedOrderIds());
+    }
+
+    private static SegariRouteDTO withOrders(SegariRouteDTO route, List<SegariRouteOrderDTO> orders) {
+        if (orders == route.orders()) return route;
+        return new SegariRouteDTO(orders, route.maxTotalDistanceInMeter(), route.maxTotalDistanceWithExtensionInMeter(),
+                route.maxOrderCount(), route.mandatoryOrders(), route.useTimeWindow(), route.dynamicNonExtensionMaxOrderCount());
     }
 }
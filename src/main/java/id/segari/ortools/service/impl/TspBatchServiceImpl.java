@@ -0,0 +1,113 @@
+package id.segari.ortools.service.impl;
+
+import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.dto.route.v3.TspBatchResultDTO;
+import id.segari.ortools.error.SegariRoutingErrors;
+import id.segari.ortools.exception.BaseException;
+import id.segari.ortools.service.RouteService;
+import id.segari.ortools.service.TspBatchService;
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Solves a dispatch wave of SP TSPs in one call. The problems are solved on virtual threads, at most
+ * {@code solver.batch.concurrency} at a time so a batch cannot fill the solver queue on its own, and every outcome is
+ * reported as soon as its problem completes. Each problem fetches only its own matrix; problems sharing coordinates,
+ * such as orders offered to several nearby SPs, meet in the OSRM client's in-flight coalescing and pairwise matrix
+ * cache rather than in a combined fetch.
+ */
+@Service
+public class TspBatchServiceImpl implements TspBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(TspBatchServiceImpl.class);
+
+    private final RouteService routeService;
+    private final int maxProblems;
+    private final int concurrency;
+    private final Counter solvedCounter;
+    private final Counter failedCounter;
+
+    public TspBatchServiceImpl(RouteService routeService,
+                               @Value("${solver.batch.max-problems:1000}") int maxProblems,
+                               @Value("${solver.batch.concurrency:4}") int concurrency,
+                               MeterRegistry meterRegistry) {
+        if (concurrency <= 0) throw new IllegalArgumentException("solver.batch.concurrency must be positive, got " + concurrency);
+        this.routeService = routeService;
+        this.maxProblems = maxProblems;
+        this.concurrency = concurrency;
+        this.solvedCounter = Counter.builder("solver.batch.problems").tag("result", "solved").register(meterRegistry);
+        this.failedCounter = Counter.builder("solver.batch.problems").tag("result", "failed").register(meterRegistry);
+    }
+
+    @Override
+    public void validate(List<RouteV3DTO> problems) {
+        if (problems == null || problems.isEmpty()) throw SegariRoutingErrors.invalidRoutingParameter("problems");
+        if (problems.size() > maxProblems) throw SegariRoutingErrors.invalidRoutingParameter("problems exceeds " + maxProblems);
+    }
+
+    @Override
+    public void tspWithSpStartAndArbitraryFinishV3(List<RouteV3DTO> problems, Deadline deadline, Consumer<TspBatchResultDTO> onResult) {
+        validate(problems);
+
+        Semaphore permits = new Semaphore(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<TspBatchResultDTO> completed = new ExecutorCompletionService<>(executor);
+            for (int index = 0; index < problems.size(); index++) {
+                int problem = index;
+                completed.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return solve(problem, problems.get(problem), deadline);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            try {
+                for (int i = 0; i < problems.size(); i++) {
+                    onResult.accept(completed.take().get());
+                }
+            } catch (RuntimeException e) {
+                // Nobody is left to report to, typically a disconnected client: stop waiting problems from taking a
+                // permit and interrupt the running ones instead of letting close() wait for the whole batch
+                executor.shutdownNow();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SegariRoutingErrors.solverInterrupted();
+        } catch (ExecutionException e) {
+            // solve() reports failures as outcomes, so only an interrupted wait for a permit ends up here
+            throw SegariRoutingErrors.solverInterrupted();
+        }
+    }
+
+    private TspBatchResultDTO solve(int index, RouteV3DTO problem, Deadline deadline) {
+        try {
+            TspBatchResultDTO result = new TspBatchResultDTO(index, routeService.tspWithSpStartAndArbitraryFinishV3(problem, deadline), null, null);
+            solvedCounter.increment();
+            return result;
+        } catch (BaseException e) {
+            failedCounter.increment();
+            return new TspBatchResultDTO(index, null, e.getErrorCode(), e.getMessage());
+        } catch (RuntimeException e) {
+            failedCounter.increment();
+            log.warn("Batch problem {} failed", index, e);
+            return new TspBatchResultDTO(index, null, "INTERNAL_ERROR", e.getMessage());
+        }
+    }
+}
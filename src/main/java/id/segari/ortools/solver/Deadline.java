@@ -0,0 +1,41 @@
+package id.segari.ortools.solver;
+
+import java.time.Duration;
+
+/**
+ * Point in time by which a caller needs its answer, fixed when the request arrives.
+ * Every stage (OSRM fetch, queueing, model build, search) spends from the same deadline, so time lost in one stage
+ * is automatically taken from the later ones. {@link #none()} never expires.
+ */
+public final class Deadline {
+
+    private static final Deadline NONE = new Deadline(false, 0);
+
+    private final boolean bounded;
+    private final long expiresAtNanos;
+
+    private Deadline(boolean bounded, long expiresAtNanos) {
+        this.bounded = bounded;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(true, System.nanoTime() + budget.toNanos());
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @return the time left, never negative; effectively unlimited for {@link #none()}
+     */
+    public Duration remaining() {
+        if (!bounded) return Duration.ofNanos(Long.MAX_VALUE);
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+}
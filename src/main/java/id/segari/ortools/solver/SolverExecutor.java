@@ -0,0 +1,198 @@
+package id.segari.ortools.solver;
+
+import id.segari.ortools.error.SegariRoutingErrors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs OR-tools solves on a fixed pool of platform threads with a bounded queue.
+ * Solves spend most of their time inside JNI, which would pin the carrier of a virtual thread, so request
+ * threads only fetch matrices and then hand the model building and search over to this pool.
+ * <p>
+ * Admission is checked before anything is queued: a full queue is rejected with 429 and a memory estimate
+ * (base + N² × bytes-per-cell, reserved until the solve finishes) that does not fit the budget with 503,
+ * both carrying a Retry-After derived from the current backlog and the mean solve time. A solve whose caller's
+ * deadline passes while it is still queued is taken off the queue and failed instead of being started late.
+ */
+@Component
+public class SolverExecutor {
+
+    private static final long MAX_RETRY_AFTER_SECONDS = 300;
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final long memoryBudgetBytes;
+    private final long baseBytes;
+    private final long bytesPerCell;
+    private final Duration defaultRetryAfter;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final Timer queueWaitTimer;
+    private final Timer executionTimer;
+    private final Counter queueFullCounter;
+    private final Counter memoryExhaustedCounter;
+    private final Counter deadlineExceededCounter;
+
+    public SolverExecutor(@Value("${solver.executor.threads:0}") int threads,
+                          @Value("${solver.executor.queue-capacity:16}") int queueCapacity,
+                          @Value("${solver.executor.default-retry-after:10s}") Duration defaultRetryAfter,
+                          @Value("${solver.memory.budget:0B}") DataSize memoryBudget,
+                          @Value("${solver.memory.base:8MB}") DataSize baseMemory,
+                          @Value("${solver.memory.bytes-per-cell:64}") long bytesPerCell,
+                          MeterRegistry meterRegistry) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        // Without an explicit budget half of the heap may be committed to admitted solves
+        this.memoryBudgetBytes = memoryBudget.toBytes() > 0 ? memoryBudget.toBytes() : Runtime.getRuntime().maxMemory() / 2;
+        this.baseBytes = baseMemory.toBytes();
+        this.bytesPerCell = bytesPerCell;
+        this.defaultRetryAfter = defaultRetryAfter;
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), solverThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+
+        this.queueWaitTimer = Timer.builder("solver.queue.wait")
+                .description("Time a solve waited for a solver thread")
+                .register(meterRegistry);
+        this.executionTimer = Timer.builder("solver.execution")
+                .description("Time spent building and solving a routing model")
+                .register(meterRegistry);
+        this.queueFullCounter = Counter.builder("solver.rejected").tag("reason", "queue_full").register(meterRegistry);
+        this.memoryExhaustedCounter = Counter.builder("solver.rejected").tag("reason", "memory").register(meterRegistry);
+        this.deadlineExceededCounter = Counter.builder("solver.rejected").tag("reason", "deadline").register(meterRegistry);
+        Gauge.builder("solver.queue.depth", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+        Gauge.builder("solver.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        Gauge.builder("solver.threads", executor, ThreadPoolExecutor::getMaximumPoolSize).register(meterRegistry);
+        Gauge.builder("solver.memory.reserved", reservedBytes, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Fails fast with the same errors {@link #execute} would raise, without reserving anything.
+     * Lets callers skip the OSRM fetch for a request that would be turned away anyway.
+     */
+    public void ensureAdmissible(int nodeCount) {
+        ensureAdmissible(nodeCount, 1);
+    }
+
+    /**
+     * Like {@link #ensureAdmissible(int)} for a solve that builds {@code modelCopies} models of the same size.
+     */
+    public void ensureAdmissible(int nodeCount, int modelCopies) {
+        long requiredBytes = estimateBytes(nodeCount) * modelCopies;
+        if (requiredBytes > memoryBudgetBytes) throw SegariRoutingErrors.solverProblemTooLarge(nodeCount);
+        if (executor.getQueue().remainingCapacity() == 0) {
+            queueFullCounter.increment();
+            throw SegariRoutingErrors.solverSaturated(retryAfter());
+        }
+        if (reservedBytes.get() + requiredBytes > memoryBudgetBytes) {
+            memoryExhaustedCounter.increment();
+            throw SegariRoutingErrors.solverMemoryExhausted(requiredBytes, retryAfter());
+        }
+    }
+
+    /**
+     * Runs {@code task} on a solver thread and blocks the caller until it completes.
+     */
+    public <T> T execute(int nodeCount, Supplier<T> task) {
+        return execute(nodeCount, 1, Deadline.none(), task);
+    }
+
+    /**
+     * Like {@link #execute(int, Supplier)} for a solve that builds {@code modelCopies} models of the same size,
+     * e.g. a search portfolio; the memory reservation is scaled accordingly. The caller waits in the queue for at most
+     * the time left on {@code deadline}; once a solver thread picked the task up, the solve itself honours the deadline.
+     */
+    public <T> T execute(int nodeCount, int modelCopies, Deadline deadline, Supplier<T> task) {
+        long requiredBytes = estimateBytes(nodeCount) * modelCopies;
+        reserve(nodeCount, requiredBytes);
+
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    queueWaitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                    return executionTimer.record(task);
+                } finally {
+                    reservedBytes.addAndGet(-requiredBytes);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reservedBytes.addAndGet(-requiredBytes);
+            queueFullCounter.increment();
+            throw SegariRoutingErrors.solverSaturated(retryAfter());
+        }
+
+        try {
+            if (!deadline.isBounded()) return future.get();
+            try {
+                return future.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (executor.remove((Runnable) future)) {
+                    reservedBytes.addAndGet(-requiredBytes);
+                    deadlineExceededCounter.increment();
+                    throw SegariRoutingErrors.solverDeadlineExceeded(retryAfter());
+                }
+                // Already running: its search stops at the deadline, so the best solution found so far is close
+                return future.get();
+            }
+        } catch (InterruptedException e) {
+            // A solve that already started cannot be stopped inside native code; it releases its reservation when done
+            if (executor.remove((Runnable) future)) reservedBytes.addAndGet(-requiredBytes);
+            Thread.currentThread().interrupt();
+            throw SegariRoutingErrors.solverInterrupted();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            if (e.getCause() instanceof Error error) throw error;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    long estimateBytes(int nodeCount) {
+        return baseBytes + (long) nodeCount * nodeCount * bytesPerCell;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void reserve(int nodeCount, long requiredBytes) {
+        if (requiredBytes > memoryBudgetBytes) throw SegariRoutingErrors.solverProblemTooLarge(nodeCount);
+        while (true) {
+            long reserved = reservedBytes.get();
+            if (reserved + requiredBytes > memoryBudgetBytes) {
+                memoryExhaustedCounter.increment();
+                throw SegariRoutingErrors.solverMemoryExhausted(requiredBytes, retryAfter());
+            }
+            if (reservedBytes.compareAndSet(reserved, reserved + requiredBytes)) return;
+        }
+    }
+
+    private Duration retryAfter() {
+        if (executionTimer.count() == 0) return defaultRetryAfter;
+        double meanSeconds = executionTimer.mean(TimeUnit.SECONDS);
+        int backlog = executor.getQueue().size() + executor.getActiveCount();
+        long seconds = (long) Math.ceil(meanSeconds * Math.max(1, backlog) / threads);
+        return Duration.ofSeconds(Math.clamp(seconds, 1, MAX_RETRY_AFTER_SECONDS));
+    }
+
+    private static ThreadFactory solverThreadFactory() {
+        return Thread.ofPlatform().name("solver-", 0).factory();
+    }
+}
@@ -0,0 +1,101 @@
+package id.segari.ortools.util;
+
+import java.util.Arrays;
+
+/**
+ * Square matrix of meters or seconds stored row-major in one contiguous int array.
+ * Both units fit comfortably in an int, so this halves the memory of a {@code long[][]} and keeps
+ * every row adjacent for the transit callbacks. Writes saturate at the int range instead of overflowing.
+ */
+public final class DistanceMatrix {
+    private final int size;
+    private final int[] values;
+
+    public DistanceMatrix(int size) {
+        if (size < 0) throw new IllegalArgumentException("size must not be negative");
+        this.size = size;
+        this.values = new int[Math.multiplyExact(size, size)];
+    }
+
+    private DistanceMatrix(int size, int[] values) {
+        this.size = size;
+        this.values = values;
+    }
+
+    public static DistanceMatrix empty() {
+        return new DistanceMatrix(0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int from, int to) {
+        return values[from * size + to];
+    }
+
+    public void set(int from, int to, long value) {
+        values[from * size + to] = saturate(value);
+    }
+
+    public void add(int from, int to, long delta) {
+        int index = from * size + to;
+        values[index] = saturate((long) values[index] + delta);
+    }
+
+    /**
+     * Replaces the cell with {@code prohibitiveValue} when it exceeds {@code maxAllowed}.
+     */
+    public void capAt(int from, int to, long maxAllowed, long prohibitiveValue) {
+        int index = from * size + to;
+        if (values[index] > maxAllowed) values[index] = saturate(prohibitiveValue);
+    }
+
+    public void fillRow(int from, long value) {
+        int start = from * size;
+        Arrays.fill(values, start, start + size, saturate(value));
+    }
+
+    public void fillColumn(int to, long value) {
+        int cell = saturate(value);
+        for (int index = to; index < values.length; index += size) {
+            values[index] = cell;
+        }
+    }
+
+    public DistanceMatrix copy() {
+        return new DistanceMatrix(size, values.clone());
+    }
+
+    /**
+     * The matrix restricted to {@code nodes}, in their order: cell (i, j) of the result is cell (nodes[i], nodes[j]).
+     */
+    public DistanceMatrix select(int[] nodes) {
+        DistanceMatrix result = new DistanceMatrix(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            int offset = nodes[i] * size;
+            for (int j = 0; j < nodes.length; j++) {
+                result.values[i * nodes.length + j] = values[offset + nodes[j]];
+            }
+        }
+        return result;
+    }
+
+    public long[][] toLongArrays() {
+        long[][] result = new long[size][size];
+        for (int i = 0; i < size; i++) {
+            long[] row = result[i];
+            int offset = i * size;
+            for (int j = 0; j < size; j++) {
+                row[j] = values[offset + j];
+            }
+        }
+        return result;
+    }
+
+    private static int saturate(long value) {
+        if (value > Integer.MAX_VALUE) return Integer.MAX_VALUE;
+        if (value < Integer.MIN_VALUE) return Integer.MIN_VALUE;
+        return (int) value;
+    }
+}
@@ -2,6 +2,9 @@ package id.segari.ortools.util;
 
 public class GeoUtils {
     private static final int LAT_LONG_MIN_LENGTH = 2;
+    static final double EARTH_DIAMETER_IN_METER = 2 * 6371 * 1000;
+    // The Vector API is an incubator module; it is only used when the JVM was started with --add-modules jdk.incubator.vector
+    private static final boolean VECTOR_API_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
     /*
         https://en.wikipedia.org/wiki/Haversine_formula
      */
@@ -25,4 +28,99 @@ public class GeoUtils {
     public static double getHaversineDistanceInMeter(double lat1, double lon1, double lat2, double lon2){
         return getHaversineDistanceInKm(lat1, lon1, lat2, lon2) * 1000;
     }
+
+    /**
+     * Haversine distances between every pair of points, rounded to meters.
+     * Radians and cosines are computed once per point and only the upper triangle is evaluated,
+     * each row with the JDK Vector API when available; the lower triangle is mirrored.
+     */
+    public static DistanceMatrix getHaversineDistanceMatrixInMeter(double[] latitudes, double[] longitudes) {
+        return getHaversineDistanceMatrixInMeter(latitudes, longitudes, VECTOR_API_AVAILABLE);
+    }
+
+    static DistanceMatrix getHaversineDistanceMatrixInMeter(double[] latitudes, double[] longitudes, boolean vectorized) {
+        if (latitudes.length != longitudes.length) throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+        int n = latitudes.length;
+        double[] latitudeRadians = new double[n];
+        double[] longitudeRadians = new double[n];
+        double[] latitudeCosines = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudeRadians[i] = Math.toRadians(latitudes[i]);
+            longitudeRadians[i] = Math.toRadians(longitudes[i]);
+            latitudeCosines[i] = Math.cos(latitudeRadians[i]);
+        }
+
+        DistanceMatrix matrix = new DistanceMatrix(n);
+        double[] row = new double[n];
+        for (int i = 0; i < n; i++) {
+            int from = i + 1;
+            if (vectorized) {
+                from = HaversineVectorKernel.fillRow(latitudeRadians[i], longitudeRadians[i], latitudeCosines[i], from, n,
+                        latitudeRadians, longitudeRadians, latitudeCosines, row);
+            }
+            for (int j = from; j < n; j++) {
+                row[j] = haversineInMeter(latitudeRadians[i], longitudeRadians[i], latitudeCosines[i],
+                        latitudeRadians[j], longitudeRadians[j], latitudeCosines[j]);
+            }
+            for (int j = i + 1; j < n; j++) {
+                long distance = Math.round(row[j]);
+                matrix.set(i, j, distance);
+                matrix.set(j, i, distance);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Haversine distances in meters from every source to every destination, row-major over sources x destinations.
+     * Like {@link #getHaversineDistanceMatrixInMeter(double[], double[])} it converts each point once and evaluates
+     * each row with the JDK Vector API when available, but it is not rounded and needs no square matrix.
+     */
+    public static double[] getHaversineDistancesInMeter(double[] sourceLatitudes, double[] sourceLongitudes,
+                                                        double[] destinationLatitudes, double[] destinationLongitudes) {
+        return getHaversineDistancesInMeter(sourceLatitudes, sourceLongitudes, destinationLatitudes, destinationLongitudes,
+                VECTOR_API_AVAILABLE);
+    }
+
+    static double[] getHaversineDistancesInMeter(double[] sourceLatitudes, double[] sourceLongitudes,
+                                                 double[] destinationLatitudes, double[] destinationLongitudes, boolean vectorized) {
+        if (sourceLatitudes.length != sourceLongitudes.length || destinationLatitudes.length != destinationLongitudes.length) {
+            throw new IllegalArgumentException("latitudes and longitudes must have the same length");
+        }
+        int columns = destinationLatitudes.length;
+        double[] latitudeRadians = new double[columns];
+        double[] longitudeRadians = new double[columns];
+        double[] latitudeCosines = new double[columns];
+        for (int j = 0; j < columns; j++) {
+            latitudeRadians[j] = Math.toRadians(destinationLatitudes[j]);
+            longitudeRadians[j] = Math.toRadians(destinationLongitudes[j]);
+            latitudeCosines[j] = Math.cos(latitudeRadians[j]);
+        }
+
+        double[] distances = new double[sourceLatitudes.length * columns];
+        double[] row = new double[columns];
+        for (int i = 0; i < sourceLatitudes.length; i++) {
+            double latitudeRadian = Math.toRadians(sourceLatitudes[i]);
+            double longitudeRadian = Math.toRadians(sourceLongitudes[i]);
+            double latitudeCosine = Math.cos(latitudeRadian);
+            int from = 0;
+            if (vectorized) {
+                from = HaversineVectorKernel.fillRow(latitudeRadian, longitudeRadian, latitudeCosine, 0, columns,
+                        latitudeRadians, longitudeRadians, latitudeCosines, row);
+            }
+            for (int j = from; j < columns; j++) {
+                row[j] = haversineInMeter(latitudeRadian, longitudeRadian, latitudeCosine,
+                        latitudeRadians[j], longitudeRadians[j], latitudeCosines[j]);
+            }
+            System.arraycopy(row, 0, distances, i * columns, columns);
+        }
+        return distances;
+    }
+
+    private static double haversineInMeter(double lat1, double lon1, double cosLat1, double lat2, double lon2, double cosLat2) {
+        double sinHalfDlat = Math.sin((lat2 - lat1) * 0.5);
+        double sinHalfDlon = Math.sin((lon2 - lon1) * 0.5);
+        double a = sinHalfDlat * sinHalfDlat + cosLat1 * cosLat2 * sinHalfDlon * sinHalfDlon;
+        return EARTH_DIAMETER_IN_METER * Math.asin(Math.sqrt(Math.min(1.0, a)));
+    }
 }
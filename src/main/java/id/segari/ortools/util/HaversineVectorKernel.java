@@ -0,0 +1,42 @@
+package id.segari.ortools.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD haversine over one matrix row. Only loaded when {@code jdk.incubator.vector} is in the boot layer,
+ * so the rest of {@link GeoUtils} keeps working on JVMs started without it.
+ */
+final class HaversineVectorKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private HaversineVectorKernel() {
+    }
+
+    /**
+     * Fills {@code row[from..]} with distances in meters from the point at ({@code latitudeRadian},
+     * {@code longitudeRadian}) for as many whole vectors as fit before {@code to}, and returns the first column that
+     * still needs the scalar tail.
+     */
+    static int fillRow(double latitudeRadian, double longitudeRadian, double latitudeCosine, int from, int to,
+                       double[] latitudeRadians, double[] longitudeRadians, double[] latitudeCosines, double[] row) {
+        DoubleVector lat1 = DoubleVector.broadcast(SPECIES, latitudeRadian);
+        DoubleVector lon1 = DoubleVector.broadcast(SPECIES, longitudeRadian);
+        DoubleVector cosLat1 = DoubleVector.broadcast(SPECIES, latitudeCosine);
+        int bound = from + SPECIES.loopBound(to - from);
+        int j = from;
+        for (; j < bound; j += SPECIES.length()) {
+            DoubleVector sinHalfDlat = DoubleVector.fromArray(SPECIES, latitudeRadians, j).sub(lat1).mul(0.5).lanewise(VectorOperators.SIN);
+            DoubleVector sinHalfDlon = DoubleVector.fromArray(SPECIES, longitudeRadians, j).sub(lon1).mul(0.5).lanewise(VectorOperators.SIN);
+            DoubleVector cosProduct = DoubleVector.fromArray(SPECIES, latitudeCosines, j).mul(cosLat1);
+            DoubleVector a = sinHalfDlat.mul(sinHalfDlat).add(cosProduct.mul(sinHalfDlon.mul(sinHalfDlon)));
+            a.min(1.0)
+                    .lanewise(VectorOperators.SQRT)
+                    .lanewise(VectorOperators.ASIN)
+                    .mul(GeoUtils.EARTH_DIAMETER_IN_METER)
+                    .intoArray(row, j);
+        }
+        return j;
+    }
+}
@@ -0,0 +1,98 @@
+package id.segari.ortools.external;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OSRMCircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final OSRMCircuitBreaker circuitBreaker = new OSRMCircuitBreaker(true, 4, 4, 0.5,
+            Duration.ofSeconds(5), 0.75, Duration.ofSeconds(30), new SimpleMeterRegistry(), clock::get);
+
+    @Test
+    void opensOnFailureRateAndRecoversThroughSingleTrialCall() {
+        circuitBreaker.onSuccess(circuitBreaker.tryAcquirePermission(), 0);
+        circuitBreaker.onError(circuitBreaker.tryAcquirePermission(), 0);
+        circuitBreaker.onSuccess(circuitBreaker.tryAcquirePermission(), 0);
+        assertEquals(OSRMCircuitBreaker.State.CLOSED, circuitBreaker.state());
+        circuitBreaker.onError(circuitBreaker.tryAcquirePermission(), 0);
+
+        assertEquals(OSRMCircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertEquals(OSRMCircuitBreaker.REJECTED, circuitBreaker.tryAcquirePermission());
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        long trial = circuitBreaker.tryAcquirePermission();
+        assertNotEquals(OSRMCircuitBreaker.REJECTED, trial);
+        assertEquals(OSRMCircuitBreaker.REJECTED, circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onSuccess(trial, 0);
+
+        assertEquals(OSRMCircuitBreaker.State.CLOSED, circuitBreaker.state());
+        assertNotEquals(OSRMCircuitBreaker.REJECTED, circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void opensOnSlowCallsAndReopensWhenTrialIsSlow() {
+        long slow = Duration.ofSeconds(6).toNanos();
+        circuitBreaker.onSuccess(circuitBreaker.tryAcquirePermission(), 0);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onSuccess(circuitBreaker.tryAcquirePermission(), slow);
+        }
+        assertEquals(OSRMCircuitBreaker.State.OPEN, circuitBreaker.state());
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        circuitBreaker.onSuccess(circuitBreaker.tryAcquirePermission(), slow);
+
+        assertEquals(OSRMCircuitBreaker.State.OPEN, circuitBreaker.state());
+        assertEquals(OSRMCircuitBreaker.REJECTED, circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void ignoresOutcomesOfCallsPermittedBeforeTheBreakerOpened() {
+        long late = circuitBreaker.tryAcquirePermission();
+        long lateSlow = circuitBreaker.tryAcquirePermission();
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onError(circuitBreaker.tryAcquirePermission(), 0);
+        }
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        long trial = circuitBreaker.tryAcquirePermission();
+
+        // A late success from before the breaker opened must not close it while the trial is in flight
+        circuitBreaker.onSuccess(late, 0);
+        assertEquals(OSRMCircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        circuitBreaker.onSuccess(trial, 0);
+        assertEquals(OSRMCircuitBreaker.State.CLOSED, circuitBreaker.state());
+
+        // Nor may a late slow call count against the freshly closed window
+        circuitBreaker.onError(lateSlow, Duration.ofSeconds(30).toNanos());
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.onSuccess(circuitBreaker.tryAcquirePermission(), 0);
+        }
+        circuitBreaker.onError(circuitBreaker.tryAcquirePermission(), 0);
+        assertEquals(OSRMCircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+
+    @Test
+    void abandonsATrialThatNeverReportsBack() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onError(circuitBreaker.tryAcquirePermission(), 0);
+        }
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        long lostTrial = circuitBreaker.tryAcquirePermission();
+        assertNotEquals(OSRMCircuitBreaker.REJECTED, lostTrial);
+        assertEquals(OSRMCircuitBreaker.REJECTED, circuitBreaker.tryAcquirePermission());
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        long trial = circuitBreaker.tryAcquirePermission();
+        assertNotEquals(OSRMCircuitBreaker.REJECTED, trial);
+        circuitBreaker.onError(lostTrial, 0);
+        assertEquals(OSRMCircuitBreaker.State.HALF_OPEN, circuitBreaker.state());
+        circuitBreaker.onSuccess(trial, 0);
+
+        assertEquals(OSRMCircuitBreaker.State.CLOSED, circuitBreaker.state());
+    }
+}
@@ -0,0 +1,104 @@
+package id.segari.ortools.external;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OSRMMatrixStoreTest {
+
+    private static final long SP = OSRMMatrixCache.quantize(new LatLong(-6.200000, 106.816666));
+    private static final long ORDER_A = OSRMMatrixCache.quantize(new LatLong(-6.210000, 106.820000));
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesSurviveReopening() {
+        OSRMMatrixStore store = open("2024-01");
+        store.put(SP, ORDER_A, 1500.5, 120.25);
+        store.put(ORDER_A, SP, 1490, 130);
+        store.put(SP, ORDER_A, 9999, 9999);
+        store.close();
+
+        OSRMMatrixStore reopened = open("");
+
+        assertEquals(0, reopened.size(), "files are only mapped on first access");
+        assertEquals(new OSRMMatrixCache.Cell(1500.5, 120.25), reopened.get(SP, ORDER_A));
+        assertEquals(new OSRMMatrixCache.Cell(1490, 130), reopened.get(ORDER_A, SP));
+        assertNull(reopened.get(SP, SP));
+        assertEquals(2, reopened.size());
+    }
+
+    @Test
+    void newOsrmDataVersionDropsEntries() {
+        OSRMMatrixStore store = open("2024-01");
+        store.put(SP, ORDER_A, 1500, 120);
+
+        assertFalse(store.useDataVersion("2024-01"));
+        assertTrue(store.useDataVersion("2024-02"));
+        assertNull(store.get(SP, ORDER_A));
+        store.put(SP, ORDER_A, 1400, 110);
+        store.close();
+
+        assertEquals(new OSRMMatrixCache.Cell(1400, 110), open("").get(SP, ORDER_A));
+        assertNull(open("2024-03").get(SP, ORDER_A));
+    }
+
+    @Test
+    void startsOverOnceFull() {
+        OSRMMatrixStore store = open("2024-01");
+        store.put(SP, ORDER_A, 1500, 120);
+        store.put(ORDER_A, SP, 1490, 130);
+        store.put(SP, SP, 0, 0);
+
+        assertEquals(1, store.size());
+        assertNull(store.get(SP, ORDER_A));
+        assertEquals(new OSRMMatrixCache.Cell(0, 0), store.get(SP, SP));
+    }
+
+    @Test
+    void persistsNothingWhileTheDataVersionIsUnknown() {
+        OSRMMatrixStore store = open("");
+        store.put(SP, ORDER_A, 1500, 120);
+        assertEquals(0, store.size());
+
+        assertTrue(store.useDataVersion("2024-01"));
+        store.put(SP, ORDER_A, 1500, 120);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void dropsEntriesOlderThanTheMaxAge() {
+        OSRMMatrixStore store = open("2024-01");
+        store.put(SP, ORDER_A, 1500, 120);
+        store.close();
+
+        clock.addAndGet(Duration.ofDays(7).toMillis());
+        OSRMMatrixStore reopened = open("");
+
+        assertNull(reopened.get(SP, ORDER_A));
+        assertEquals(0, reopened.size());
+    }
+
+    @Test
+    void putAllStoresATile() {
+        OSRMMatrixStore store = open("2024-01");
+        store.putAll(new long[]{SP, ORDER_A}, new long[]{ORDER_A, SP}, new double[]{1500, 1490}, new double[]{120, 130}, 2);
+
+        assertEquals(2, store.size());
+        assertEquals(new OSRMMatrixCache.Cell(1500, 120), store.get(SP, ORDER_A));
+        assertEquals(new OSRMMatrixCache.Cell(1490, 130), store.get(ORDER_A, SP));
+    }
+
+    private OSRMMatrixStore open(String dataVersion) {
+        return new OSRMMatrixStore(true, directory, 2, Duration.ofDays(7), dataVersion, new SimpleMeterRegistry(), clock::get);
+    }
+}
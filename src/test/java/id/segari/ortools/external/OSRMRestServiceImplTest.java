@@ -0,0 +1,287 @@
+package id.segari.ortools.external;
+
+import id.segari.ortools.exception.BaseException;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.util.DistanceMatrix;
+import id.segari.ortools.util.GeoUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.RequestMatcher;
+import org.springframework.web.client.RestClient;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class OSRMRestServiceImplTest {
+
+    private static final LatLong SP = new LatLong(-6.200000, 106.816666);
+    private static final LatLong ORDER_A = new LatLong(-6.210000, 106.820000);
+    private static final LatLong ORDER_B = new LatLong(-6.190000, 106.830000);
+
+    private MockRestServiceServer server;
+    private OSRMMatrixCache matrixCache;
+    private OSRMRestServiceImpl osrmRestService;
+
+    @BeforeEach
+    void setUp() {
+        setUp(100, 5);
+    }
+
+    private void setUp(int maxCoordinates) {
+        setUp(maxCoordinates, 5);
+    }
+
+    private void setUp(int maxCoordinates, int breakerMinimumCalls) {
+        RestClient.Builder builder = RestClient.builder().baseUrl("http://osrm.test");
+        server = MockRestServiceServer.bindTo(builder).ignoreExpectOrder(true).build();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        OSRMMatrixStore disabledStore = new OSRMMatrixStore(false, Path.of("unused"), 1, Duration.ofDays(7), "", meterRegistry);
+        matrixCache = new OSRMMatrixCache(true, 1_000, Duration.ofMinutes(5), disabledStore, meterRegistry);
+        OSRMTableFetcher tableFetcher = new OSRMTableFetcher(builder.build(), maxCoordinates, 4, 2, 0, meterRegistry);
+        OSRMCircuitBreaker circuitBreaker = new OSRMCircuitBreaker(true, 20, breakerMinimumCalls, 0.5,
+                Duration.ofSeconds(5), 0.5, Duration.ofMinutes(1), meterRegistry);
+        OSRMRoadCalibration roadCalibration = new OSRMRoadCalibration(0.1, 1, 100, meterRegistry);
+        osrmRestService = new OSRMRestServiceImpl(tableFetcher, matrixCache, circuitBreaker, roadCalibration, 0.5, meterRegistry);
+    }
+
+    @Test
+    void getMatrix_secondCallIsServedFromCache() {
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok",
+                         "durations":[[0,120.4],[130.6,0]],
+                         "distances":[[0,1500.2],[1490.7,0]]}
+                        """, MediaType.APPLICATION_JSON));
+
+        OSRMTableResponseDTO first = osrmRestService.getMatrix(List.of(SP, ORDER_A));
+        OSRMTableResponseDTO second = osrmRestService.getMatrix(List.of(SP, ORDER_A));
+
+        server.verify();
+        assertArrayEquals(new long[]{0, 120}, row(first.durations(), 0));
+        assertArrayEquals(new long[]{1491, 0}, row(first.distances(), 1));
+        assertArrayEquals(row(first.durations(), 1), row(second.durations(), 1));
+        assertArrayEquals(row(first.distances(), 0), row(second.distances(), 0));
+    }
+
+    @Test
+    void getMatrixWithScaleFactor_scalesCachedUnscaledDurations() {
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok",
+                         "durations":[[0,100],[200,0]],
+                         "distances":[[0,1000],[2000,0]]}
+                        """, MediaType.APPLICATION_JSON));
+
+        OSRMTableResponseDTO unscaled = osrmRestService.getMatrix(List.of(SP, ORDER_A));
+        OSRMTableResponseDTO scaled = osrmRestService.getMatrixWithScaleFactor(List.of(SP, ORDER_A), 1.5);
+
+        server.verify();
+        assertEquals(100, unscaled.durations().get(0, 1));
+        assertEquals(150, scaled.durations().get(0, 1));
+        assertEquals(300, scaled.durations().get(1, 0));
+        assertEquals(2000, scaled.distances().get(1, 0));
+    }
+
+    @Test
+    void getMatrix_onlyFetchesRowsAndColumnsOfNewPoints() {
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[0,1],[1,0]],"distances":[[0,1],[1,0]]}
+                        """, MediaType.APPLICATION_JSON));
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21;106.83,-6.19?annotations=duration,distance&sources=2&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[2,3,0]],"distances":[[20,30,0]]}
+                        """, MediaType.APPLICATION_JSON));
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21;106.83,-6.19?annotations=duration,distance&sources=0;1&destinations=2"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[4],[5]],"distances":[[40],[50]]}
+                        """, MediaType.APPLICATION_JSON));
+
+        osrmRestService.getMatrix(List.of(SP, ORDER_A));
+        OSRMTableResponseDTO result = osrmRestService.getMatrix(List.of(SP, ORDER_A, ORDER_B));
+
+        server.verify();
+        assertArrayEquals(new long[]{0, 1, 40}, row(result.distances(), 0));
+        assertArrayEquals(new long[]{1, 0, 50}, row(result.distances(), 1));
+        assertArrayEquals(new long[]{20, 30, 0}, row(result.distances(), 2));
+        assertArrayEquals(new long[]{2, 3, 0}, row(result.durations(), 2));
+    }
+
+    @Test
+    void getMatrix_refetchesOnlyEvictedPairsAmongKnownPoints() {
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.82,-6.21;106.83,-6.19?annotations=duration,distance&sources=0&destinations=1"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[7]],"distances":[[70]]}
+                        """, MediaType.APPLICATION_JSON));
+
+        List<LatLong> locations = List.of(SP, ORDER_A, ORDER_B);
+        for (LatLong from : locations) {
+            for (LatLong to : locations) {
+                if (from.equals(ORDER_A) && to.equals(ORDER_B)) continue;
+                int value = from.equals(to) ? 0 : 1;
+                matrixCache.put(OSRMMatrixCache.quantize(from), OSRMMatrixCache.quantize(to), value, value);
+            }
+        }
+        OSRMTableResponseDTO result = osrmRestService.getMatrix(locations);
+
+        server.verify();
+        assertEquals(1, result.distances().get(2, 1));
+        assertEquals(70, result.distances().get(1, 2));
+        assertEquals(7, result.durations().get(1, 2));
+    }
+
+    @Test
+    void getMatrix_splitsLargeTablesIntoTilesAndRetriesFailedTile() {
+        setUp(4);
+        String base = "http://osrm.test/table/v1/driving/";
+        server.expect(decodedRequestTo(base + "106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[0,1],[1,0]],"distances":[[0,1],[1,0]]}
+                        """, MediaType.APPLICATION_JSON));
+        server.expect(decodedRequestTo(base + "106.816666,-6.2;106.82,-6.21;106.83,-6.19?annotations=duration,distance&sources=0;1&destinations=2"))
+                .andRespond(withServerError());
+        server.expect(decodedRequestTo(base + "106.816666,-6.2;106.82,-6.21;106.83,-6.19?annotations=duration,distance&sources=0;1&destinations=2"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[2],[3]],"distances":[[2],[3]]}
+                        """, MediaType.APPLICATION_JSON));
+        server.expect(decodedRequestTo(base + "106.816666,-6.2;106.82,-6.21;106.83,-6.19?annotations=duration,distance&sources=2&destinations=0;1"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[2,3]],"distances":[[2,3]]}
+                        """, MediaType.APPLICATION_JSON));
+        server.expect(decodedRequestTo(base + "106.83,-6.19?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok","durations":[[0]],"distances":[[0]]}
+                        """, MediaType.APPLICATION_JSON));
+
+        OSRMTableResponseDTO result = osrmRestService.getMatrix(List.of(SP, ORDER_A, ORDER_B));
+
+        server.verify();
+        assertArrayEquals(new long[]{0, 1, 2}, row(result.distances(), 0));
+        assertArrayEquals(new long[]{1, 0, 3}, row(result.distances(), 1));
+        assertArrayEquals(new long[]{2, 3, 0}, row(result.durations(), 2));
+    }
+
+    @Test
+    void getMatrix_streamsResponseRegardlessOfFieldOrder() {
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"destinations":[{"hint":"x","distance":1.5,"name":"Jalan","location":[106.82,-6.21]}],
+                         "distances":[[0,812.6],[null,0]],
+                         "sources":[{"hint":"y","distance":0.2,"name":"","location":[106.81,-6.2]}],
+                         "durations":[[0.0,95.5],[101.2,0.0]],
+                         "code":"Ok"}
+                        """, MediaType.APPLICATION_JSON));
+
+        OSRMTableResponseDTO result = osrmRestService.getMatrix(List.of(SP, ORDER_A));
+
+        server.verify();
+        assertArrayEquals(new long[]{0, 813}, row(result.distances(), 0));
+        assertArrayEquals(new long[]{0, 0}, row(result.distances(), 1));
+        assertArrayEquals(new long[]{101, 0}, row(result.durations(), 1));
+    }
+
+    @Test
+    void getMatrix_nonOkCodeIsRejected() {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                    .andRespond(withSuccess("""
+                            {"code":"NoTable","message":"no table"}
+                            """, MediaType.APPLICATION_JSON));
+        }
+
+        BaseException exception = assertThrows(BaseException.class, () -> osrmRestService.getMatrix(List.of(SP, ORDER_A)));
+
+        server.verify();
+        assertEquals("OSRM_INVALID_RESPONSE", exception.getErrorCode());
+    }
+
+    @Test
+    void getMatrix_openBreakerServesCalibratedApproximationForUncachedCells() {
+        setUp(100, 1);
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(withSuccess("""
+                        {"code":"Ok",
+                         "durations":[[0,120],[130,0]],
+                         "distances":[[0,1500],[1490,0]]}
+                        """, MediaType.APPLICATION_JSON));
+        // The new point's row and column are separate tiles; whichever fails first cancels the other
+        server.expect(ExpectedCount.between(0, 2), decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.83,-6.19?annotations=duration,distance&sources=1&destinations=all"))
+                .andRespond(withServerError());
+        server.expect(ExpectedCount.between(0, 2), decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.83,-6.19?annotations=duration,distance&sources=0&destinations=1"))
+                .andRespond(withServerError());
+
+        assertFalse(osrmRestService.getMatrix(List.of(SP, ORDER_A)).approximate());
+        assertThrows(BaseException.class, () -> osrmRestService.getMatrix(List.of(SP, ORDER_B)));
+        OSRMTableResponseDTO result = osrmRestService.getMatrixWithScaleFactor(List.of(SP, ORDER_B), 2.0);
+
+        server.verify();
+        double haversineToA = GeoUtils.getHaversineDistanceInMeter(SP.latitude(), SP.longitude(), ORDER_A.latitude(), ORDER_A.longitude());
+        double haversineToB = Math.round(GeoUtils.getHaversineDistanceInMeter(SP.latitude(), SP.longitude(), ORDER_B.latitude(), ORDER_B.longitude()));
+        // SP and ORDER_A fall in different 0.1° regions, so SP's row is estimated from the SP -> ORDER_A sample only
+        double detourFactor = 1500 / haversineToA;
+        double metersPerSecond = 1500 / 120.0;
+        assertTrue(result.approximate());
+        assertEquals(0, result.distances().get(0, 0));
+        assertEquals(Math.round(haversineToB * detourFactor), result.distances().get(0, 1));
+        assertEquals(Math.round(haversineToB * detourFactor / metersPerSecond * 2.0), result.durations().get(0, 1));
+    }
+
+    @Test
+    void getMatrix_exceededDeadlineServesEstimatesWhileFetchFillsCache() {
+        CountDownLatch release = new CountDownLatch(1);
+        server.expect(decodedRequestTo("http://osrm.test/table/v1/driving/106.816666,-6.2;106.82,-6.21?annotations=duration,distance&sources=all&destinations=all"))
+                .andRespond(request -> {
+                    awaitUninterruptibly(release);
+                    return withSuccess("""
+                            {"code":"Ok",
+                             "durations":[[0,120],[130,0]],
+                             "distances":[[0,1500],[1490,0]]}
+                            """, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        OSRMTableResponseDTO estimated = osrmRestService.getMatrix(List.of(SP, ORDER_A), Deadline.after(Duration.ofMillis(100)));
+        release.countDown();
+        // Joins the fetch that is still in flight (or hits the cache it filled) instead of calling OSRM again
+        OSRMTableResponseDTO fetched = osrmRestService.getMatrix(List.of(SP, ORDER_A));
+
+        server.verify();
+        assertTrue(estimated.approximate());
+        assertTrue(estimated.distances().get(0, 1) > 0);
+        assertFalse(fetched.approximate());
+        assertEquals(1500, fetched.distances().get(0, 1));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RequestMatcher decodedRequestTo(String expectedUri) {
+        return request -> assertEquals(expectedUri, URLDecoder.decode(request.getURI().toString(), StandardCharsets.UTF_8));
+    }
+
+    private static long[] row(DistanceMatrix matrix, int from) {
+        long[] row = new long[matrix.size()];
+        for (int to = 0; to < row.length; to++) {
+            row[to] = matrix.get(from, to);
+        }
+        return row;
+    }
+}
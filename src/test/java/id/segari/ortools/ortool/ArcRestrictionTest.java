@@ -0,0 +1,30 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.util.DistanceMatrix;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArcRestrictionTest {
+
+    @Test
+    void nearestSuccessors_keepsTheClosestOrdersWithinTheDistanceLimit() {
+        // Dummy, SP at 0 and orders at 0, 1, 3, 7 and 100 on a line
+        int[] positions = {0, 0, 0, 1, 3, 7, 100};
+        DistanceMatrix distances = new DistanceMatrix(positions.length);
+        for (int from = 1; from < positions.length; from++) {
+            for (int to = 1; to < positions.length; to++) {
+                distances.set(from, to, Math.abs(positions[from] - positions[to]));
+            }
+        }
+
+        int[][] nearest = ArcRestriction.nearestSuccessors(distances, 50, BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX, 2);
+
+        assertArrayEquals(new int[0], nearest[0]);
+        assertArrayEquals(new int[0], nearest[1]);
+        assertArrayEquals(new int[]{3, 4}, nearest[2]);
+        assertArrayEquals(new int[]{4, 3}, nearest[5]);
+        // Every other order is beyond the limit
+        assertArrayEquals(new int[0], nearest[6]);
+    }
+}
@@ -0,0 +1,47 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledNodesTest {
+
+    @Test
+    void of_compilesNodeTypesIdsAndAnExtensionMaskOfOrdersOnly() {
+        CompiledNodes nodes = CompiledNodes.of(List.of(
+                order(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY, true),
+                order(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP, true),
+                order(1L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, false),
+                order(2L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, true)));
+
+        assertEquals(4, nodes.size());
+        assertTrue(nodes.isDummy(0));
+        assertTrue(nodes.isSp(1));
+        assertTrue(nodes.isSpecial(1));
+        assertTrue(nodes.isOrder(2));
+        assertEquals(2L, nodes.id(3));
+        assertArrayEquals(new boolean[]{false, false, false, true}, nodes.extensions());
+        assertTrue(nodes.hasExtensions());
+        assertTrue(nodes.isExtensionEdge(2, 3));
+        assertFalse(nodes.isExtensionEdge(1, 2));
+    }
+
+    @Test
+    void forEachRow_visitsEveryRowOnceAboveTheParallelThreshold() {
+        int size = CompiledNodes.PARALLEL_ROWS_THRESHOLD + 1;
+        AtomicIntegerArray visits = new AtomicIntegerArray(size);
+
+        CompiledNodes.forEachRow(size, visits::incrementAndGet);
+
+        for (int i = 0; i < size; i++) assertEquals(1, visits.get(i));
+    }
+
+    private static RouteOrderV2DTO order(Long id, SegariRouteOrderDTO.SegariRouteOrderEnum type, boolean isExtension) {
+        return new RouteOrderV2DTO(id, type, -6.2, 106.8, isExtension, 0L);
+    }
+}
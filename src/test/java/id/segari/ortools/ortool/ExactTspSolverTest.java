@@ -0,0 +1,124 @@
+package id.segari.ortools.ortool;
+
+import com.google.ortools.Loader;
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.dto.route.v2.TspResultDTO;
+import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.external.OSRMRestService;
+import id.segari.ortools.external.OSRMTableResponseDTO;
+import id.segari.ortools.solver.Deadline;
+import id.segari.ortools.solver.SolverExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExactTspSolverTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExactTspSolver exactTspSolver = new ExactTspSolver(12, meterRegistry);
+
+    @Test
+    void solve_matchesBruteForceOnRandomInstances() {
+        Random random = new Random(17);
+        for (int instance = 0; instance < 200; instance++) {
+            int orderCount = 1 + random.nextInt(6);
+            TspProblem problem = TspProblems.random(random, orderCount, true);
+
+            int[] route = exactTspSolver.solve(problem, null, Deadline.none()).route();
+
+            long expected = bruteForce(problem, new int[0], orderCount);
+            assertEquals(expected, problem.objective(route), "instance " + instance + ", route " + Arrays.toString(route));
+        }
+    }
+
+    @Test
+    void solve_isNoWorseThanOrTools() {
+        assumeTrue(nativeLibrariesAvailable(), "OR-tools native libraries are not available");
+        Random random = new Random(29);
+        SolverExecutor solverExecutor = new SolverExecutor(1, 4, Duration.ofSeconds(10), DataSize.ofBytes(0),
+                DataSize.ofMegabytes(8), 64, meterRegistry);
+        RoutingSearch routingSearch = new RoutingSearch(Duration.ofSeconds(2), false, List.of(), Duration.ofSeconds(2), 1,
+                Duration.ofMillis(50), Duration.ofMillis(100), true, Duration.ofSeconds(1), 0.001, meterRegistry);
+        OrToolsTspEngine orTools = new OrToolsTspEngine(new TransitRegistrar(TransitRegistrar.Mode.MATRIX, meterRegistry),
+                new ArcRestriction(false, 20, 100, meterRegistry), routingSearch);
+        WarmStartStore warmStartStore = new WarmStartStore(false, 1, 1, Duration.ofMinutes(1), meterRegistry);
+        ReachabilityPruner reachabilityPruner = new ReachabilityPruner(false, 0, meterRegistry);
+        Presolver presolver = new Presolver(false, meterRegistry);
+        TspEngines withExact = new TspEngines(List.of(orTools), exactTspSolver, OrToolsTspEngine.NAME, OrToolsTspEngine.NAME, meterRegistry);
+        TspEngines withoutExact = new TspEngines(List.of(orTools), new ExactTspSolver(0, meterRegistry), OrToolsTspEngine.NAME,
+                OrToolsTspEngine.NAME, meterRegistry);
+        try {
+            for (int instance = 0; instance < 10; instance++) {
+                int orderCount = 3 + random.nextInt(6);
+                TspProblem problem = TspProblems.random(random, orderCount, false);
+                RouteV3DTO dto = routeV3(orderCount, problem);
+                OSRMRestService osrmRestService = mock(OSRMRestService.class);
+                when(osrmRestService.getMatrixWithScaleFactor(any(), any(), any())).thenAnswer(invocation ->
+                        new OSRMTableResponseDTO(problem.durations().copy(), problem.distances().copy(), false));
+
+                TspResultDTO exact = TspWithSpStartAndArbitraryFinishV2.run(dto, osrmRestService, solverExecutor, withExact,
+                        warmStartStore, reachabilityPruner, presolver, Deadline.none());
+                TspResultDTO orToolsResult = TspWithSpStartAndArbitraryFinishV2.run(dto, osrmRestService, solverExecutor, withoutExact,
+                        warmStartStore, reachabilityPruner, presolver, Deadline.none());
+
+                long orToolsObjective = problem.objective(nodes(orToolsResult));
+                assertNotEquals(Long.MAX_VALUE, orToolsObjective, "instance " + instance);
+                assertTrue(problem.objective(nodes(exact)) <= orToolsObjective, "instance " + instance);
+            }
+        } finally {
+            routingSearch.shutdown();
+            solverExecutor.shutdown();
+        }
+    }
+
+    private static long bruteForce(TspProblem problem, int[] prefix, int orderCount) {
+        long best = problem.objective(prefix);
+        for (int node = 2; node < orderCount + 2; node++) {
+            final int candidate = node;
+            if (Arrays.stream(prefix).anyMatch(visited -> visited == candidate)) continue;
+            int[] route = Arrays.copyOf(prefix, prefix.length + 1);
+            route[prefix.length] = node;
+            best = Math.min(best, bruteForce(problem, route, orderCount));
+        }
+        return best;
+    }
+
+    private static RouteV3DTO routeV3(int orderCount, TspProblem problem) {
+        List<RouteOrderV2DTO> orders = new ArrayList<>();
+        orders.add(new RouteOrderV2DTO(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY, -6.2, 106.8, false, 0L));
+        orders.add(new RouteOrderV2DTO(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP, -6.2, 106.8, false, 0L));
+        for (int node = 2; node < orderCount + 2; node++) {
+            orders.add(new RouteOrderV2DTO((long) node, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, -6.2, 106.8, false,
+                    problem.timeWindows()[node][1]));
+        }
+        return new RouteV3DTO(1_000_000, 1_000_000, 1_000_000, 1_000_000, orderCount, orderCount, Set.of(), 1.0, 0, 0, orders);
+    }
+
+    /** Order ids in {@link #routeV3} are their node indices. */
+    private static int[] nodes(TspResultDTO result) {
+        return result.routes().stream().mapToInt(Long::intValue).toArray();
+    }
+
+    private static boolean nativeLibrariesAvailable() {
+        try {
+            Loader.loadNativeLibraries();
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+}
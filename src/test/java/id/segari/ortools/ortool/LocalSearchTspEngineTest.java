@@ -0,0 +1,80 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalSearchTspEngineTest {
+
+    private final LocalSearchTspEngine localSearch = new LocalSearchTspEngine(Duration.ofSeconds(5));
+    private final ExactTspSolver exactTspSolver = new ExactTspSolver(12, new SimpleMeterRegistry());
+
+    @Test
+    void solve_findsFeasibleRoutesCloseToOptimal() {
+        Random random = new Random(41);
+        double gapSum = 0;
+        int unconstrained = 0;
+        for (int instance = 0; instance < 100; instance++) {
+            boolean constrained = instance % 2 == 0;
+            TspProblem problem = TspProblems.random(random, 2 + random.nextInt(9), constrained);
+
+            TspEngine.Result result = localSearch.solve(problem, null, Deadline.none());
+            long optimum = problem.objective(exactTspSolver.solve(problem, null, Deadline.none()).route());
+            long objective = problem.objective(result.route());
+
+            String message = "instance " + instance + ", route " + Arrays.toString(result.route());
+            assertEquals(SearchStatus.CONVERGED, result.status(), message);
+            assertTrue(objective >= optimum, message);
+            // Without time windows and tight limits every order fits, so only the route length can differ
+            if (!constrained) {
+                assertEquals(problem.orderCount(), result.route().length, message);
+                gapSum += (double) (objective - optimum) / optimum;
+                unconstrained++;
+            }
+        }
+        assertTrue(gapSum / unconstrained < 0.03, "average gap " + gapSum / unconstrained);
+    }
+
+    @Test
+    void solve_keepsRoutesFeasibleOnAsymmetricMatrices() {
+        Random random = new Random(47);
+        for (int instance = 0; instance < 100; instance++) {
+            TspProblem problem = TspProblems.random(random, 2 + random.nextInt(9), true);
+            // One-way detours make reversed segments cost more or less than they did forwards
+            for (int from = 1; from < problem.size(); from++) {
+                for (int to = from + 1; to < problem.size(); to++) {
+                    int detour = random.nextInt(300);
+                    problem.distances().set(from, to, problem.distances().get(from, to) + detour);
+                    problem.durations().set(from, to, problem.durations().get(from, to) + detour / 10);
+                }
+            }
+
+            TspEngine.Result result = localSearch.solve(problem, null, Deadline.none());
+            long optimum = problem.objective(exactTspSolver.solve(problem, null, Deadline.none()).route());
+            long objective = problem.objective(result.route());
+
+            String message = "instance " + instance + ", route " + Arrays.toString(result.route());
+            assertNotEquals(Long.MAX_VALUE, objective, message);
+            assertTrue(objective >= optimum, message);
+        }
+    }
+
+    @Test
+    void solve_startsFromFeasibleInitialRouteAndStopsAtDeadline() {
+        TspProblem problem = TspProblems.random(new Random(43), 200, false);
+        int[] initialRoute = {3, 2};
+
+        TspEngine.Result result = localSearch.solve(problem, initialRoute, Deadline.after(Duration.ofMillis(50)));
+
+        assertEquals(SearchStatus.DEADLINE, result.status());
+        assertNotEquals(Long.MAX_VALUE, problem.objective(result.route()));
+        assertEquals(problem.orderCount(), result.route().length);
+    }
+}
@@ -0,0 +1,74 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.exception.BaseException;
+import id.segari.ortools.util.DistanceMatrix;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresolverTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Presolver presolver = new Presolver(true, meterRegistry);
+
+    // Dummy, SP at 0 and orders 1, 2 and 3 at 100, 200 and 5000 on a line, travelled at 10 meters per second
+    private final int[] positions = {0, 0, 100, 200, 5_000};
+    private final CompiledNodes nodes = CompiledNodes.of(List.of(
+            order(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY),
+            order(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP),
+            order(1L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER),
+            order(2L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER),
+            order(3L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER)));
+
+    @Test
+    void presolve_prunesOrdersNoRouteCanServeAndTightensTimeWindows() {
+        Presolver.Presolved presolved = presolver.presolve(problem(2), nodes, Set.of());
+
+        // Order 2 is due before it can be reached, order 3 is beyond the distance limit
+        assertEquals(List.of(2L, 3L), presolved.prunedOrderIds());
+        assertArrayEquals(new int[]{0, 1, 2}, presolved.nodes());
+        assertEquals(1, presolved.problem().orderCount());
+        assertEquals(100, presolved.problem().distances().get(1, 2));
+        assertEquals(10, presolved.problem().timeWindows()[2][0]);
+        assertArrayEquals(new int[]{2}, presolved.toOriginalNodes(new int[]{2}));
+        assertEquals(2, meterRegistry.counter("solver.presolve.pruned.orders").count());
+    }
+
+    @Test
+    void presolve_rejectsMandatoryOrdersNoRouteCanServe() {
+        assertEquals("MANDATORY_ORDER_UNREACHABLE", errorCode(2, Set.of(3L)));
+        assertEquals("MANDATORY_ORDER_TIME_WINDOW_UNREACHABLE", errorCode(2, Set.of(2L)));
+        assertEquals("MANDATORY_ORDERS_EXCEED_CAPACITY", errorCode(1, Set.of(1L, 2L)));
+        assertEquals(3, meterRegistry.counter("solver.presolve.infeasible").count());
+    }
+
+    private String errorCode(int maxOrderCount, Set<Long> mandatoryOrderIds) {
+        return assertThrows(BaseException.class, () -> presolver.presolve(problem(maxOrderCount), nodes, mandatoryOrderIds))
+                .getErrorCode();
+    }
+
+    private TspProblem problem(int maxOrderCount) {
+        int size = positions.length;
+        DistanceMatrix distances = new DistanceMatrix(size);
+        DistanceMatrix durations = new DistanceMatrix(size);
+        for (int from = 1; from < size; from++) {
+            for (int to = 1; to < size; to++) {
+                distances.set(from, to, Math.abs(positions[from] - positions[to]));
+                durations.set(from, to, Math.abs(positions[from] - positions[to]) / 10);
+            }
+        }
+        long[][] timeWindows = {{0, 0}, {0, 0}, {0, 100}, {0, 5}, {0, 1_000}};
+        return new TspProblem(distances, durations, timeWindows, nodes.extensions(), new long[size], maxOrderCount, 1_000,
+                Integer.MAX_VALUE, Integer.MAX_VALUE, 0, 0);
+    }
+
+    private static RouteOrderV2DTO order(Long id, SegariRouteOrderDTO.SegariRouteOrderEnum type) {
+        return new RouteOrderV2DTO(id, type, -6.2, 106.8, false, 0L);
+    }
+}
@@ -0,0 +1,58 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.exception.BaseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReachabilityPrunerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReachabilityPruner reachabilityPruner = new ReachabilityPruner(true, 0.05, meterRegistry);
+
+    // Orders about 1.1 km, 11 km and 22 km north of the SP
+    private final List<RouteOrderV2DTO> orders = List.of(
+            order(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY, 0),
+            order(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP, 0),
+            order(1L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, 0.01),
+            order(2L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, 0.1),
+            order(3L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, 0.2));
+
+    @Test
+    void prune_dropsOrdersBeyondTheDistanceLimitAndReportsThem() {
+        ReachabilityPruner.Pruned<RouteOrderV2DTO> pruned = prune(10_000, Set.of());
+
+        assertEquals(List.of(-1L, -2L, 1L), pruned.orders().stream().map(RouteOrderV2DTO::id).toList());
+        assertEquals(List.of(2L, 3L), pruned.prunedOrderIds());
+        assertFalse(pruned.prunedEveryOrder());
+        assertEquals(2, meterRegistry.counter("solver.pruned.orders").count());
+
+        // Within the tolerance of the limit an order is kept
+        assertEquals(List.of(3L), prune(10_600, Set.of()).prunedOrderIds());
+    }
+
+    @Test
+    void prune_rejectsUnreachableMandatoryOrders() {
+        BaseException exception = assertThrows(BaseException.class, () -> prune(10_000, Set.of(1L, 3L)));
+
+        assertEquals("MANDATORY_ORDER_UNREACHABLE", exception.getErrorCode());
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, exception.getHttpStatus());
+        assertTrue(exception.getMessage().contains("[3]"));
+    }
+
+    private ReachabilityPruner.Pruned<RouteOrderV2DTO> prune(long maxDistanceInMeter, Set<Long> mandatoryOrderIds) {
+        return reachabilityPruner.prune(orders, RouteOrderV2DTO::id, RouteOrderV2DTO::latitude, RouteOrderV2DTO::longitude,
+                maxDistanceInMeter, mandatoryOrderIds);
+    }
+
+    private static RouteOrderV2DTO order(Long id, SegariRouteOrderDTO.SegariRouteOrderEnum type, double northInDegrees) {
+        return new RouteOrderV2DTO(id, type, -6.2 + northInDegrees, 106.8, false, 0L);
+    }
+}
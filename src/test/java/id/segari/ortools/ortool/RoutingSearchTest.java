@@ -0,0 +1,134 @@
+package id.segari.ortools.ortool;
+
+import com.google.ortools.constraintsolver.Assignment;
+import com.google.ortools.constraintsolver.FirstSolutionStrategy;
+import com.google.ortools.constraintsolver.LocalSearchMetaheuristic;
+import com.google.ortools.constraintsolver.RoutingIndexManager;
+import com.google.ortools.constraintsolver.RoutingModel;
+import com.google.ortools.constraintsolver.RoutingSearchParameters;
+import com.google.ortools.constraintsolver.RoutingSearchStatus;
+import com.google.ortools.constraintsolver.SearchLimit;
+import com.google.ortools.constraintsolver.Solver;
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoutingSearchTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RoutingSearch routingSearch;
+
+    @AfterEach
+    void tearDown() {
+        if (routingSearch != null) routingSearch.shutdown();
+    }
+
+    @Test
+    void solve_withoutPortfolioRunsSingleSearchWithCallerStrategy() {
+        routingSearch = newRoutingSearch(false, List.of("SAVINGS:GUIDED_LOCAL_SEARCH"));
+        AtomicInteger modelsBuilt = new AtomicInteger();
+
+        RoutingSearch.Result result = routingSearch.solve(() -> {
+            modelsBuilt.incrementAndGet();
+            return model(limit -> 42);
+        }, FirstSolutionStrategy.Value.CHRISTOFIDES, Deadline.none());
+
+        assertEquals(1, modelsBuilt.get());
+        assertEquals(1, routingSearch.modelCopies());
+        assertEquals(42, result.solution().objectiveValue());
+        assertEquals(new RoutingSearch.Member(FirstSolutionStrategy.Value.CHRISTOFIDES, LocalSearchMetaheuristic.Value.AUTOMATIC), result.member());
+    }
+
+    @Test
+    void solve_searchLimitedByDeadlineReportsDeadline() {
+        routingSearch = newRoutingSearch(false, List.of());
+        RoutingSearch.Model model = model(limit -> 42);
+        when(model.routing().status()).thenReturn(RoutingSearchStatus.Value.ROUTING_PARTIAL_SUCCESS_LOCAL_OPTIMUM_NOT_REACHED);
+
+        RoutingSearch.Result unbounded = routingSearch.solve(() -> model, FirstSolutionStrategy.Value.CHRISTOFIDES, Deadline.none());
+        RoutingSearch.Result bounded = routingSearch.solve(() -> model, FirstSolutionStrategy.Value.CHRISTOFIDES, Deadline.after(Duration.ofMillis(300)));
+
+        assertEquals(SearchStatus.TIME_LIMIT, unbounded.status());
+        assertEquals(SearchStatus.DEADLINE, bounded.status());
+    }
+
+    @Test
+    void solve_startsFromInitialRoutesWhenModelAcceptsThem() {
+        routingSearch = newRoutingSearch(false, List.of());
+        RoutingSearch.Model model = model(limit -> 42);
+        Assignment initial = mock(Assignment.class);
+        Assignment warmSolution = mock(Assignment.class);
+        when(warmSolution.objectiveValue()).thenReturn(40L);
+        when(model.routing().readAssignmentFromRoutes(any(), eq(true))).thenReturn(initial);
+        when(model.routing().solveFromAssignmentWithParameters(eq(initial), any())).thenReturn(warmSolution);
+
+        RoutingSearch.Result warm = routingSearch.solve(() -> model, FirstSolutionStrategy.Value.CHRISTOFIDES, Deadline.none(), new int[][]{{3, 2}});
+        when(model.routing().readAssignmentFromRoutes(any(), eq(true))).thenReturn(null);
+        RoutingSearch.Result rejected = routingSearch.solve(() -> model, FirstSolutionStrategy.Value.CHRISTOFIDES, Deadline.none(), new int[][]{{3, 2}});
+
+        assertEquals(40, warm.solution().objectiveValue());
+        assertEquals(42, rejected.solution().objectiveValue());
+        assertEquals(1, meterRegistry.counter("solver.warm.start", "outcome", "rejected").count());
+    }
+
+    @Test
+    void solve_portfolioCancelsStragglersAndKeepsLowestObjective() {
+        routingSearch = newRoutingSearch(true, List.of("SAVINGS:GUIDED_LOCAL_SEARCH", "PARALLEL_CHEAPEST_INSERTION:SIMULATED_ANNEALING"));
+        AtomicInteger modelsBuilt = new AtomicInteger();
+
+        RoutingSearch.Result result = routingSearch.solve(() -> {
+            modelsBuilt.incrementAndGet();
+            if (!Thread.currentThread().getName().startsWith("portfolio-")) return model(limit -> 100);
+            // Members keep searching until the portfolio cancels them, then return their best solution so far
+            return model(limit -> {
+                while (!limit.getAsBoolean()) Thread.onSpinWait();
+                return 10;
+            });
+        }, FirstSolutionStrategy.Value.CHRISTOFIDES, Deadline.none());
+
+        assertEquals(3, modelsBuilt.get());
+        assertEquals(3, routingSearch.modelCopies());
+        assertEquals(10, result.solution().objectiveValue());
+        assertNotEquals(FirstSolutionStrategy.Value.CHRISTOFIDES, result.member().firstSolutionStrategy());
+        assertEquals(1, meterRegistry.find("solver.portfolio.wins").counters().stream().mapToDouble(c -> c.count()).sum());
+    }
+
+    private RoutingSearch newRoutingSearch(boolean portfolioEnabled, List<String> members) {
+        return new RoutingSearch(Duration.ofSeconds(1), portfolioEnabled, members, Duration.ofSeconds(1), 2,
+                Duration.ofMillis(50), Duration.ofMillis(100), true, Duration.ofSeconds(1), 0.001, meterRegistry,
+                () -> RoutingSearchParameters.newBuilder().build());
+    }
+
+    private static RoutingSearch.Model model(ToLongFunction<BooleanSupplier> search) {
+        RoutingModel routing = mock(RoutingModel.class);
+        Solver solver = mock(Solver.class);
+        Assignment solution = mock(Assignment.class);
+        AtomicReference<BooleanSupplier> limit = new AtomicReference<>();
+        when(routing.solver()).thenReturn(solver);
+        when(solver.makeCustomLimit(any())).thenAnswer(invocation -> {
+            limit.set(invocation.getArgument(0));
+            return mock(SearchLimit.class);
+        });
+        when(routing.solveWithParameters(any())).thenAnswer(invocation -> {
+            long objective = search.applyAsLong(limit.get());
+            when(solution.objectiveValue()).thenReturn(objective);
+            return solution;
+        });
+        return new RoutingSearch.Model(mock(RoutingIndexManager.class), routing);
+    }
+}
@@ -0,0 +1,36 @@
+package id.segari.ortools.ortool;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchPlateauTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void reached_onlyAfterWindowWithoutSignificantImprovement() {
+        SearchPlateau plateau = new SearchPlateau(0.01, Duration.ofSeconds(2), now::get);
+
+        // No solution yet: never a plateau, however long the first solution takes
+        now.set(Duration.ofSeconds(10).toNanos());
+        assertFalse(plateau.reached());
+        assertNull(plateau.timeToLastImprovement());
+
+        plateau.onSolution(10_000);
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        plateau.onSolution(9_000);
+        now.addAndGet(Duration.ofMillis(1500).toNanos());
+        // 0.1% is below the 1% threshold and does not restart the window
+        plateau.onSolution(8_991);
+        assertFalse(plateau.reached());
+
+        now.addAndGet(Duration.ofMillis(500).toNanos());
+        assertTrue(plateau.reached());
+        assertTrue(plateau.stoppedSearch());
+        assertEquals(Duration.ofSeconds(11), plateau.timeToLastImprovement());
+    }
+}
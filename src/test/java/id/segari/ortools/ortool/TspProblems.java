@@ -0,0 +1,56 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.util.DistanceMatrix;
+
+import java.util.Random;
+
+/**
+ * Random {@link TspProblem}s for comparing engines: orders on a grid around the SP at node 1, Manhattan distances and
+ * a duration of a tenth of the distance.
+ */
+final class TspProblems {
+
+    private TspProblems() {
+    }
+
+    /**
+     * @param constrained whether to draw time windows, extensions, mandatory orders and tight limits. Without them the
+     *                    problem is what the V3 TSP endpoint compiles from the same matrices with loose limits.
+     */
+    static TspProblem random(Random random, int orderCount, boolean constrained) {
+        int size = orderCount + BaseTspWithSpStartAndArbitraryFinish.ORDER_START_INDEX;
+        int[] x = new int[size];
+        int[] y = new int[size];
+        for (int node = 2; node < size; node++) {
+            x[node] = random.nextInt(2_000) - 1_000;
+            y[node] = random.nextInt(2_000) - 1_000;
+        }
+        DistanceMatrix distances = new DistanceMatrix(size);
+        DistanceMatrix durations = new DistanceMatrix(size);
+        for (int from = 1; from < size; from++) {
+            for (int to = 1; to < size; to++) {
+                int distance = Math.abs(x[from] - x[to]) + Math.abs(y[from] - y[to]);
+                distances.set(from, to, distance);
+                durations.set(from, to, distance / 10);
+            }
+        }
+
+        long[][] timeWindows = new long[size][2];
+        boolean[] extensions = new boolean[size];
+        long[] dropPenalties = new long[size];
+        for (int node = 2; node < size; node++) {
+            timeWindows[node][1] = constrained && random.nextBoolean() ? 100 + random.nextInt(400) : BaseTspWithSpStartAndArbitraryFinish.TIME_WINDOW_BYPASS;
+            extensions[node] = constrained && random.nextInt(3) == 0;
+            dropPenalties[node] = constrained && random.nextInt(4) == 0
+                    ? BaseTspWithSpStartAndArbitraryFinish.MANDATORY_PENALTY
+                    : BaseTspWithSpStartAndArbitraryFinish.DROP_PENALTY;
+        }
+        if (!constrained) {
+            return new TspProblem(distances, durations, timeWindows, extensions, dropPenalties, orderCount, 1_000_000,
+                    Integer.MAX_VALUE, Integer.MAX_VALUE, 0, TspWithSpStartAndArbitraryFinishV2.GLOBAL_SPAN_COST_COEFFICIENT);
+        }
+        return new TspProblem(distances, durations, timeWindows, extensions, dropPenalties, 1 + random.nextInt(orderCount),
+                2_000 + random.nextInt(6_000), random.nextInt(orderCount + 1), 1_000 + random.nextInt(4_000), 0,
+                random.nextInt(2) * 100L);
+    }
+}
@@ -0,0 +1,110 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.dto.route.v2.TspResultDTO;
+import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TspResultCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TspResultCache tspResultCache = new TspResultCache(true, 100, Duration.ofMinutes(1), meterRegistry);
+    private final AtomicInteger solves = new AtomicInteger();
+
+    @Test
+    void solve_servesIdenticalRequestsFromTheCache() {
+        TspResultDTO first = tspResultCache.solve(request(new LinkedHashSet<>(List.of(1L, 2L)), 1.0), Deadline.none(), () -> solve(false));
+        // The same request with its mandatory orders listed in another order
+        TspResultDTO second = tspResultCache.solve(request(new LinkedHashSet<>(List.of(2L, 1L)), 1.0), Deadline.none(), () -> solve(false));
+
+        assertSame(first, second);
+        assertEquals(1, solves.get());
+        assertEquals(1, meterRegistry.get("solver.result.cache.hits").functionCounter().count());
+
+        tspResultCache.solve(request(Set.of(1L, 2L), 1.2), Deadline.none(), () -> solve(false));
+        assertEquals(2, solves.get());
+    }
+
+    @Test
+    void solve_doesNotCacheResultsOnAnApproximateMatrix() {
+        tspResultCache.solve(request(Set.of(), 1.0), Deadline.none(), () -> solve(true));
+        tspResultCache.solve(request(Set.of(), 1.0), Deadline.none(), () -> solve(true));
+
+        assertEquals(2, solves.get());
+    }
+
+    @Test
+    void solve_sharesAnInFlightSolveOnlyWithCallersOfAComparableDeadline() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLeader = new CountDownLatch(1);
+        RouteV3DTO request = request(Set.of(), 1.0);
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<TspResultDTO> leader = callers.submit(() -> tspResultCache.solve(request, Deadline.none(), () -> {
+                leaderStarted.countDown();
+                awaitUninterruptibly(releaseLeader);
+                return solve(false);
+            }));
+            assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+            Future<TspResultDTO> follower = callers.submit(() -> tspResultCache.solve(request, Deadline.none(), () -> solve(false)));
+            while (meterRegistry.get("solver.result.requests.coalesced").functionCounter().count() < 1) {
+                Thread.sleep(1);
+            }
+
+            // A bounded caller must not wait on the unbounded leader
+            TspResultDTO bounded = tspResultCache.solve(request, Deadline.after(Duration.ofSeconds(1)), () -> solve(true));
+            assertTrue(bounded.approximateMatrix());
+            assertFalse(leader.isDone());
+
+            releaseLeader.countDown();
+            assertSame(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, solves.get());
+    }
+
+    @Test
+    void budgetBucket_separatesUnboundedAndDistantBudgets() {
+        assertEquals(-1, TspResultCache.budgetBucket(Deadline.none()));
+        assertNotEquals(TspResultCache.budgetBucket(Deadline.after(Duration.ofSeconds(1))),
+                TspResultCache.budgetBucket(Deadline.after(Duration.ofSeconds(30))));
+    }
+
+    private TspResultDTO solve(boolean approximateMatrix) {
+        solves.incrementAndGet();
+        return new TspResultDTO(List.of(1L, 2L), approximateMatrix, SearchStatus.CONVERGED, List.of());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RouteV3DTO request(Set<Long> mandatoryOrders, double scaleFactor) {
+        List<RouteOrderV2DTO> orders = List.of(
+                new RouteOrderV2DTO(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY, null, null, false, 0L),
+                new RouteOrderV2DTO(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP, -6.2, 106.8, false, 0L),
+                new RouteOrderV2DTO(1L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, -6.21, 106.8, false, 3600L),
+                new RouteOrderV2DTO(2L, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, -6.22, 106.8, true, 3600L));
+        return new RouteV3DTO(10_000, 20_000, 3_000, 5_000, 5, 3, mandatoryOrders, scaleFactor, 60, 30, orders);
+    }
+}
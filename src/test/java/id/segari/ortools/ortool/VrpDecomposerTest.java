@@ -0,0 +1,112 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.util.DistanceMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VrpDecomposerTest {
+
+    private static final double SP_LATITUDE = -6.2;
+    private static final double SP_LONGITUDE = 106.8;
+
+    @Test
+    void clusters_sweepsOrdersIntoEvenSectorsStartingAfterTheWidestGap() {
+        Random random = new Random(19);
+        List<SegariRouteOrderDTO> orders = new ArrayList<>();
+        orders.add(order(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY, SP_LATITUDE, SP_LONGITUDE));
+        orders.add(order(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP, SP_LATITUDE, SP_LONGITUDE));
+        for (long id = 1; id <= 100; id++) {
+            // Nothing between bearings 0 and 90 degrees
+            double bearing = Math.PI / 2 + random.nextDouble() * 3 * Math.PI / 2;
+            double radius = 0.01 + random.nextDouble() * 0.05;
+            orders.add(order(id, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER,
+                    SP_LATITUDE + radius * Math.sin(bearing),
+                    SP_LONGITUDE + radius * Math.cos(bearing) / Math.cos(Math.toRadians(SP_LATITUDE))));
+        }
+
+        List<List<SegariRouteOrderDTO>> clusters = VrpDecomposer.clusters(orders, 30);
+
+        assertEquals(4, clusters.size());
+        Set<Long> ids = new HashSet<>();
+        double previousBearing = 0;
+        for (List<SegariRouteOrderDTO> cluster : clusters) {
+            assertEquals(25, cluster.size());
+            for (SegariRouteOrderDTO order : cluster) {
+                assertTrue(ids.add(order.id()));
+                double bearing = Math.atan2(order.latitude() - SP_LATITUDE,
+                        (order.longitude() - SP_LONGITUDE) * Math.cos(Math.toRadians(SP_LATITUDE)));
+                if (bearing < 0) bearing += 2 * Math.PI;
+                assertTrue(bearing >= previousBearing, "order " + order.id() + " is out of sweep order");
+                previousBearing = bearing;
+            }
+        }
+        assertEquals(100, ids.size());
+    }
+
+    @Test
+    void repair_insertsDroppedOrdersAndRelocatesAcrossTheBorder() {
+        // Nodes on a line: a route ending far out at 110 and a neighbouring route through 100 and 120 that dropped 130
+        DistanceMatrix distances = lineMatrix(0, 10, 20, 110, 100, 120, 130);
+        List<List<Integer>> routes = new ArrayList<>(List.of(new ArrayList<>(List.of(2, 3, 4)), new ArrayList<>(List.of(5, 6))));
+        List<Integer> unrouted = new ArrayList<>(List.of(7));
+
+        int moves = repair(distances, 4).run(routes, unrouted);
+
+        assertEquals(2, moves);
+        assertEquals(List.of(2, 3), routes.get(0));
+        assertEquals(List.of(5, 4, 6, 7), routes.get(1));
+        assertTrue(unrouted.isEmpty());
+    }
+
+    @Test
+    void repair_keepsRoutesWithinTheOrderCountLimit() {
+        DistanceMatrix distances = lineMatrix(0, 10, 20, 110, 100, 120, 130);
+        List<List<Integer>> routes = new ArrayList<>(List.of(new ArrayList<>(List.of(2, 3, 4)), new ArrayList<>(List.of(5, 6))));
+        List<Integer> unrouted = new ArrayList<>(List.of(7));
+
+        repair(distances, 3).run(routes, unrouted);
+
+        assertEquals(List.of(2, 3, 4), routes.get(0));
+        assertEquals(List.of(5, 6, 7), routes.get(1));
+        assertTrue(unrouted.isEmpty());
+    }
+
+    @Test
+    void combine_reportsTheLeastFinishedClusterStatus() {
+        assertEquals(SearchStatus.CONVERGED, VrpDecomposer.combine(List.of(SearchStatus.CONVERGED, SearchStatus.CONVERGED)));
+        assertEquals(SearchStatus.DEADLINE, VrpDecomposer.combine(List.of(SearchStatus.PLATEAU, SearchStatus.DEADLINE)));
+        assertEquals(SearchStatus.CONVERGED, VrpDecomposer.combine(List.of(SearchStatus.NO_SOLUTION, SearchStatus.CONVERGED)));
+        assertEquals(SearchStatus.NO_SOLUTION, VrpDecomposer.combine(List.of(SearchStatus.NO_SOLUTION, SearchStatus.NO_SOLUTION)));
+    }
+
+    private static VrpDecomposer.BoundaryRepair repair(DistanceMatrix distances, int maxOrderCount) {
+        return new VrpDecomposer.BoundaryRepair(distances, new boolean[distances.size()], new boolean[distances.size()],
+                new VrpDecomposer.Limits(1_000, maxOrderCount, Integer.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+    /**
+     * A dummy at node 0 followed by the SP and orders at the given positions on a line.
+     */
+    private static DistanceMatrix lineMatrix(int... positions) {
+        DistanceMatrix distances = new DistanceMatrix(positions.length + 1);
+        for (int from = 1; from <= positions.length; from++) {
+            for (int to = 1; to <= positions.length; to++) {
+                distances.set(from, to, Math.abs(positions[from - 1] - positions[to - 1]));
+            }
+        }
+        return distances;
+    }
+
+    private static SegariRouteOrderDTO order(Long id, SegariRouteOrderDTO.SegariRouteOrderEnum type, double latitude, double longitude) {
+        return new SegariRouteOrderDTO(id, type, latitude, longitude, false, false, false, null);
+    }
+}
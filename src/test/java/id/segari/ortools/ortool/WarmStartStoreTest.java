@@ -0,0 +1,62 @@
+package id.segari.ortools.ortool;
+
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.util.DistanceMatrix;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WarmStartStoreTest {
+
+    private final WarmStartStore warmStartStore = new WarmStartStore(true, 100, 4, Duration.ofMinutes(30), new SimpleMeterRegistry());
+
+    @Test
+    void initialRoute_keepsPreviousOrderAndInsertsNewOrdersCheaply() {
+        // Orders on a line, positions in meters from the SP
+        warmStartStore.remember(orders(-6.2, new long[]{1, 2, 3}), List.of(1L, 2L, 3L));
+
+        // Order 1 is gone, order 4 sits between 2 and 3
+        List<RouteOrderV2DTO> orders = orders(-6.2, new long[]{3, 4, 2});
+        DistanceMatrix distanceMatrix = lineMatrix(new int[]{30, 25, 20});
+
+        assertArrayEquals(new int[]{4, 3, 2}, warmStartStore.initialRoute(orders, distanceMatrix, 10, 1_000));
+        // Without room for another order the previous route is kept as is
+        assertArrayEquals(new int[]{4, 2}, warmStartStore.initialRoute(orders, distanceMatrix, 2, 1_000));
+        assertArrayEquals(new int[]{4, 2}, warmStartStore.initialRoute(orders, distanceMatrix, 10, 29));
+    }
+
+    @Test
+    void initialRoute_isNullForUnknownSp() {
+        warmStartStore.remember(orders(-6.2, new long[]{1, 2}), List.of(1L, 2L));
+
+        assertNull(warmStartStore.initialRoute(orders(-7.8, new long[]{1, 2}), lineMatrix(new int[]{10, 20}), 10, 1_000));
+    }
+
+    private static List<RouteOrderV2DTO> orders(double spLatitude, long[] orderIds) {
+        List<RouteOrderV2DTO> orders = new ArrayList<>();
+        orders.add(new RouteOrderV2DTO(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY, 0.0, 0.0, false, 0L));
+        orders.add(new RouteOrderV2DTO(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP, spLatitude, 106.8, false, 0L));
+        for (long orderId : orderIds) {
+            orders.add(new RouteOrderV2DTO(orderId, SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, spLatitude, 106.8, false, 3600L));
+        }
+        return orders;
+    }
+
+    private static DistanceMatrix lineMatrix(int[] orderPositions) {
+        int[] positions = new int[orderPositions.length + 2];
+        System.arraycopy(orderPositions, 0, positions, 2, orderPositions.length);
+        DistanceMatrix distanceMatrix = new DistanceMatrix(positions.length);
+        for (int i = 1; i < positions.length; i++) {
+            for (int j = 1; j < positions.length; j++) {
+                distanceMatrix.set(i, j, Math.abs(positions[i] - positions[j]));
+            }
+        }
+        return distanceMatrix;
+    }
+}
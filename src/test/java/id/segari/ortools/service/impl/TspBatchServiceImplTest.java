@@ -0,0 +1,91 @@
+package id.segari.ortools.service.impl;
+
+import id.segari.ortools.dto.route.SearchStatus;
+import id.segari.ortools.dto.route.v1.SegariRouteOrderDTO;
+import id.segari.ortools.dto.route.v2.RouteOrderV2DTO;
+import id.segari.ortools.dto.route.v2.TspResultDTO;
+import id.segari.ortools.dto.route.v3.RouteV3DTO;
+import id.segari.ortools.dto.route.v3.TspBatchResultDTO;
+import id.segari.ortools.error.SegariRoutingErrors;
+import id.segari.ortools.service.RouteService;
+import id.segari.ortools.solver.Deadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TspBatchServiceImplTest {
+
+    private final RouteService routeService = mock(RouteService.class);
+    private final TspBatchServiceImpl tspBatchService = new TspBatchServiceImpl(routeService, 10, 2, new SimpleMeterRegistry());
+
+    private final RouteV3DTO first = problem(0.00, 0.01, 0.02);
+    private final RouteV3DTO second = problem(0.10, 0.02, 0.11);
+    private final RouteV3DTO third = problem(0.20, 0.21, 0.22);
+
+    @Test
+    void solve_reportsAFailedProblemWithoutFailingTheBatch() {
+        TspResultDTO solved = new TspResultDTO(List.of(1L), false, SearchStatus.CONVERGED, List.of());
+        when(routeService.tspWithSpStartAndArbitraryFinishV3(any(), any())).thenReturn(solved);
+        when(routeService.tspWithSpStartAndArbitraryFinishV3(eq(second), any())).thenThrow(SegariRoutingErrors.mandatoryOrdersExceedCapacity(3, 2));
+
+        List<TspBatchResultDTO> results = new ArrayList<>();
+        tspBatchService.tspWithSpStartAndArbitraryFinishV3(List.of(first, second, third), Deadline.none(), results::add);
+
+        results.sort(Comparator.comparingInt(TspBatchResultDTO::index));
+        assertEquals(3, results.size());
+        assertSame(solved, results.get(0).data());
+        assertNull(results.get(1).data());
+        assertEquals("MANDATORY_ORDERS_EXCEED_CAPACITY", results.get(1).errorCode());
+        assertSame(solved, results.get(2).data());
+    }
+
+    @Test
+    @Timeout(10)
+    void solve_abandonsPendingProblemsWhenResultsCannotBeDelivered() {
+        TspResultDTO solved = new TspResultDTO(List.of(1L), false, SearchStatus.CONVERGED, List.of());
+        AtomicBoolean firstCall = new AtomicBoolean(true);
+        // The first problem solves at once, every other one runs until it is interrupted
+        when(routeService.tspWithSpStartAndArbitraryFinishV3(any(), any())).thenAnswer(invocation -> {
+            if (firstCall.getAndSet(false)) return solved;
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw SegariRoutingErrors.solverInterrupted();
+            }
+            return solved;
+        });
+        List<RouteV3DTO> problems = List.of(first, second, third, problem(0.30, 0.31), problem(0.40, 0.41), problem(0.50, 0.51));
+
+        assertThrows(UncheckedIOException.class, () -> tspBatchService.tspWithSpStartAndArbitraryFinishV3(problems, Deadline.none(), result -> {
+            throw new UncheckedIOException(new IOException("Broken pipe"));
+        }));
+
+        // Concurrency 2: the first problem and at most the two that took its permits ever reached the solver
+        verify(routeService, atMost(3)).tspWithSpStartAndArbitraryFinishV3(any(), any());
+    }
+
+    private static RouteV3DTO problem(double sp, double... orders) {
+        List<RouteOrderV2DTO> nodes = new ArrayList<>();
+        nodes.add(new RouteOrderV2DTO(-1L, SegariRouteOrderDTO.SegariRouteOrderEnum.DUMMY, 0.0, 0.0, false, 0L));
+        nodes.add(new RouteOrderV2DTO(-2L, SegariRouteOrderDTO.SegariRouteOrderEnum.SP, -6.2 + sp, 106.8, false, 0L));
+        for (double order : orders) {
+            nodes.add(new RouteOrderV2DTO((long) (order * 100), SegariRouteOrderDTO.SegariRouteOrderEnum.ORDER, -6.2 + order, 106.8, false, 3600L));
+        }
+        return new RouteV3DTO(10_000, 20_000, 3_000, 5_000, 5, 3, Set.of(), 1.0, 60, 30, nodes);
+    }
+}
@@ -0,0 +1,118 @@
+package id.segari.ortools.solver;
+
+import id.segari.ortools.exception.BaseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolverExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SolverExecutor solverExecutor;
+
+    @AfterEach
+    void tearDown() {
+        if (solverExecutor != null) solverExecutor.shutdown();
+    }
+
+    @Test
+    void execute_runsOnSolverPlatformThread() {
+        solverExecutor = newExecutor(1, 1, DataSize.ofMegabytes(64));
+
+        Thread solverThread = solverExecutor.execute(10, Thread::currentThread);
+
+        assertFalse(solverThread.isVirtual());
+        assertTrue(solverThread.getName().startsWith("solver-"));
+        assertEquals(1, meterRegistry.get("solver.queue.wait").timer().count());
+    }
+
+    @Test
+    void execute_rejectsWith429WhenQueueIsFull() throws Exception {
+        solverExecutor = newExecutor(1, 1, DataSize.ofMegabytes(64));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<Integer> active = CompletableFuture.supplyAsync(() -> solverExecutor.execute(10, () -> {
+                running.countDown();
+                awaitUninterruptibly(release);
+                return 1;
+            }), callers);
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> solverExecutor.execute(10, () -> 2), callers);
+            while (meterRegistry.get("solver.queue.depth").gauge().value() < 1) {
+                Thread.sleep(1);
+            }
+
+            BaseException exception = assertThrows(BaseException.class, () -> solverExecutor.execute(10, () -> 3));
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getHttpStatus());
+            assertEquals(Duration.ofSeconds(7), exception.getRetryAfter());
+
+            release.countDown();
+            assertEquals(1, active.get(5, TimeUnit.SECONDS));
+            assertEquals(2, queued.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, meterRegistry.get("solver.memory.reserved").gauge().value());
+    }
+
+    @Test
+    void execute_failsAQueuedSolveOnceItsDeadlinePasses() throws Exception {
+        solverExecutor = newExecutor(1, 1, DataSize.ofMegabytes(64));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<Integer> active = CompletableFuture.supplyAsync(() -> solverExecutor.execute(10, () -> {
+                running.countDown();
+                awaitUninterruptibly(release);
+                return 1;
+            }), callers);
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+
+            BaseException exception = assertThrows(BaseException.class,
+                    () -> solverExecutor.execute(10, 1, Deadline.after(Duration.ofMillis(50)), () -> 2));
+            assertEquals("SOLVER_DEADLINE_EXCEEDED", exception.getErrorCode());
+            assertEquals(0, meterRegistry.get("solver.queue.depth").gauge().value());
+
+            release.countDown();
+            assertEquals(1, active.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, meterRegistry.get("solver.memory.reserved").gauge().value());
+        assertEquals(1, meterRegistry.get("solver.rejected").tag("reason", "deadline").counter().count());
+    }
+
+    @Test
+    void ensureAdmissible_rejectsProblemsThatDoNotFitTheMemoryBudget() {
+        // 1 MB base + N² × 64 bytes: N = 256 needs 5 MB
+        solverExecutor = newExecutor(1, 4, DataSize.ofMegabytes(4));
+
+        BaseException exception = assertThrows(BaseException.class, () -> solverExecutor.ensureAdmissible(256));
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, exception.getHttpStatus());
+        assertDoesNotThrow(() -> solverExecutor.ensureAdmissible(128));
+    }
+
+    private SolverExecutor newExecutor(int threads, int queueCapacity, DataSize memoryBudget) {
+        return new SolverExecutor(threads, queueCapacity, Duration.ofSeconds(7), memoryBudget,
+                DataSize.ofMegabytes(1), 64, meterRegistry);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
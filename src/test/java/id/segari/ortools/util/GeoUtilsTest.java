@@ -0,0 +1,61 @@
+package id.segari.ortools.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeoUtilsTest {
+
+    @Test
+    void getHaversineDistanceMatrixInMeter_matchesPairwiseDistanceOnBothPaths() {
+        // 37 points so the vector loop always leaves a scalar tail
+        Random random = new Random(42);
+        int n = 37;
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = -6.4 + random.nextDouble() * 0.4;
+            longitudes[i] = 106.6 + random.nextDouble() * 0.5;
+        }
+
+        DistanceMatrix scalar = GeoUtils.getHaversineDistanceMatrixInMeter(latitudes, longitudes, false);
+        DistanceMatrix vectorized = GeoUtils.getHaversineDistanceMatrixInMeter(latitudes, longitudes, true);
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(0, scalar.get(i, i));
+            for (int j = 0; j < n; j++) {
+                long expected = Math.round(GeoUtils.getHaversineDistanceInMeter(latitudes[i], longitudes[i], latitudes[j], longitudes[j]));
+                assertEquals(expected, scalar.get(i, j), 1);
+                assertEquals(scalar.get(i, j), vectorized.get(i, j), 1);
+                assertEquals(scalar.get(i, j), scalar.get(j, i));
+            }
+        }
+    }
+
+    @Test
+    void getHaversineDistancesInMeter_matchesPairwiseDistanceOnBothPaths() {
+        Random random = new Random(7);
+        double[] sourceLatitudes = {-6.2, -6.3, -6.25};
+        double[] sourceLongitudes = {106.8, 106.7, 106.9};
+        int columns = 37;
+        double[] latitudes = new double[columns];
+        double[] longitudes = new double[columns];
+        for (int j = 0; j < columns; j++) {
+            latitudes[j] = -6.4 + random.nextDouble() * 0.4;
+            longitudes[j] = 106.6 + random.nextDouble() * 0.5;
+        }
+
+        double[] scalar = GeoUtils.getHaversineDistancesInMeter(sourceLatitudes, sourceLongitudes, latitudes, longitudes, false);
+        double[] vectorized = GeoUtils.getHaversineDistancesInMeter(sourceLatitudes, sourceLongitudes, latitudes, longitudes, true);
+
+        for (int i = 0; i < sourceLatitudes.length; i++) {
+            for (int j = 0; j < columns; j++) {
+                double expected = GeoUtils.getHaversineDistanceInMeter(sourceLatitudes[i], sourceLongitudes[i], latitudes[j], longitudes[j]);
+                assertEquals(expected, scalar[i * columns + j], 0.01);
+                assertEquals(expected, vectorized[i * columns + j], 0.01);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package id.segari.ortools.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void execute_concurrentCallersShareOneExecution() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<Integer> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("sp-1", () -> {
+                started.countDown();
+                awaitUninterruptibly(release);
+                return calls.incrementAndGet();
+            }), executor);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            CompletableFuture<Integer> follower = CompletableFuture.supplyAsync(
+                    () -> singleFlight.execute("sp-1", calls::incrementAndGet), executor);
+            while (singleFlight.coalescedCount() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+            assertEquals(1, follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.executionCount());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void execute_failureIsNotRemembered() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("sp-1", () -> {
+            throw new IllegalStateException("osrm down");
+        }));
+        assertEquals(7, singleFlight.execute("sp-1", () -> 7));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}